@@ -0,0 +1,73 @@
+package scheduler.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+
+/**
+ * Whole commands as a logged-in user runs them, parsing and output included. A reservation is always
+ * cancelled again in the same operation, so the stock and the availabilities stay the same from one
+ * operation to the next and every measurement iteration sees the same data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CommandBenchmark {
+
+    private static final String ID_LABEL = "Your appointment ID is: ";
+
+    @Param({"jdbc", "memory"})
+    public String storage;
+
+    // how many caregivers are available on the searched day
+    @Param({"10"})
+    public int caregivers;
+
+    private Fixture.Client patient;
+    private Fixture.Client caregiver;
+
+    @Setup
+    public void setUp() throws SQLException {
+        Fixture.open(storage);
+        caregiver = new Fixture.Client();
+        for (int i = 0; i < caregivers; i++) {
+            caregiver.run("logout");
+            caregiver.expect("create_caregiver bench_caregiver" + i + " secret", "Created user");
+            caregiver.expect("upload_availability_range 2026-01-01 2026-03-31", "Availability uploaded!");
+        }
+        caregiver.expect("add_doses pfizer 1000000", "Doses updated!");
+        patient = new Fixture.Client();
+        patient.expect("create_patient bench_patient secret", "Created user");
+    }
+
+    @Benchmark
+    public String searchCaregiverSchedule() {
+        return patient.run("search_caregiver_schedule 2026-02-01");
+    }
+
+    @Benchmark
+    public String searchRange() {
+        return patient.run("search_range 2026-01-01 2026-01-31 pfizer");
+    }
+
+    // the patient reserves and the caregiver cancels, caregivers may cancel any appointment
+    @Benchmark
+    public String reserveAndCancel() {
+        String output = patient.expect("reserve 2026-02-01 pfizer", ID_LABEL);
+        int start = output.indexOf(ID_LABEL) + ID_LABEL.length();
+        int end = output.indexOf('\n', start);
+        String id = output.substring(start, end).trim();
+        return caregiver.expect("cancel " + id, "successfully canceled");
+    }
+}
@@ -0,0 +1,57 @@
+package scheduler.benchmarks;
+
+import scheduler.Scheduler;
+import scheduler.Session;
+import scheduler.db.MigrationRunner;
+import scheduler.model.ReservationJournal;
+import scheduler.repository.Repositories;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.SQLException;
+
+/**
+ * A scheduler for the benchmarks to drive: either an embedded H2 database in SQL Server mode, created by the
+ * migrations, or the in-memory store. Every JMH fork is a fresh JVM, so every fork starts from an empty one.
+ * A {@code JdbcUrl} given on the command line is kept, to run against another database.
+ */
+class Fixture {
+
+    static final String JDBC_URL = "jdbc:h2:mem:benchmarks;MODE=MSSQLServer;DB_CLOSE_DELAY=-1";
+
+    // call before anything touches the repositories, they read these settings once
+    static void open(String storage) throws SQLException {
+        System.setProperty("Storage", storage);
+        if (System.getProperty("JdbcUrl") == null) {
+            System.setProperty("JdbcUrl", JDBC_URL);
+        }
+        if (!Repositories.isInMemory()) {
+            MigrationRunner.migrate();
+        }
+        if (ReservationJournal.isEnabled()) {
+            ReservationJournal.getInstance();
+        }
+    }
+
+    // a session whose output is kept, so that a benchmark can read what a command printed
+    static class Client {
+        private final StringWriter buffer = new StringWriter();
+        private final Session session = new Session(new PrintWriter(buffer));
+
+        // runs one command line and returns what it printed
+        String run(String line) {
+            buffer.getBuffer().setLength(0);
+            Scheduler.execute(session, line);
+            return buffer.toString();
+        }
+
+        // runs one command line and fails if its output does not contain the expected text
+        String expect(String line, String expected) {
+            String output = run(line);
+            if (!output.contains(expected)) {
+                throw new IllegalStateException(line + " printed: " + output);
+            }
+            return output;
+        }
+    }
+}
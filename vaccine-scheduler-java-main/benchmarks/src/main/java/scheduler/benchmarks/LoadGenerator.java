@@ -0,0 +1,237 @@
+package scheduler.benchmarks;
+
+import scheduler.metrics.LatencyHistogram;
+import scheduler.metrics.Metrics;
+import scheduler.model.ReservationCoalescer;
+import scheduler.model.ReservationJournal;
+import scheduler.repository.Repositories;
+import scheduler.util.Util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a script in the command language from many simulated users at once, to see how the scheduler
+ * behaves during a rush rather than with one person typing.
+ *
+ * Usage: {@code java -cp benchmarks.jar scheduler.benchmarks.LoadGenerator <script> [setup_script]}. The
+ * setup script runs once, in one session, before any user arrives (to create caregivers, availabilities and
+ * stock). Then {@code LoadUsers} users (100) arrive, {@code LoadArrivalPerSecond} per second (0 for all at
+ * once), and each runs the script {@code LoadIterations} times (1) on its own virtual thread and its own
+ * session, pausing for a think time drawn from an exponential distribution with mean {@code LoadThinkMs}
+ * (0) between commands. In the script, {@code {user}} stands for the user's number and {@code {id}} for the
+ * last appointment ID a reserve printed for that user; lines starting with # are comments. A script that is
+ * not a file is looked up on the classpath, where load/setup.txt and load/rush.txt are.
+ *
+ * The report has the throughput and the p50/p99/p999 latencies of every command, and how often each command
+ * printed each first line of output, which is where contention shows: reserves that found no caregiver or no
+ * stock left. It ends with the scheduler's own {@link Metrics}: the connections, statements and rows every
+ * command cost, and with the JDBC storage the connection pool counters, whose waits are contention too.
+ * In between, the spread of appointments over caregivers shows how evenly {@code AssignmentStrategy} balanced
+ * them.
+ * {@code Storage} picks the backend like for the scheduler itself; the database is an embedded H2 one unless
+ * {@code JdbcUrl} is given.
+ */
+public class LoadGenerator {
+
+    private static final String ID_LABEL = "Your appointment ID is: ";
+    private static final int MAX_OUTCOME_LENGTH = 60;
+
+    private final List<String> script;
+    private final int users;
+    private final double arrivalPerSecond;
+    private final double thinkMs;
+    private final int iterations;
+
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    // command -> first line of its output -> count
+    private final Map<String, Map<String, LongAdder>> outcomes = new ConcurrentHashMap<>();
+    private final LongAdder failures = new LongAdder();
+
+    public LoadGenerator(List<String> script, int users, double arrivalPerSecond, double thinkMs, int iterations) {
+        this.script = script;
+        this.users = users;
+        this.arrivalPerSecond = arrivalPerSecond;
+        this.thinkMs = thinkMs;
+        this.iterations = iterations;
+    }
+
+    public static void main(String[] args) throws IOException, SQLException, InterruptedException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: LoadGenerator <script> [setup_script]");
+            return;
+        }
+        List<String> script = readScript(args[0]);
+        Metrics.start();
+        Fixture.open(Util.getSetting("Storage", "jdbc"));
+        if (args.length == 2) {
+            Fixture.Client setup = new Fixture.Client();
+            for (String line : readScript(args[1])) {
+                setup.run(line);
+            }
+        }
+
+        LoadGenerator generator = new LoadGenerator(script,
+                Math.max(1, Util.getIntSetting("LoadUsers", 100)),
+                Double.parseDouble(Util.getSetting("LoadArrivalPerSecond", "0")),
+                Double.parseDouble(Util.getSetting("LoadThinkMs", "0")),
+                Math.max(1, Util.getIntSetting("LoadIterations", 1)));
+        long elapsed = generator.run();
+        generator.report(elapsed);
+        reportAssignments();
+        if (ReservationCoalescer.isEnabled()) {
+            System.out.println(ReservationCoalescer.getInstance());
+        }
+        // what the commands cost the database, and the connection pool counters
+        System.out.println();
+        System.out.print(Metrics.report());
+    }
+
+    // runs every user to the end and returns the elapsed nanoseconds
+    public long run() throws InterruptedException {
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int user = 0; user < users; user++) {
+                if (arrivalPerSecond > 0) {
+                    // arrivals are paced from the start, so a slow submit does not shift all later ones
+                    long arrival = start + (long) (user * 1e9 / arrivalPerSecond);
+                    long wait;
+                    while ((wait = arrival - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                int number = user;
+                executor.submit(() -> simulate(number));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void simulate(int user) {
+        Fixture.Client client = new Fixture.Client();
+        String lastId = "0";
+        try {
+            for (int i = 0; i < iterations; i++) {
+                for (String template : script) {
+                    String line = template.replace("{user}", Integer.toString(user)).replace("{id}", lastId);
+                    long begin = System.nanoTime();
+                    String output = client.run(line);
+                    long took = System.nanoTime() - begin;
+
+                    String command = line.split(" ", 2)[0];
+                    latencies.computeIfAbsent(command, name -> new LatencyHistogram()).record(took);
+                    outcomes.computeIfAbsent(command, name -> new ConcurrentHashMap<>())
+                            .computeIfAbsent(outcome(output), name -> new LongAdder()).increment();
+                    int at = output.indexOf(ID_LABEL);
+                    if (at >= 0) {
+                        int end = output.indexOf('\n', at);
+                        lastId = output.substring(at + ID_LABEL.length(), end < 0 ? output.length() : end).trim();
+                    }
+                    think();
+                }
+            }
+        } catch (RuntimeException e) {
+            failures.increment();
+            e.printStackTrace();
+        }
+    }
+
+    private void think() {
+        if (thinkMs <= 0) {
+            return;
+        }
+        // exponentially distributed, like the gaps between independent arrivals
+        double ms = -thinkMs * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+        LockSupport.parkNanos((long) (ms * 1e6));
+    }
+
+    public void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%d users, %d iterations each, %.2f s%n", users, iterations, seconds);
+        if (failures.sum() > 0) {
+            System.out.println("Users that stopped on an exception: " + failures.sum());
+        }
+        System.out.printf("%-28s %9s %10s %10s %10s %10s %10s%n",
+                "command", "count", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (String command : new TreeSet<>(latencies.keySet())) {
+            LatencyHistogram histogram = latencies.get(command);
+            System.out.printf("%-28s %9d %10.1f %10.3f %10.3f %10.3f %10.3f%n",
+                    command, histogram.getCount(), histogram.getCount() / seconds,
+                    histogram.percentileMicros(0.50) / 1e3, histogram.percentileMicros(0.99) / 1e3,
+                    histogram.percentileMicros(0.999) / 1e3, histogram.getMaxMicros() / 1e3);
+        }
+        System.out.println();
+        System.out.println("Outcomes (first line printed):");
+        for (String command : new TreeSet<>(outcomes.keySet())) {
+            System.out.println(command);
+            outcomes.get(command).entrySet().stream()
+                    .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+                    .forEach(entry -> System.out.printf("  %9d  %s%n", entry.getValue().sum(), entry.getKey()));
+        }
+    }
+
+    // how many appointments the busiest and the least busy caregivers ended up with
+    private static void reportAssignments() throws SQLException {
+        ReservationJournal.applyPending();
+        Map<String, Integer> counts = Repositories.appointments().countByCaregiver();
+        if (counts.isEmpty()) {
+            return;
+        }
+        IntSummaryStatistics stats = counts.values().stream().mapToInt(Integer::intValue).summaryStatistics();
+        System.out.println();
+        System.out.printf("Appointments per caregiver (%s): %d caregivers, min %d, mean %.1f, max %d%n",
+                Util.getSetting("AssignmentStrategy", "least_loaded"), stats.getCount(), stats.getMin(),
+                stats.getAverage(), stats.getMax());
+    }
+
+    // the first line of a command's output, without the details that differ per user
+    private static String outcome(String output) {
+        int end = output.indexOf('\n');
+        String first = (end < 0 ? output : output.substring(0, end)).trim();
+        // "Created user rush17" and "Logged in as: rush17" are one outcome for all users
+        first = first.replaceAll("\\d+", "#");
+        if (first.isEmpty()) {
+            return "(nothing printed)";
+        }
+        return first.length() > MAX_OUTCOME_LENGTH ? first.substring(0, MAX_OUTCOME_LENGTH) + "..." : first;
+    }
+
+    private static List<String> readScript(String name) throws IOException {
+        Path path = Paths.get(name);
+        InputStream in = Files.exists(path)
+                ? Files.newInputStream(path)
+                : LoadGenerator.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("No such script: " + name);
+        }
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.strip();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,55 @@
+package scheduler.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+
+import java.sql.SQLException;
+
+/**
+ * The login paths: the account lookup plus the password check, for a right and a wrong password.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LoginBenchmark {
+
+    @Param({"jdbc", "memory"})
+    public String storage;
+
+    @Setup
+    public void setUp() throws SQLException {
+        Fixture.open(storage);
+        Fixture.Client client = new Fixture.Client();
+        client.expect("create_patient bench_patient secret", "Created user");
+        client.run("logout");
+        client.expect("create_caregiver bench_caregiver secret", "Created user");
+        client.run("logout");
+    }
+
+    @Benchmark
+    public Patient loginPatient() throws SQLException {
+        return new Patient.PatientGetter("bench_patient", "secret").get();
+    }
+
+    @Benchmark
+    public Patient loginPatientWrongPassword() throws SQLException {
+        return new Patient.PatientGetter("bench_patient", "wrong").get();
+    }
+
+    @Benchmark
+    public Caregiver loginCaregiver() throws SQLException {
+        return new Caregiver.CaregiverGetter("bench_caregiver", "secret").get();
+    }
+}
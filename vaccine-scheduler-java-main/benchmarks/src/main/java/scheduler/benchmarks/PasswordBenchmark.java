@@ -0,0 +1,54 @@
+package scheduler.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.util.Util;
+
+import java.util.Arrays;
+
+/**
+ * The password helpers every signup and login goes through. generateHash runs with the configured
+ * {@code HashIterations}, pass {@code -jvmArgs -DHashIterations=...} to compare settings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PasswordBenchmark {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    private byte[] salt;
+    // a stored hash with the zero padding of the fixed-width column, as trim sees it on login
+    private byte[] paddedHash;
+
+    @Setup
+    public void setUp() {
+        salt = Util.generateSalt();
+        byte[] hash = Util.generateHash(PASSWORD, salt);
+        paddedHash = Arrays.copyOf(hash, hash.length + 16);
+    }
+
+    @Benchmark
+    public byte[] generateSalt() {
+        return Util.generateSalt();
+    }
+
+    @Benchmark
+    public byte[] generateHash() {
+        return Util.generateHash(PASSWORD, salt);
+    }
+
+    @Benchmark
+    public byte[] trim() {
+        return Util.trim(paddedHash);
+    }
+}
@@ -1,3 +1,6 @@
+-- The schema as of migration V1. The scheduler applies the later versions in db/migration on startup,
+-- see scheduler.db.MigrationRunner.
+
 CREATE TABLE Caregivers (
     Username varchar(255),
     Salt BINARY(16),
@@ -22,7 +25,7 @@ CREATE TABLE Patients (
     Salt BINARY(16),
     Hash BINARY(16),
     PRIMARY KEY (Username)
-)
+);
 
 CREATE TABLE Appointment (
     ID int,
@@ -31,4 +34,4 @@ CREATE TABLE Appointment (
     Username_P varchar(255) REFERENCES Patients(Username) ON UPDATE CASCADE ON DELETE CASCADE,
     Name_V varchar(255) REFERENCES Vaccines(Name) ON UPDATE CASCADE ON DELETE CASCADE,
     PRIMARY KEY (ID, Username_C, Username_P, Name_V)
-)
\ No newline at end of file
+);
@@ -0,0 +1,7 @@
+-- V2: the rows IdAllocator claims appointment ID blocks from.
+
+CREATE TABLE Sequences (
+    Name varchar(255),
+    NextValue int,
+    PRIMARY KEY (Name)
+);
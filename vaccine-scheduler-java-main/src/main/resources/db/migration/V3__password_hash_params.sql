@@ -0,0 +1,4 @@
+-- V3: the hashing parameters of every stored password, for PasswordHasher.
+
+ALTER TABLE Caregivers ADD HashParams varchar(64);
+ALTER TABLE Patients ADD HashParams varchar(64);
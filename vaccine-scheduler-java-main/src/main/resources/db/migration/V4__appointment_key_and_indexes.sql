@@ -0,0 +1,15 @@
+-- V4: make Appointment.ID the primary key and add the indexes the scheduler's queries need.
+-- Portable version; SQL Server uses the .sqlserver.sql variant for INCLUDE columns.
+
+ALTER TABLE Appointment DROP PRIMARY KEY;
+ALTER TABLE Appointment ADD CONSTRAINT PK_Appointment PRIMARY KEY (ID);
+
+-- show_appointments for a caregiver or a patient, keyset paginated by ID
+CREATE INDEX IX_Appointment_Caregiver ON Appointment (Username_C, ID, AppointmentTime, Name_V, Username_P);
+CREATE INDEX IX_Appointment_Patient ON Appointment (Username_P, ID, AppointmentTime, Name_V, Username_C);
+
+-- the cascade from Vaccines, and anything looking appointments up by vaccine
+CREATE INDEX IX_Appointment_Vaccine ON Appointment (Name_V);
+
+-- a caregiver's own availabilities, as upload_availability_range checks them
+CREATE INDEX IX_Availabilities_Username ON Availabilities (Username, Time);
@@ -0,0 +1,15 @@
+-- V4: make Appointment.ID the primary key and add the indexes the scheduler's queries need.
+
+-- the old key was declared inline, so its constraint name was generated and has to be looked up
+DECLARE @pk sysname = (SELECT name FROM sys.key_constraints WHERE parent_object_id = OBJECT_ID('Appointment') AND type = 'PK'); EXEC('ALTER TABLE Appointment DROP CONSTRAINT ' + @pk);
+ALTER TABLE Appointment ADD CONSTRAINT PK_Appointment PRIMARY KEY (ID);
+
+-- show_appointments for a caregiver or a patient, keyset paginated by ID
+CREATE INDEX IX_Appointment_Caregiver ON Appointment (Username_C, ID) INCLUDE (AppointmentTime, Name_V, Username_P);
+CREATE INDEX IX_Appointment_Patient ON Appointment (Username_P, ID) INCLUDE (AppointmentTime, Name_V, Username_C);
+
+-- the cascade from Vaccines, and anything looking appointments up by vaccine
+CREATE INDEX IX_Appointment_Vaccine ON Appointment (Name_V);
+
+-- a caregiver's own availabilities, as upload_availability_range checks them
+CREATE INDEX IX_Availabilities_Username ON Availabilities (Username, Time);
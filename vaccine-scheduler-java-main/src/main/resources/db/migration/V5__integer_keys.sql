@@ -0,0 +1,53 @@
+-- V5: integer surrogate keys for Caregivers, Patients and Vaccines, and Appointment and Availabilities keyed on
+-- them instead of repeating the names in every row. The names stay the primary keys of their own tables.
+-- Portable version; SQL Server uses the .sqlserver.sql variant for IDENTITY, sp_rename and INCLUDE columns.
+
+ALTER TABLE Caregivers ADD ID int GENERATED BY DEFAULT AS IDENTITY NOT NULL;
+ALTER TABLE Caregivers ADD CONSTRAINT UQ_Caregivers_ID UNIQUE (ID);
+ALTER TABLE Patients ADD ID int GENERATED BY DEFAULT AS IDENTITY NOT NULL;
+ALTER TABLE Patients ADD CONSTRAINT UQ_Patients_ID UNIQUE (ID);
+ALTER TABLE Vaccines ADD ID int GENERATED BY DEFAULT AS IDENTITY NOT NULL;
+ALTER TABLE Vaccines ADD CONSTRAINT UQ_Vaccines_ID UNIQUE (ID);
+
+-- both tables are rebuilt: copied into a new table, dropped and replaced, and their keys added afterwards
+-- so that the constraints keep their usual names
+CREATE TABLE Availabilities_V5 (
+    Time date NOT NULL,
+    Caregiver_ID int NOT NULL
+);
+INSERT INTO Availabilities_V5 (Time, Caregiver_ID)
+    SELECT a.Time, c.ID FROM Availabilities a JOIN Caregivers c ON c.Username = a.Username;
+DROP TABLE Availabilities;
+ALTER TABLE Availabilities_V5 RENAME TO Availabilities;
+ALTER TABLE Availabilities ADD CONSTRAINT PK_Availabilities PRIMARY KEY (Time, Caregiver_ID);
+ALTER TABLE Availabilities ADD CONSTRAINT FK_Availabilities_Caregiver FOREIGN KEY (Caregiver_ID) REFERENCES Caregivers (ID);
+
+CREATE TABLE Appointment_V5 (
+    ID int NOT NULL,
+    AppointmentTime date,
+    Caregiver_ID int NOT NULL,
+    Patient_ID int NOT NULL,
+    Vaccine_ID int NOT NULL
+);
+INSERT INTO Appointment_V5 (ID, AppointmentTime, Caregiver_ID, Patient_ID, Vaccine_ID)
+    SELECT a.ID, a.AppointmentTime, c.ID, p.ID, v.ID FROM Appointment a
+    JOIN Caregivers c ON c.Username = a.Username_C
+    JOIN Patients p ON p.Username = a.Username_P
+    JOIN Vaccines v ON v.Name = a.Name_V;
+DROP TABLE Appointment;
+ALTER TABLE Appointment_V5 RENAME TO Appointment;
+ALTER TABLE Appointment ADD CONSTRAINT PK_Appointment PRIMARY KEY (ID);
+-- the IDs never change, so only deletes cascade
+ALTER TABLE Appointment ADD CONSTRAINT FK_Appointment_Caregiver FOREIGN KEY (Caregiver_ID) REFERENCES Caregivers (ID) ON DELETE CASCADE;
+ALTER TABLE Appointment ADD CONSTRAINT FK_Appointment_Patient FOREIGN KEY (Patient_ID) REFERENCES Patients (ID) ON DELETE CASCADE;
+ALTER TABLE Appointment ADD CONSTRAINT FK_Appointment_Vaccine FOREIGN KEY (Vaccine_ID) REFERENCES Vaccines (ID) ON DELETE CASCADE;
+
+-- show_appointments for a caregiver or a patient, keyset paginated by ID
+CREATE INDEX IX_Appointment_Caregiver ON Appointment (Caregiver_ID, ID, AppointmentTime, Vaccine_ID, Patient_ID);
+CREATE INDEX IX_Appointment_Patient ON Appointment (Patient_ID, ID, AppointmentTime, Vaccine_ID, Caregiver_ID);
+
+-- the cascade from Vaccines, and cancel_vaccine's date range
+CREATE INDEX IX_Appointment_Vaccine ON Appointment (Vaccine_ID, AppointmentTime);
+
+-- a caregiver's own availabilities, as upload_availability_range checks them
+CREATE INDEX IX_Availabilities_Caregiver ON Availabilities (Caregiver_ID, Time);
@@ -0,0 +1,14 @@
+-- V6: time slots. Availabilities keeps one row per caregiver and day, now with a bitmap of the slots still
+-- free in it (bit i is slot i, see scheduler.model.TimeSlots), and every appointment records its slot.
+-- Existing rows become days with every slot free and appointments in the first slot, which is the whole day
+-- with the default slot length.
+-- Portable version; SQL Server uses the .sqlserver.sql variant for INCLUDE columns.
+
+ALTER TABLE Availabilities ADD Slots bigint NOT NULL DEFAULT -1;
+ALTER TABLE Appointment ADD Slot int NOT NULL DEFAULT 0;
+
+-- show_appointments reads the slot too, so the listing indexes are rebuilt to cover it
+DROP INDEX IX_Appointment_Caregiver;
+CREATE INDEX IX_Appointment_Caregiver ON Appointment (Caregiver_ID, ID, AppointmentTime, Slot, Vaccine_ID, Patient_ID);
+DROP INDEX IX_Appointment_Patient;
+CREATE INDEX IX_Appointment_Patient ON Appointment (Patient_ID, ID, AppointmentTime, Slot, Vaccine_ID, Caregiver_ID);
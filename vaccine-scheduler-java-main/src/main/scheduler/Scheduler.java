@@ -1,49 +1,154 @@
 package scheduler;
 
 import scheduler.db.ConnectionManager;
+import scheduler.db.MigrationRunner;
+import scheduler.metrics.Metrics;
+import scheduler.model.Appointment;
+import scheduler.model.AvailabilityIndex;
 import scheduler.model.Caregiver;
+import scheduler.model.DoseLedger;
 import scheduler.model.Patient;
+import scheduler.model.ReservationJournal;
+import scheduler.model.TimeSlots;
+import scheduler.model.UsernameFilter;
+import scheduler.model.UserImporter;
 import scheduler.model.Vaccine;
+import scheduler.model.VaccineCatalog;
+import scheduler.repository.Repositories;
 import scheduler.util.Util;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class Scheduler {
 
-    // objects to keep track of the currently logged-in user
-    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
-    //       since only one user can be logged-in at a time
-    private static Caregiver currentCaregiver = null;
-    private static Patient currentPatient = null;
+    // the longest range upload_availability_range accepts, to catch typos in the year
+    private static final int MAX_UPLOAD_DAYS = 366;
+
+    // every command by name, built once, so that dispatching a line is a single lookup
+    private static final Map<String, Command> COMMANDS = commands();
+
+    private static final int SCRIPT_BUFFER_SIZE = 1 << 16;
+
+    // the page show_appointments prints when no limit is given
+    private static final int APPOINTMENT_PAGE_SIZE = Util.getIntSetting("AppointmentPageSize", 100);
 
     public static void main(String[] args) {
-        // printing greetings text
-        System.out.println();
-        System.out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
-        System.out.println("*** Please enter one of the following commands ***");
-        System.out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1)
-        System.out.println("> create_caregiver <username> <password>");
-        System.out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1)
-        System.out.println("> login_caregiver <username> <password>");
-        System.out.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2)
-        System.out.println("> reserve <date> <vaccine>");  // TODO: implement reserve (Part 2)
-        System.out.println("> upload_availability <date>");
-        System.out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit)
-        System.out.println("> add_doses <vaccine> <number>");
-        System.out.println("> show_appointments");  // TODO: implement show_appointments (Part 2)
-        System.out.println("> logout");  // TODO: implement logout (Part 2)
-        System.out.println("> quit");
-        System.out.println();
+        // a script's stdout is its results, so every other message, startup or background, goes to stderr
+        boolean scriptMode = args.length >= 1 && args[0].equals("--script");
+        PrintStream stdout = System.out;
+        if (scriptMode) {
+            System.setOut(System.err);
+        }
+
+        // per-command metrics go to JMX, and to a dump file if MetricsDumpPath is set
+        Metrics.start();
+
+        // bring the schema up to date before anything reads from it (the in-memory store has no schema)
+        if (!Repositories.isInMemory() && Boolean.parseBoolean(Util.getSetting("MigrateOnStartup", "true"))) {
+            try {
+                MigrationRunner.migrate();
+            } catch (SQLException e) {
+                System.out.println("Error occurred when migrating the database schema.");
+                e.printStackTrace();
+            }
+        }
+
+        // apply what the reservation journal still holds before anything is loaded from the tables it writes to
+        if (ReservationJournal.isEnabled()) {
+            try {
+                System.out.println("Loaded " + ReservationJournal.getInstance());
+            } catch (SQLException e) {
+                System.out.println("Error occurred when replaying the reservation journal.");
+                e.printStackTrace();
+            }
+        }
+
+        // load the vaccine stock into the in-memory ledger before taking any commands
+        if (DoseLedger.isEnabled()) {
+            try {
+                DoseLedger.getInstance();
+            } catch (SQLException e) {
+                System.out.println("Error occurred when loading vaccine doses.");
+                e.printStackTrace();
+            }
+        }
+
+        // load the availability index, which answers schedule lookups without going to the database
+        try {
+            System.out.println("Loaded " + AvailabilityIndex.getInstance());
+        } catch (SQLException e) {
+            System.out.println("Error occurred when loading caregiver availabilities.");
+            e.printStackTrace();
+        }
+
+        // load the usernames, so that signup can turn away taken names without a query
+        try {
+            System.out.println("Loaded " + UsernameFilter.forPatients());
+            System.out.println("Loaded " + UsernameFilter.forCaregivers());
+        } catch (SQLException e) {
+            System.out.println("Error occurred when loading usernames.");
+            e.printStackTrace();
+        }
+
+        // server mode: serve many clients over TCP, see SchedulerServer
+        if (args.length >= 1 && args[0].equals("--server")) {
+            int port = args.length >= 2 ? Integer.parseInt(args[1]) : Util.getIntSetting("ServerPort", 5050);
+            try {
+                new SchedulerServer(port).run();
+            } catch (IOException e) {
+                System.out.println("Could not start the server on port " + port);
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        // script mode: --script <file> [--json], or - for stdin, see ScriptRunner
+        if (scriptMode) {
+            if (args.length < 2 || args.length > 3 || (args.length == 3 && !args[2].equals("--json"))) {
+                System.out.println("Usage: --script <file|-> [--json]");
+                return;
+            }
+            PrintWriter out = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(stdout, StandardCharsets.UTF_8), SCRIPT_BUFFER_SIZE));
+            try (BufferedReader in = args[1].equals("-")
+                    ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), SCRIPT_BUFFER_SIZE)
+                    : Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+                new ScriptRunner(out, args.length == 3).run(in);
+            } catch (IOException e) {
+                out.flush();
+                System.out.println("Could not read the script " + args[1]);
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        // the command line is a single session on stdout
+        Session session = new Session(new PrintWriter(System.out));
+        printGreeting(session.out);
+        session.out.flush();
 
         // read input from user
         BufferedReader r = new BufferedReader(new InputStreamReader(System.in));
@@ -55,155 +160,232 @@ public class Scheduler {
             } catch (IOException e) {
                 System.out.println("Please try again!");
             }
-            // split the user input by spaces
-            String[] tokens = response.split(" ");
-            // check if input exists
-            if (tokens.length == 0) {
-                System.out.println("Please try again!");
-                continue;
-            }
-            // determine which operation to perform
-            String operation = tokens[0];
-            if (operation.equals("create_patient")) {
-                createPatient(tokens);
-            } else if (operation.equals("create_caregiver")) {
-                createCaregiver(tokens);
-            } else if (operation.equals("login_patient")) {
-                loginPatient(tokens);
-            } else if (operation.equals("login_caregiver")) {
-                loginCaregiver(tokens);
-            } else if (operation.equals("search_caregiver_schedule")) {
-                searchCaregiverSchedule(tokens);
-            } else if (operation.equals("reserve")) {
-                reserve(tokens);
-            } else if (operation.equals("upload_availability")) {
-                uploadAvailability(tokens);
-            } else if (operation.equals("cancel")) {
-                cancel(tokens);
-            } else if (operation.equals("add_doses")) {
-                addDoses(tokens);
-            } else if (operation.equals("show_appointments")) {
-                showAppointments(tokens);
-            } else if (operation.equals("logout")) {
-                logout(tokens);
-            } else if (operation.equals("quit")) {
-                System.out.println("Bye!");
+            // end of input behaves like quit
+            if (response == null) {
+                response = "quit";
+            }
+            if (!execute(session, response)) {
                 return;
-            } else {
-                System.out.println("Invalid operation name!");
             }
         }
     }
 
-    private static void createPatient(String[] tokens) {
+    public static void printGreeting(PrintWriter out) {
+        // printing greetings text
+        out.println();
+        out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
+        out.println("*** Please enter one of the following commands ***");
+        out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1)
+        out.println("> create_caregiver <username> <password>");
+        out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1)
+        out.println("> login_caregiver <username> <password>");
+        out.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2)
+        out.println("> search_range <from> <to> [vaccine]");
+        out.println("> next_available <vaccine> [n]");
+        out.println("> reserve <date> <vaccine> [hh:mm]");  // TODO: implement reserve (Part 2)
+        out.println("> upload_availability <date> [hh:mm-hh:mm]");
+        out.println("> upload_availability_range <start> <end> [weekdays]");
+        out.println("> upload_availability_file <path>");
+        out.println("> import_users <csv_path> [reject_path]");
+        out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit)
+        out.println("> cancel_caregiver_day <caregiver> <date>");
+        out.println("> cancel_vaccine <vaccine> [from] [to]");
+        out.println("> add_doses <vaccine> <number>");
+        out.println("> show_appointments [after_id] [limit] [from] [to]");  // TODO: implement show_appointments (Part 2)
+        out.println("> logout");  // TODO: implement logout (Part 2)
+        out.println("> quit");
+        out.println();
+    }
+
+    /**
+     * Runs one command line for the given session and flushes its output, unless the session buffers it.
+     *
+     * @return false once the session asked to quit
+     */
+    public static boolean execute(Session session, String line) {
+        Metrics.Scope scope = Metrics.enter(metricName(line));
+        // stays false unless the command runs to the end and reports success
+        session.lastCommandSucceeded = false;
+        try {
+            boolean keepGoing = dispatch(session, line);
+            scope.completed();
+            return keepGoing;
+        } finally {
+            if (session.flushEachCommand) {
+                session.out.flush();
+            }
+            scope.close();
+        }
+    }
+
+    // the command a line is counted under; unknown ones share one name so typos cannot create metrics
+    private static String metricName(String line) {
+        int end = line.indexOf(' ');
+        String operation = end < 0 ? line : line.substring(0, end);
+        return COMMANDS.containsKey(operation) ? operation : "invalid";
+    }
+
+    private static boolean dispatch(Session session, String line) {
+        // split the user input by spaces
+        String[] tokens = line.split(" ");
+        // check if input exists
+        if (tokens.length == 0) {
+            session.out.println("Please try again!");
+            return true;
+        }
+        // determine which operation to perform
+        String operation = tokens[0];
+        Command command = COMMANDS.get(operation);
+        if (command == null) {
+            session.out.println("Invalid operation name!");
+            return true;
+        }
+        session.lastCommandSucceeded = command.run(session, tokens);
+        return !operation.equals("quit");
+    }
+
+    private static Map<String, Command> commands() {
+        Map<String, Command> commands = new HashMap<>();
+        commands.put("create_patient", Scheduler::createPatient);
+        commands.put("create_caregiver", Scheduler::createCaregiver);
+        commands.put("login_patient", Scheduler::loginPatient);
+        commands.put("login_caregiver", Scheduler::loginCaregiver);
+        commands.put("search_caregiver_schedule", Scheduler::searchCaregiverSchedule);
+        commands.put("search_range", Scheduler::searchRange);
+        commands.put("next_available", Scheduler::nextAvailable);
+        commands.put("reserve", Scheduler::reserve);
+        commands.put("upload_availability", Scheduler::uploadAvailability);
+        commands.put("upload_availability_range", Scheduler::uploadAvailabilityRange);
+        commands.put("upload_availability_file", Scheduler::uploadAvailabilityFile);
+        commands.put("import_users", Scheduler::importUsers);
+        commands.put("cancel", Scheduler::cancel);
+        commands.put("cancel_caregiver_day", Scheduler::cancelCaregiverDay);
+        commands.put("cancel_vaccine", Scheduler::cancelVaccine);
+        commands.put("add_doses", Scheduler::addDoses);
+        commands.put("show_appointments", Scheduler::showAppointments);
+        commands.put("logout", Scheduler::logout);
+        commands.put("quit", (session, tokens) -> {
+            session.out.println("Bye!");
+            return true;
+        });
+        return Map.copyOf(commands);
+    }
+
+    static boolean isCommand(String operation) {
+        return COMMANDS.containsKey(operation);
+    }
+
+    /**
+     * One command of the command language, given the session and the tokens of its line (its name first).
+     * It returns whether it did what was asked; a command that only printed why it could not, say "Login
+     * failed." or "No Caregiver is available!", returns false.
+     */
+    @FunctionalInterface
+    private interface Command {
+        boolean run(Session session, String[] tokens);
+    }
+
+    private static boolean createPatient(Session session, String[] tokens) {
         // TODO: Part 1
         // create_Patient <username> <password>
         // check 1: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if (tokens.length != 3) {
-            System.out.println("Failed to create user.");
-            return;
+            session.out.println("Failed to create user.");
+            return false;
         }
         String username = tokens[1];
         String password = tokens[2];
-        // check 2: check if the username has been taken already
-        if (usernameExistsPatient(username)) {
-            System.out.println("Username taken, try again!");
-            return;
-        }
-        byte[] salt = Util.generateSalt();
-        byte[] hash = Util.generateHash(password, salt);
-        // create the Patient
+        // check 2: turn away names we know are taken before hashing; the insert is the real check
+        UsernameFilter usernames;
         try {
-            currentPatient = new Patient.PatientBuilder(username, salt, hash).build();
-            // save the patient information to our database
-            currentPatient.saveToDB();
-            System.out.println("Created user " + username);
+            usernames = UsernameFilter.forPatients();
         } catch (SQLException e) {
-            System.out.println("Failed to create user.");
+            session.out.println("Error occurred when checking username");
             e.printStackTrace();
+            return false;
         }
-    }
-
-    private static boolean usernameExistsPatient(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Patients WHERE Username = ?";
+        if (usernames.contains(username)) {
+            session.out.println("Username taken, try again!");
+            return false;
+        }
+        byte[] salt = Util.generateSalt();
+        byte[] hash = Util.generateHash(password, salt);
+        // create the patient
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            Patient patient = new Patient.PatientBuilder(username, salt, hash).build();
+            // save the patient information to our database
+            patient.saveToDB();
+            session.currentPatient = patient;
+            session.out.println("Created user " + username);
+            return true;
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
+            if (ConnectionManager.isDuplicateKey(e)) {
+                usernames.add(username);
+                session.out.println("Username taken, try again!");
+                return false;
+            }
+            session.out.println("Failed to create user.");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
+            return false;
         }
-        return true;
     }
 
-    private static void createCaregiver(String[] tokens) {
+    private static boolean createCaregiver(Session session, String[] tokens) {
         // create_caregiver <username> <password>
         // check 1: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if (tokens.length != 3) {
-            System.out.println("Failed to create user.");
-            return;
+            session.out.println("Failed to create user.");
+            return false;
         }
         String username = tokens[1];
         String password = tokens[2];
-        // check 2: check if the username has been taken already
-        if (usernameExistsCaregiver(username)) {
-            System.out.println("Username taken, try again!");
-            return;
-        }
-        byte[] salt = Util.generateSalt();
-        byte[] hash = Util.generateHash(password, salt);
-        // create the caregiver
+        // check 2: turn away names we know are taken before hashing; the insert is the real check
+        UsernameFilter usernames;
         try {
-            currentCaregiver = new Caregiver.CaregiverBuilder(username, salt, hash).build();
-            // save to caregiver information to our database
-            currentCaregiver.saveToDB();
-            System.out.println("Created user " + username);
+            usernames = UsernameFilter.forCaregivers();
         } catch (SQLException e) {
-            System.out.println("Failed to create user.");
+            session.out.println("Error occurred when checking username");
             e.printStackTrace();
+            return false;
         }
-    }
-
-    private static boolean usernameExistsCaregiver(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Caregivers WHERE Username = ?";
+        if (usernames.contains(username)) {
+            session.out.println("Username taken, try again!");
+            return false;
+        }
+        byte[] salt = Util.generateSalt();
+        byte[] hash = Util.generateHash(password, salt);
+        // create the caregiver
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            Caregiver caregiver = new Caregiver.CaregiverBuilder(username, salt, hash).build();
+            // save the caregiver information to our database
+            caregiver.saveToDB();
+            session.currentCaregiver = caregiver;
+            session.out.println("Created user " + username);
+            return true;
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
+            if (ConnectionManager.isDuplicateKey(e)) {
+                usernames.add(username);
+                session.out.println("Username taken, try again!");
+                return false;
+            }
+            session.out.println("Failed to create user.");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
+            return false;
         }
-        return true;
     }
 
-    private static void loginPatient(String[] tokens) {
+    private static boolean loginPatient(Session session, String[] tokens) {
         // TODO: Part 1
         // login_patient <username> <password>
         // check 1: if someone's already logged-in, they need to log out first
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("User already logged in.");
-            return;
+        if (session.currentCaregiver != null || session.currentPatient != null) {
+            session.out.println("User already logged in.");
+            return false;
         }
         // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if (tokens.length != 3) {
-            System.out.println("Login failed.");
-            return;
+            session.out.println("Login failed.");
+            return false;
         }
         String username = tokens[1];
         String password = tokens[2];
@@ -212,29 +394,30 @@ public class Scheduler {
         try {
             patient = new Patient.PatientGetter(username, password).get();
         } catch (SQLException e) {
-            System.out.println("Login failed.");
+            session.out.println("Login failed.");
             e.printStackTrace();
         }
         // check if the login was successful
         if (patient == null) {
-            System.out.println("Login failed.");
-        } else {
-            System.out.println("Logged in as: " + username);
-            currentPatient = patient;
+            session.out.println("Login failed.");
+            return false;
         }
+        session.out.println("Logged in as: " + username);
+        session.currentPatient = patient;
+        return true;
     }
 
-    private static void loginCaregiver(String[] tokens) {
+    private static boolean loginCaregiver(Session session, String[] tokens) {
         // login_caregiver <username> <password>
         // check 1: if someone's already logged-in, they need to log out first
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("User already logged in.");
-            return;
+        if (session.currentCaregiver != null || session.currentPatient != null) {
+            session.out.println("User already logged in.");
+            return false;
         }
         // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if (tokens.length != 3) {
-            System.out.println("Login failed.");
-            return;
+            session.out.println("Login failed.");
+            return false;
         }
         String username = tokens[1];
         String password = tokens[2];
@@ -243,367 +426,609 @@ public class Scheduler {
         try {
             caregiver = new Caregiver.CaregiverGetter(username, password).get();
         } catch (SQLException e) {
-            System.out.println("Login failed.");
+            session.out.println("Login failed.");
             e.printStackTrace();
         }
         // check if the login was successful
         if (caregiver == null) {
-            System.out.println("Login failed.");
-        } else {
-            System.out.println("Logged in as: " + username);
-            currentCaregiver = caregiver;
+            session.out.println("Login failed.");
+            return false;
         }
+        session.out.println("Logged in as: " + username);
+        session.currentCaregiver = caregiver;
+        return true;
     }
 
-    private static void searchCaregiverSchedule(String[] tokens) {
+    private static boolean searchCaregiverSchedule(Session session, String[] tokens) {
         // TODO: Part 2
         // check if a user is logged in, can either be patient or caregiver
-        if (currentPatient == null && currentCaregiver == null) {
-            System.out.println("Please login first!");
-            return;
+        if (session.currentPatient == null && session.currentCaregiver == null) {
+            session.out.println("Please login first!");
+            return false;
         }
 
         // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
         if (tokens.length != 2) {
-            System.out.println("Please try again!");
-            return;
+            session.out.println("Please try again!");
+            return false;
         }
 
-        String date = tokens[1];
-
-        // filter the caregivers for the given date
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String caregiverAvail = "SELECT Username FROM Availabilities WHERE Time = ?;";
+        LocalDate date;
         try {
-            PreparedStatement statement = con.prepareStatement(caregiverAvail);
-            statement.setString(1, date);
-            ResultSet resultSet = statement.executeQuery();
+            date = LocalDate.parse(tokens[1]);
+        } catch (DateTimeParseException e) {
+            session.out.println("Please enter a valid date!");
+            return false;
+        }
 
-            // Output the username for the caregivers that are available for the date
-            System.out.println("The caregivers that are available for this date are: ");
-            while (resultSet.next()) {
-                System.out.print(resultSet.getString("Username") + " ");
+        // filter the caregivers for the given date, straight from the availability index
+        boolean found = true;
+        try {
+            if (TimeSlots.isEnabled()) {
+                // one line per caregiver, with the times it is free
+                session.out.println("The caregivers that are available for this date are: ");
+                for (Map.Entry<String, Long> entry : AvailabilityIndex.getInstance().slots(date).entrySet()) {
+                    session.out.println(entry.getKey() + " " + TimeSlots.describe(entry.getValue()));
+                }
+            } else {
+                List<String> caregivers = AvailabilityIndex.getInstance().caregivers(date);
+                // Output the username for the caregivers that are available for the date
+                session.out.println("The caregivers that are available for this date are: ");
+                for (String caregiver : caregivers) {
+                    session.out.print(caregiver + " ");
+                }
+                session.out.println();
             }
-            System.out.println();
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking date.");
-            System.out.println("Please try again!");
+            session.out.println("Error occurred when checking date.");
+            session.out.println("Please try again!");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
+            found = false;
         }
 
         // output the number of available doses left for each vaccine
-        cm = new ConnectionManager();
-        con = cm.createConnection();
+        return printDoses(session, null) && found;
+    }
 
-        String vaccineLeft = "SELECT * FROM Vaccines;";
+    private static boolean searchRange(Session session, String[] tokens) {
+        // search_range <from> <to> [vaccine]
+        // check 1: check if a user is logged in, can either be patient or caregiver
+        if (session.currentPatient == null && session.currentCaregiver == null) {
+            session.out.println("Please login first!");
+            return false;
+        }
+        // check 2: the length for tokens need to be 3 or 4 to include all information (with the operation name)
+        if (tokens.length != 3 && tokens.length != 4) {
+            session.out.println("Please try again!");
+            return false;
+        }
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = LocalDate.parse(tokens[1]);
+            to = LocalDate.parse(tokens[2]);
+        } catch (DateTimeParseException e) {
+            session.out.println("Please enter valid dates in the form 'yyyy-mm-dd'");
+            return false;
+        }
+        if (to.isBefore(from)) {
+            session.out.println("The end date must not be before the start date!");
+            return false;
+        }
 
+        // one range scan over the availability index
         try {
-            PreparedStatement statement = con.prepareStatement(vaccineLeft);
-            ResultSet resultSet = statement.executeQuery();
+            Map<LocalDate, Integer> counts = AvailabilityIndex.getInstance().counts(from, to);
+            session.out.println("Days with available caregivers from " + from + " to " + to + ": " + counts.size());
+            for (Map.Entry<LocalDate, Integer> entry : counts.entrySet()) {
+                session.out.println("Date: " + entry.getKey() + " Caregivers available: " + entry.getValue());
+            }
+        } catch (SQLException e) {
+            session.out.println("Error occurred when checking dates.");
+            session.out.println("Please try again!");
+            e.printStackTrace();
+            return false;
+        }
+        return printDoses(session, tokens.length == 4 ? tokens[3] : null);
+    }
 
-            System.out.println(" The number of available does left for each vaccine: ");
-            while (resultSet.next()) {
-                System.out.print("Name of Vaccine: " + resultSet.getString("Name") + " ");
-                System.out.print("Doses Left: " + resultSet.getString("Doses") + " ");
+    private static boolean nextAvailable(Session session, String[] tokens) {
+        // next_available <vaccine> [n]
+        // check 1: check if a user is logged in, can either be patient or caregiver
+        if (session.currentPatient == null && session.currentCaregiver == null) {
+            session.out.println("Please login first!");
+            return false;
+        }
+        // check 2: the length for tokens need to be 2 or 3 to include all information (with the operation name)
+        if (tokens.length != 2 && tokens.length != 3) {
+            session.out.println("Please try again!");
+            return false;
+        }
+        String vaccineName = tokens[1];
+        int n = 1;
+        if (tokens.length == 3) {
+            try {
+                n = Integer.parseInt(tokens[2]);
+            } catch (NumberFormatException e) {
+                n = 0;
+            }
+            if (n <= 0) {
+                session.out.println("Please enter a positive number of days!");
+                return false;
+            }
+        }
+
+        // one scan of the availability index starting today
+        try {
+            Map<LocalDate, Integer> counts = AvailabilityIndex.getInstance().next(LocalDate.now(), n);
+            if (counts.isEmpty()) {
+                session.out.println("No Caregiver is available!");
+            } else {
+                session.out.println("The next days with available caregivers are: ");
+                for (Map.Entry<LocalDate, Integer> entry : counts.entrySet()) {
+                    session.out.println("Date: " + entry.getKey() + " Caregivers available: " + entry.getValue());
+                }
             }
-            System.out.println();
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking vaccines.");
-            System.out.println("Please try again!");
+            session.out.println("Error occurred when checking dates.");
+            session.out.println("Please try again!");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
+            return false;
         }
+        return printDoses(session, vaccineName);
     }
 
-    private static void reserve(String[] tokens) {
+    // output the number of available doses left for one vaccine, or for all of them if vaccineName is null
+    private static boolean printDoses(Session session, String vaccineName) {
+        try {
+            // both the ledger and the catalog answer from memory
+            Map<String, Integer> doses = DoseLedger.isEnabled()
+                    ? DoseLedger.getInstance().getAllDoses()
+                    : VaccineCatalog.getInstance().getAllDoses();
+            session.out.println(" The number of available does left for each vaccine: ");
+            for (Map.Entry<String, Integer> entry : doses.entrySet()) {
+                if (vaccineName == null || vaccineName.equals(entry.getKey())) {
+                    session.out.print("Name of Vaccine: " + entry.getKey() + " ");
+                    session.out.print("Doses Left: " + entry.getValue() + " ");
+                }
+            }
+            session.out.println();
+            return true;
+        } catch (SQLException e) {
+            session.out.println("Error occurred when checking vaccines.");
+            session.out.println("Please try again!");
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean reserve(Session session, String[] tokens) {
         // TODO: Part 2
         // Patients perform this operation to reserve an appointment
-        if (currentPatient == null) {
-            System.out.println("Please login first!");
-            return;
+        if (session.currentPatient == null) {
+            session.out.println("Please login first!");
+            return false;
         }
-        if (currentCaregiver != null) {
-            System.out.println("Please login as a patient!");
-            return;
+        if (session.currentCaregiver != null) {
+            session.out.println("Please login as a patient!");
+            return false;
         }
-        // Check: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Please try again!");
-            return;
+        // Check: the tokens need to be 3 to include all information (with the operation name), or 4 with a time
+        if (tokens.length != 3 && tokens.length != 4) {
+            session.out.println("Please try again!");
+            return false;
         }
 
         // Variables setup
         String reserveDate = tokens[1];
         String vaccineName = tokens[2];
-        String caregiverName = "";
-        int availVaccine = 0;
         Date d = null;
 
         // Verify the date
         try {
             d = Date.valueOf(reserveDate);
         } catch(IllegalArgumentException e) {
-            System.out.println("Having a invalid date");
+            session.out.println("Having a invalid date");
         }
         if (d == null) {
-            System.out.println("Please enter a valid date in the form 'yyyy-mm-dd");
-            return;
+            session.out.println("Please enter a valid date in the form 'yyyy-mm-dd");
+            return false;
         }
-
-        // build the connection
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String vaccineCheck = "SELECT * FROM Vaccines AS V WHERE V.Name = ?;";
-        String reserveInfo = "SELECT TOP 1 * FROM Availabilities WHERE Time = ?;";
-        try {
-            try {
-                // conduct a vaccine check of doses availability
-                PreparedStatement statement = con.prepareStatement(vaccineCheck);
-                statement.setString(1, vaccineName);
-                ResultSet resultSet = statement.executeQuery();
-                if (resultSet.next()) {
-                    availVaccine = resultSet.getInt("Doses");
-                    if (availVaccine <= 0) {
-                        System.out.println("Not enough available doses!");
-                    }
-                } else {
-                    System.out.println("Please enter a valid vaccine name");
-                    return;
-                }
-            } catch (SQLException e) {
-                System.out.println("Error occurred when checking vaccines.");
-                System.out.println("Please try again!");
-                e.printStackTrace();
-            }
+        // without a time, the first free slot of the assigned caregiver
+        int slot = -1;
+        if (tokens.length == 4) {
             try {
-                // find a caregiver
-                PreparedStatement statement = con.prepareStatement(reserveInfo);
-                statement.setString(1, reserveDate);
-                ResultSet resultSet = statement.executeQuery();
-
-                // choose the caregiver by alphabetical order
-                if (resultSet.next()) {
-                    caregiverName = resultSet.getString("Username");
-                } else {
-                    System.out.println("No Caregiver is available!");
-                    return;
-                }
-            } catch (SQLException e) {
-                System.out.println("Error occurred when assigning the caregiver.");
-                System.out.println("Please try again!");
-                e.printStackTrace();
+                slot = TimeSlots.parse(tokens[3]);
+            } catch (IllegalArgumentException e) {
+                session.out.println(e.getMessage());
+                return false;
             }
-        } finally {
-            cm.closeConnection();
         }
 
-        // Output the appointment ID
-        // build the connection
-        cm = new ConnectionManager();
-        con = cm.createConnection();
-        int newID = 0;
-        int max = -1;
-
-        // Search for the current max ID
-        String maxID = "SELECT * FROM Appointment;";
+        // take a dose, claim a caregiver and insert the appointment in a single transaction
+        Appointment appointment;
         try {
-            PreparedStatement statement = con.prepareStatement(maxID);
-            // obtain the maxID
-            ResultSet resultSet = statement.executeQuery();
-            if (!resultSet.next()) {
-                max = 0;;
-            } else {
-                while (resultSet.next()) {
-                    newID = resultSet.getInt("ID");
-                    if (newID > max) {
-                        max = newID;
-                    }
-                }
-                // max + 1 will be the appointment ID
-            }
+            appointment = new Appointment.AppointmentReserver(session.currentPatient.getUsername(), d, slot, vaccineName)
+                    .reserve();
+        } catch (IllegalArgumentException e) {
+            session.out.println(e.getMessage());
+            return false;
         } catch (SQLException e) {
-            System.out.println("Error occurred when setting the appointment ID.");
-            System.out.println("Please try again!");
+            session.out.println("Error occurred when making the appointment.");
+            session.out.println("Please try again!");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
+            return false;
         }
+        session.out.println("Congrats, you have successfully made an appointment!");
+        session.out.println("Your appointment ID is: " + appointment.getId());
+        session.out.println("Your assigned caregiver is: " + appointment.getCaregiverName());
+        if (TimeSlots.isEnabled()) {
+            session.out.println("Your appointment time is: " + appointment.getStartTime());
+        }
+        return true;
+    }
 
-        // Insert the newly created appointment
-        // Get the current patient name
-        String PatientName = currentPatient.getUsername();
-
-        cm = new ConnectionManager();
-        con = cm.createConnection();
+    public static void removeAvailability(Date d, String username) throws SQLException {
+        ReservationJournal.applyPending();
+        Repositories.availabilities().delete(d.toLocalDate(), username);
+        AvailabilityIndex.getInstance().remove(d.toLocalDate(), username);
+    }
 
-        String makeappointment = "INSERT INTO Appointment VALUES (?, ?, ?, ?, ?);";
-        // Begin Insertion
-        try {
-            PreparedStatement statement = con.prepareStatement(makeappointment);
-            statement.setString(1, Integer.toString(max+1));
-            statement.setString(2, reserveDate);
-            statement.setString(3, caregiverName);
-            statement.setString(4, PatientName);
-            statement.setString(5, vaccineName);
-            statement.executeUpdate();
-            // decrease the vaccine storage by 1
+    private static boolean uploadAvailability(Session session, String[] tokens) {
+        // upload_availability <date> [hh:mm-hh:mm]
+        // check 1: check if the current logged-in user is a caregiver
+        if (session.currentCaregiver == null) {
+            session.out.println("Please login as a caregiver first!");
+            return false;
+        }
+        // check 2: the tokens need to be 2 to include all information (with the operation name), or 3 with times
+        if (tokens.length != 2 && tokens.length != 3) {
+            session.out.println("Please try again!");
+            return false;
+        }
+        // the whole day unless a range of times is given
+        long slots = TimeSlots.ALL;
+        if (tokens.length == 3) {
             try {
-                Vaccine vaccine = new Vaccine.VaccineGetter(vaccineName).get();
-                vaccine.decreaseAvailableDoses(1);
-            } catch (SQLException e) {
-                System.out.println("Error occurred when updating vaccine doses.");
-                System.out.println("Please try again!");
-                e.printStackTrace();
+                slots = TimeSlots.parseRange(tokens[2]);
+            } catch (IllegalArgumentException e) {
+                session.out.println(e.getMessage());
+                return false;
             }
-            // remove the availability for the caregiver on that day
-            try {
-                removeAvailability(d, caregiverName);
-            } catch (SQLException e) {
-                System.out.println("Error occurred when removing caregiver availability.");
-                System.out.println("Please try again!");
-                e.printStackTrace();
+        }
+        String date = tokens[1];
+        try {
+            Date d = Date.valueOf(date);
+            long free = session.currentCaregiver.uploadAvailability(d, slots);
+            session.out.println("Availability uploaded!");
+            if (TimeSlots.isEnabled()) {
+                session.out.println("Free on " + d + ": " + TimeSlots.describe(free));
             }
+            return true;
+        } catch (IllegalArgumentException e) {
+            session.out.println("Please enter a valid date!");
+            return false;
         } catch (SQLException e) {
-            System.out.println("Error occurred when updating appointments.");
-            System.out.println("Please try again!");
+            session.out.println("Error occurred when uploading availability");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
+            return false;
         }
-        System.out.println("Congrats, you have successfully made an appointment!");
-        System.out.println("Your appointment ID is: " + Integer.toString(max+1));
-        System.out.println("Your assigned caregiver is: " + caregiverName);
     }
 
-    public static void removeAvailability(Date d, String username) throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String decAvailability = "DELETE FROM Availabilities WHERE Time = ? AND Username = ?;";
+    private static boolean uploadAvailabilityRange(Session session, String[] tokens) {
+        // upload_availability_range <start> <end> [weekdays]
+        // check 1: check if the current logged-in user is a caregiver
+        if (session.currentCaregiver == null) {
+            session.out.println("Please login as a caregiver first!");
+            return false;
+        }
+        // check 2: the length for tokens need to be 3 or 4 to include all information (with the operation name)
+        if (tokens.length != 3 && tokens.length != 4) {
+            session.out.println("Please try again!");
+            return false;
+        }
+        LocalDate start;
+        LocalDate end;
         try {
-            PreparedStatement statement = con.prepareStatement(decAvailability);
-            statement.setDate(1, d);
-            statement.setString(2, username);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
+            start = LocalDate.parse(tokens[1]);
+            end = LocalDate.parse(tokens[2]);
+        } catch (DateTimeParseException e) {
+            session.out.println("Please enter valid dates in the form 'yyyy-mm-dd'");
+            return false;
+        }
+        if (end.isBefore(start) || ChronoUnit.DAYS.between(start, end) >= MAX_UPLOAD_DAYS) {
+            session.out.println("Please enter a range of at most " + MAX_UPLOAD_DAYS + " days!");
+            return false;
+        }
+        // weekdays, e.g. MON,WED,FRI; every day of the week if omitted
+        Set<DayOfWeek> weekdays = EnumSet.allOf(DayOfWeek.class);
+        if (tokens.length == 4) {
+            weekdays = EnumSet.noneOf(DayOfWeek.class);
+            for (String day : tokens[3].split(",")) {
+                DayOfWeek match = null;
+                for (DayOfWeek candidate : DayOfWeek.values()) {
+                    if (day.length() >= 3 && candidate.name().startsWith(day.toUpperCase())) {
+                        match = candidate;
+                    }
+                }
+                if (match == null) {
+                    session.out.println("Please enter weekdays like MON,WED,FRI");
+                    return false;
+                }
+                weekdays.add(match);
+            }
         }
+
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+            if (weekdays.contains(day.getDayOfWeek())) {
+                days.add(day);
+            }
+        }
+        return uploadAvailabilities(session, days);
     }
 
-    private static void uploadAvailability(String[] tokens) {
-        // upload_availability <date>
+    private static boolean uploadAvailabilityFile(Session session, String[] tokens) {
+        // upload_availability_file <path>
         // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
-            return;
+        if (session.currentCaregiver == null) {
+            session.out.println("Please login as a caregiver first!");
+            return false;
         }
         // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
         if (tokens.length != 2) {
-            System.out.println("Please try again!");
-            return;
+            session.out.println("Please try again!");
+            return false;
         }
-        String date = tokens[1];
+        Path path = filePath(session, tokens[1]);
+        if (path == null) {
+            return false;
+        }
+        // one date per line, blank lines and lines starting with # are ignored
+        List<LocalDate> days = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    days.add(LocalDate.parse(line));
+                } catch (DateTimeParseException e) {
+                    session.out.println("Please enter a valid date on line " + lineNumber + ": " + line);
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            session.out.println("Could not read the file " + tokens[1]);
+            return false;
+        }
+        return uploadAvailabilities(session, days);
+    }
+
+    /**
+     * The file a command names, or null after telling the user why it may not use it. A remote session is
+     * confined to its file directory, symbolic links included, and has none unless the server was given one.
+     */
+    private static Path filePath(Session session, String name) {
         try {
-            Date d = Date.valueOf(date);
-            currentCaregiver.uploadAvailability(d);
-            System.out.println("Availability uploaded!");
-        } catch (IllegalArgumentException e) {
-            System.out.println("Please enter a valid date!");
+            if (!session.remote) {
+                return Paths.get(name);
+            }
+            if (session.fileDirectory == null) {
+                session.out.println("File commands are not available on this server.");
+                return null;
+            }
+            Path path = session.fileDirectory.resolve(name).normalize();
+            // a file that does not exist yet is checked by its directory
+            Path real = Files.exists(path) ? path.toRealPath()
+                    : path.getParent().toRealPath().resolve(path.getFileName());
+            if (real.startsWith(session.fileDirectory)) {
+                return real;
+            }
+        } catch (IOException | InvalidPathException e) {
+            // reported below
+        }
+        session.out.println("Please name a file in the server's file directory!");
+        return null;
+    }
+
+    private static boolean uploadAvailabilities(Session session, List<LocalDate> days) {
+        try {
+            int inserted = session.currentCaregiver.uploadAvailabilities(days);
+            session.out.println("Availability uploaded! Inserted: " + inserted + " Skipped: " + (days.size() - inserted));
+            return true;
+        } catch (SQLException e) {
+            session.out.println("Error occurred when uploading availability");
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean importUsers(Session session, String[] tokens) {
+        // import_users <csv_path> [reject_path]
+        // check 1: onboarding accounts is staff work, so a caregiver needs to be logged in
+        if (session.currentCaregiver == null) {
+            session.out.println("Please login as a caregiver first!");
+            return false;
+        }
+        // check 2: the length for tokens need to be 2 or 3 (with the operation name)
+        if (tokens.length != 2 && tokens.length != 3) {
+            session.out.println("Please try again!");
+            return false;
+        }
+        // rejected lines go next to the input unless another file is given
+        String rejectPath = tokens.length == 3 ? tokens[2] : tokens[1] + ".rejects";
+        Path path = filePath(session, tokens[1]);
+        Path rejectsPath = path == null ? null : filePath(session, rejectPath);
+        if (rejectsPath == null) {
+            return false;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+             PrintWriter rejects = new PrintWriter(Files.newBufferedWriter(rejectsPath, StandardCharsets.UTF_8))) {
+            UserImporter importer = new UserImporter(rejects);
+            importer.importUsers(reader);
+            session.out.println("Users imported! Imported: " + importer.getImported()
+                    + " Rejected: " + importer.getRejected());
+            if (importer.getRejected() > 0) {
+                session.out.println("Rejected lines were written to " + rejectPath);
+            }
+            return true;
+        } catch (IOException e) {
+            session.out.println("Could not read the file " + tokens[1]);
+            return false;
         } catch (SQLException e) {
-            System.out.println("Error occurred when uploading availability");
+            session.out.println("Error occurred when importing users");
             e.printStackTrace();
+            return false;
         }
     }
 
-    private static void cancel(String[] tokens) {
+    private static boolean cancel(Session session, String[] tokens) {
         // TODO: Extra credit
-        if (currentPatient == null && currentCaregiver == null) {
-            System.out.println("Please login first!");
-            return;
+        if (session.currentPatient == null && session.currentCaregiver == null) {
+            session.out.println("Please login first!");
+            return false;
         }
         if (tokens.length != 2) {
-            System.out.println("Please try again!");
-            return;
+            session.out.println("Please try again!");
+            return false;
         }
 
-        String appointmentID = tokens[1];
+        int appointmentID;
+        try {
+            appointmentID = Integer.parseInt(tokens[1]);
+        } catch (NumberFormatException e) {
+            session.out.println("Please try again!");
+            return false;
+        }
 
-        // build the connection
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+        // caregivers can cancel any appointments, while patients can only cancel their own
+        String patientName = session.currentCaregiver == null ? session.currentPatient.getUsername() : null;
+        try {
+            new Appointment.AppointmentCanceller().cancel(appointmentID, patientName);
+        } catch (IllegalArgumentException e) {
+            session.out.println(e.getMessage());
+            return false;
+        } catch (SQLException e) {
+            session.out.println("Please try again!");
+            e.printStackTrace();
+            return false;
+        }
+        session.out.println("appointment has been successfully canceled!");
+        return true;
+    }
 
-        // load the appointment info
-        String checkAppointment = "SELECT * FROM Appointment WHERE ID = ?;";
-        String cancelAppointment = "DELETE FROM Appointment WHERE ID = ?;";
-        String increAvailability = "INSERT INTO Availabilities VALUES (?, ?);";
+    private static boolean cancelCaregiverDay(Session session, String[] tokens) {
+        // cancel_caregiver_day <caregiver> <date>
+        // check 1: cancelling for someone else is staff work, so a caregiver needs to be logged in
+        if (session.currentCaregiver == null) {
+            session.out.println("Please login as a caregiver first!");
+            return false;
+        }
+        // check 2: the length for tokens need to be exactly 3 (with the operation name)
+        if (tokens.length != 3) {
+            session.out.println("Please try again!");
+            return false;
+        }
+        LocalDate day;
         try {
-            PreparedStatement statement = con.prepareStatement(checkAppointment);
-            statement.setString(1, appointmentID);
-            ResultSet resultSet = statement.executeQuery();
-            if (resultSet.next()) {
-                String patientName = resultSet.getString("Username_P");
-                // caregivers can cancel any appointments, while patients can only cancel their own 
-                if ((currentPatient != null && currentPatient.getUsername() == patientName) || (currentCaregiver != null)) {
-                    String vaccineName = resultSet.getString("Name_V");
-                    String caregiverName = resultSet.getString("Username_C");
-                    String time = resultSet.getString("AppointmentTime");
-                    // increase the vaccine storage by 1
-                    Vaccine vaccine = new Vaccine.VaccineGetter(vaccineName).get();
-                    vaccine.increaseAvailableDoses(1);
-                    // add the caregiver back to the availabilities table
-                    statement = con.prepareStatement(increAvailability);
-                    statement.setString(1, time);
-                    statement.setString(2, caregiverName);
-                    statement.executeUpdate();
-                    // delete the appointment
-                    statement = con.prepareStatement(cancelAppointment);
-                    statement.setString(1, appointmentID);
-                    statement.executeUpdate();
-                } else {
-                    System.out.println("Sorry, you need permission");
-                    return;
-                }
-            } else {
-                System.out.println("The appointment does not exist!");
-                return;
-            }
+            day = LocalDate.parse(tokens[2]);
+        } catch (DateTimeParseException e) {
+            session.out.println("Please enter a valid date in the form 'yyyy-mm-dd'");
+            return false;
+        }
+        try {
+            List<Appointment> cancelled = new Appointment.AppointmentCanceller().cancelCaregiverDay(tokens[1], day);
+            printCancelled(session, cancelled);
+            return true;
         } catch (SQLException e) {
-            System.out.println("Please try again!");
+            session.out.println("Error occurred when cancelling appointments");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
+            return false;
         }
-        System.out.println("appointment has been successfully canceled!");
     }
 
-    private static void addDoses(String[] tokens) {
+    private static boolean cancelVaccine(Session session, String[] tokens) {
+        // cancel_vaccine <vaccine> [from] [to]
+        // check 1: cancelling for someone else is staff work, so a caregiver needs to be logged in
+        if (session.currentCaregiver == null) {
+            session.out.println("Please login as a caregiver first!");
+            return false;
+        }
+        // check 2: the length for tokens need to be 2 to 4 (with the operation name)
+        if (tokens.length < 2 || tokens.length > 4) {
+            session.out.println("Please try again!");
+            return false;
+        }
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = tokens.length > 2 ? LocalDate.parse(tokens[2]) : LocalDate.of(1, 1, 1);
+            to = tokens.length > 3 ? LocalDate.parse(tokens[3]) : LocalDate.of(9999, 12, 31);
+        } catch (DateTimeParseException e) {
+            session.out.println("Please enter valid dates in the form 'yyyy-mm-dd'");
+            return false;
+        }
+        try {
+            List<Appointment> cancelled = new Appointment.AppointmentCanceller().cancelVaccine(tokens[1], from, to);
+            printCancelled(session, cancelled);
+            return true;
+        } catch (SQLException e) {
+            session.out.println("Error occurred when cancelling appointments");
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // one line per appointment, so that staff know whom to tell
+    private static void printCancelled(Session session, List<Appointment> cancelled) {
+        session.out.println("Appointments cancelled: " + cancelled.size());
+        StringBuilder row = new StringBuilder();
+        for (Appointment appointment : cancelled) {
+            row.setLength(0);
+            row.append("Appointment ID: ").append(appointment.getId()).append(' ')
+                    .append("Vaccine Name: ").append(appointment.getVaccineName()).append(' ')
+                    .append("Date: ").append(appointment.getTime()).append(' ');
+            if (TimeSlots.isEnabled()) {
+                row.append("Time: ").append(appointment.getStartTime()).append(' ');
+            }
+            row.append("Caregiver name: ").append(appointment.getCaregiverName()).append(' ')
+                    .append("Patient name: ").append(appointment.getPatientName());
+            session.out.println(row);
+        }
+    }
+
+    private static boolean addDoses(Session session, String[] tokens) {
         // add_doses <vaccine> <number>
         // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
-            return;
+        if (session.currentCaregiver == null) {
+            session.out.println("Please login as a caregiver first!");
+            return false;
         }
         // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
         if (tokens.length != 3) {
-            System.out.println("Please try again!");
-            return;
+            session.out.println("Please try again!");
+            return false;
         }
         String vaccineName = tokens[1];
-        int doses = Integer.parseInt(tokens[2]);
+        int doses;
+        try {
+            doses = Integer.parseInt(tokens[2]);
+        } catch (NumberFormatException e) {
+            session.out.println("Please enter a whole number of doses!");
+            return false;
+        }
         Vaccine vaccine = null;
         try {
             vaccine = new Vaccine.VaccineGetter(vaccineName).get();
         } catch (SQLException e) {
-            System.out.println("Error occurred when adding doses");
+            session.out.println("Error occurred when adding doses");
             e.printStackTrace();
+            return false;
         }
         // check 3: if getter returns null, it means that we need to create the vaccine and insert it into the Vaccines
         //          table
@@ -612,108 +1037,102 @@ public class Scheduler {
                 vaccine = new Vaccine.VaccineBuilder(vaccineName, doses).build();
                 vaccine.saveToDB();
             } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
+                session.out.println("Error occurred when adding doses");
                 e.printStackTrace();
+                return false;
             }
         } else {
             // if the vaccine is not null, meaning that the vaccine already exists in our table
             try {
                 vaccine.increaseAvailableDoses(doses);
             } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
+                session.out.println("Error occurred when adding doses");
                 e.printStackTrace();
+                return false;
             }
         }
-        System.out.println("Doses updated!");
+        session.out.println("Doses updated!");
+        return true;
     }
 
-    private static void showAppointments(String[] tokens) {
-        // TODO: Part 2
-        // check if a user is logged in, can either be patient or caregiver
-        if (currentPatient == null && currentCaregiver == null) {
-            System.out.println("Please login first!");
-            return;
+    private static boolean showAppointments(Session session, String[] tokens) {
+        // show_appointments [after_id] [limit] [from] [to]
+        // check 1: check if a user is logged in, can either be patient or caregiver
+        if (session.currentPatient == null && session.currentCaregiver == null) {
+            session.out.println("Please login first!");
+            return false;
         }
-        // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
-        if (tokens.length != 1) {
-            System.out.println("Please try again!");
-            return;
+        // check 2: at most four optional arguments (with the operation name)
+        if (tokens.length > 5) {
+            session.out.println("Please try again!");
+            return false;
+        }
+        int afterId;
+        int limit;
+        LocalDate from;
+        LocalDate to;
+        try {
+            afterId = tokens.length > 1 ? Integer.parseInt(tokens[1]) : 0;
+            limit = tokens.length > 2 ? Integer.parseInt(tokens[2]) : APPOINTMENT_PAGE_SIZE;
+            from = tokens.length > 3 ? LocalDate.parse(tokens[3]) : LocalDate.of(1, 1, 1);
+            to = tokens.length > 4 ? LocalDate.parse(tokens[4]) : LocalDate.of(9999, 12, 31);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            session.out.println("Please try again!");
+            return false;
+        }
+        if (limit <= 0) {
+            session.out.println("Please enter a positive limit!");
+            return false;
         }
 
-        // variables setup
-        List<Integer> appointmentID = new ArrayList<>();
-        List<String> vaccineName = new ArrayList<>();
-        List<Date> date = new ArrayList<>();
-
-        // build the connection
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        if (currentCaregiver != null) { //  for caregivers
-            List<String> patientName = new ArrayList<>();
-            String curName = currentCaregiver.getUsername();
-            String AppointmentInfo = "SELECT * FROM Appointment WHERE Username_C = ?;";
-            try {
-                PreparedStatement statement = con.prepareStatement(AppointmentInfo);
-                statement.setString(1, curName);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    appointmentID.add(resultSet.getInt("ID"));
-                    vaccineName.add(resultSet.getString("Name_V"));
-                    date.add(resultSet.getDate("AppointmentTime"));
-                    patientName.add(resultSet.getString("Username_P"));
-                }
-                for (int i = 0; i < patientName.size(); i++) {
-                    System.out.print("Appointment ID: " + appointmentID.get(i) + " ");
-                    System.out.print("Vaccine Name: " + vaccineName.get(i) + " ");
-                    System.out.print("Date: " + date.get(i) + " ");
-                    System.out.println("Patient name: " + patientName.get(i) + " ");
-                }
-            } catch (SQLException e) {
-                System.out.println("Please try again!");
-                e.printStackTrace();
-            } finally {
-                cm.closeConnection();
-            }
-        } else if (currentPatient != null) { // for patients
-            List<String> caregiverName = new ArrayList<>();
-            String curName = currentPatient.getUsername();
-            String AppointmentInfo = "SELECT * FROM Appointment WHERE Username_P = ?;";
-            try {
-                PreparedStatement statement = con.prepareStatement(AppointmentInfo);
-                statement.setString(1, curName);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    appointmentID.add(resultSet.getInt("ID"));
-                    vaccineName.add(resultSet.getString("Name_V"));
-                    date.add(resultSet.getDate("AppointmentTime"));
-                    caregiverName.add(resultSet.getString("Username_C"));
-                }
-                for (int i = 0; i < caregiverName.size(); i++) {
-                    System.out.print("Appointment ID: " + appointmentID.get(i) + " ");
-                    System.out.print("Vaccine Name: " + vaccineName.get(i) + " ");
-                    System.out.print("Date: " + date.get(i) + " ");
-                    System.out.println("Caregiver name: " + caregiverName.get(i) + " ");
+        boolean caregiver = session.currentCaregiver != null;
+        String curName = caregiver ? session.currentCaregiver.getUsername() : session.currentPatient.getUsername();
+        String otherLabel = caregiver ? "Patient name: " : "Caregiver name: ";
+        // keyset pagination: the next page starts after the last ID printed, so no page re-reads earlier rows;
+        // rows are printed as they arrive, nothing is collected first
+        int[] count = {0};
+        int[] lastId = {afterId};
+        StringBuilder row = new StringBuilder();
+        try {
+            // journaled bookings and cancellations are not in the table until applied
+            ReservationJournal.applyPending();
+            Repositories.appointments().forEachOf(caregiver, curName, afterId, from, to, limit, appointment -> {
+                lastId[0] = appointment.getId();
+                row.setLength(0);
+                row.append("Appointment ID: ").append(lastId[0]).append(' ')
+                        .append("Vaccine Name: ").append(appointment.getVaccineName()).append(' ')
+                        .append("Date: ").append(appointment.getTime()).append(' ');
+                if (TimeSlots.isEnabled()) {
+                    row.append("Time: ").append(appointment.getStartTime()).append(' ');
                 }
-            } catch (SQLException e) {
-                System.out.println("Please try again!");
-                e.printStackTrace();
-            } finally {
-                cm.closeConnection();
+                row.append(otherLabel)
+                        .append(caregiver ? appointment.getPatientName() : appointment.getCaregiverName()).append(' ');
+                session.out.println(row);
+                count[0]++;
+            });
+            if (count[0] == limit) {
+                session.out.println("More appointments: show_appointments " + lastId[0] + " " + limit
+                        + (tokens.length > 3 ? " " + from : "") + (tokens.length > 4 ? " " + to : ""));
             }
+            return true;
+        } catch (SQLException e) {
+            session.out.println("Please try again!");
+            e.printStackTrace();
+            return false;
         }
     }
 
-    private static void logout(String[] tokens) {
+    private static boolean logout(Session session, String[] tokens) {
         // TODO: Part 2
         // check if the user is in login status or not
-        if (currentPatient == null && currentCaregiver == null) {
-            System.out.println("Please login first!");
-            return;
+        if (session.currentPatient == null && session.currentCaregiver == null) {
+            session.out.println("Please login first!");
+            return false;
         }
-        currentCaregiver = null;
-        currentPatient = null;
-        System.out.println("Successfully logged out!");
+        session.currentCaregiver = null;
+        session.currentPatient = null;
+        session.out.println("Successfully logged out!");
         // Note: this method cannot have an error
+        return true;
     }
 }
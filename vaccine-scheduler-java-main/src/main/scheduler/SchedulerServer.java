@@ -0,0 +1,108 @@
+package scheduler;
+
+import scheduler.util.Util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Serves the scheduler's command language to many clients at once over a line-based TCP protocol.
+ *
+ * Every client connection gets its own {@link Session} and its own virtual thread, so idle clients only cost
+ * a socket and a small stack. Commands are run through {@link Scheduler#execute(Session, String)}, the same
+ * command layer the CLI uses, but at most {@code ServerDbConcurrency} commands run at the same time so that
+ * a burst of clients queues for a permit instead of for pooled connections. A command can lease up to two
+ * connections at once, so the default is half of {@code PoolMaxSize}.
+ *
+ * A command that throws is answered with an error line and logged, and the session goes on. Commands that
+ * take file paths (upload_availability_file, import_users) would read and write the server's filesystem, so
+ * they are refused unless {@code ServerFileDirectory} names a directory, and then only reach files inside it.
+ *
+ * The server listens on {@code ServerHost} (127.0.0.1 by default); try it with {@code nc localhost 5050}.
+ */
+public class SchedulerServer {
+
+    private final int port;
+    private final InetAddress host;
+    private final Semaphore dbPermits;
+    // the only place clients' file commands may use, or null for none
+    private final Path fileDirectory;
+
+    public SchedulerServer(int port) throws IOException {
+        this.port = port;
+        this.host = InetAddress.getByName(Util.getSetting("ServerHost", "127.0.0.1"));
+        int defaultConcurrency = Math.max(1, Util.getIntSetting("PoolMaxSize", 10) / 2);
+        this.dbPermits = new Semaphore(Util.getIntSetting("ServerDbConcurrency", defaultConcurrency), true);
+        String directory = Util.getSetting("ServerFileDirectory", null);
+        this.fileDirectory = directory == null || directory.isBlank() ? null : Paths.get(directory).toRealPath();
+    }
+
+    public void run() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 1024, host);
+             ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            System.out.println("Scheduler server listening on " + host.getHostAddress() + ":" + port);
+            while (!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                clients.submit(() -> serve(socket));
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            Session session = new Session(out, true, true, fileDirectory);
+            Scheduler.printGreeting(out);
+            while (true) {
+                out.print("> ");
+                out.flush();
+                String line = in.readLine();
+                if (line == null) {
+                    return;
+                }
+                dbPermits.acquire();
+                boolean keepGoing = true;
+                try {
+                    keepGoing = Scheduler.execute(session, line);
+                } catch (RuntimeException e) {
+                    // a bug in one command must not drop the client; only the command name is logged, the rest
+                    // of the line may hold a password
+                    int end = line.indexOf(' ');
+                    System.out.println("Command " + (end < 0 ? line : line.substring(0, end)) + " from "
+                            + socket.getRemoteSocketAddress() + " failed");
+                    e.printStackTrace();
+                    out.println("Error occurred when running the command.");
+                    out.flush();
+                } finally {
+                    dbPermits.release();
+                }
+                if (!keepGoing) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // the client went away, nothing left to clean up
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // the executor would keep it in a Future nobody reads
+            System.out.println("Session with " + socket.getRemoteSocketAddress() + " failed");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package scheduler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs a script in the command language in one session, for batch jobs: no greeting and no prompts, blank
+ * lines and lines starting with # are skipped, and the script ends at its last line or at quit.
+ *
+ * All output goes through one buffered writer that is only flushed when its buffer fills up and at the end,
+ * so a long script is not held back by the console. In JSON mode every command becomes one line
+ * {@code {"line":3,"command":"reserve","ok":true,"ms":1.250,"output":["...","..."]}}, where ok is what the
+ * command reported, false for "Login failed." as much as for a database error, and false for a line that is
+ * not a command. A command that throws counts as failed and the script goes on with the next line. Either
+ * way the script ends with a summary of how many commands ran and failed, per command and in total, which is
+ * written out even if reading the script fails half way.
+ */
+public class ScriptRunner {
+
+    private final PrintWriter out;
+    private final boolean json;
+
+    private final Map<String, int[]> counts = new TreeMap<>();
+    private int commands = 0;
+    private int failed = 0;
+    private int invalid = 0;
+
+    public ScriptRunner(PrintWriter out, boolean json) {
+        this.out = out;
+        this.json = json;
+    }
+
+    public void run(BufferedReader in) throws IOException {
+        // in JSON mode every command's output is collected first, to become one line
+        StringWriter captured = new StringWriter();
+        Session session = new Session(json ? new PrintWriter(captured) : out, false);
+        long start = System.nanoTime();
+        int lineNumber = 0;
+        String line;
+        boolean keepGoing = true;
+        try {
+            while (keepGoing && (line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                long begin = System.nanoTime();
+                boolean ok;
+                try {
+                    keepGoing = Scheduler.execute(session, line);
+                    ok = session.lastCommandSucceeded;
+                } catch (RuntimeException e) {
+                    // a bug in one command must not cost the results of the whole script
+                    session.out.println("Error occurred when running the command: " + e);
+                    e.printStackTrace();
+                    ok = false;
+                }
+                long took = System.nanoTime() - begin;
+
+                int end = line.indexOf(' ');
+                String operation = end < 0 ? line : line.substring(0, end);
+                boolean known = Scheduler.isCommand(operation);
+                count(known ? operation : "invalid", known && ok);
+                if (json) {
+                    session.out.flush();
+                    writeJson(lineNumber, operation, known && ok, took, captured.toString());
+                    captured.getBuffer().setLength(0);
+                }
+            }
+        } finally {
+            session.out.flush();
+            summarize(System.nanoTime() - start);
+            out.flush();
+        }
+    }
+
+    private void count(String operation, boolean ok) {
+        int[] count = counts.computeIfAbsent(operation, name -> new int[2]);
+        count[0]++;
+        commands++;
+        if (!ok) {
+            count[1]++;
+            if (operation.equals("invalid")) {
+                invalid++;
+            } else {
+                failed++;
+            }
+        }
+    }
+
+    private void writeJson(int lineNumber, String operation, boolean ok, long nanos, String output) {
+        StringBuilder json = new StringBuilder(64 + output.length());
+        json.append("{\"line\":").append(lineNumber).append(",\"command\":");
+        quote(json, operation);
+        json.append(",\"ok\":").append(ok)
+                .append(",\"ms\":").append(String.format("%.3f", nanos / 1e6))
+                .append(",\"output\":[");
+        int from = 0;
+        boolean first = true;
+        while (from < output.length()) {
+            int to = output.indexOf('\n', from);
+            if (to < 0) {
+                to = output.length();
+            }
+            // println writes the platform line separator
+            int lineEnd = to > from && output.charAt(to - 1) == '\r' ? to - 1 : to;
+            if (!first) {
+                json.append(',');
+            }
+            quote(json, output.substring(from, lineEnd));
+            first = false;
+            from = to + 1;
+        }
+        json.append("]}");
+        out.println(json);
+    }
+
+    private void summarize(long nanos) {
+        double seconds = nanos / 1e9;
+        double rate = seconds > 0 ? commands / seconds : 0;
+        if (json) {
+            StringBuilder summary = new StringBuilder("{\"summary\":{\"commands\":").append(commands)
+                    .append(",\"failed\":").append(failed)
+                    .append(",\"invalid\":").append(invalid)
+                    .append(",\"seconds\":").append(String.format("%.3f", seconds))
+                    .append(",\"commandsPerSecond\":").append(String.format("%.1f", rate))
+                    .append(",\"perCommand\":{");
+            boolean first = true;
+            for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+                if (!first) {
+                    summary.append(',');
+                }
+                quote(summary, entry.getKey());
+                summary.append(":{\"count\":").append(entry.getValue()[0])
+                        .append(",\"failed\":").append(entry.getValue()[1]).append('}');
+                first = false;
+            }
+            out.println(summary.append("}}}"));
+            return;
+        }
+        out.printf("Script finished: %d commands, %d failed, %d invalid, in %.2f s (%.1f commands/s)%n",
+                commands, failed, invalid, seconds, rate);
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            out.printf("  %-26s %9d  failed %d%n", entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+    }
+
+    private static void quote(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c == '\n') {
+                json.append("\\n");
+            } else if (c == '\r') {
+                json.append("\\r");
+            } else if (c == '\t') {
+                json.append("\\t");
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
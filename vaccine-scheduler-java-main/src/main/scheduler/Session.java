@@ -0,0 +1,53 @@
+package scheduler;
+
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+
+import java.io.PrintWriter;
+import java.nio.file.Path;
+
+/**
+ * The state of one user's conversation with the scheduler: who is logged in and where command output goes.
+ * The CLI and a script use a single session on stdout, the server creates one per client connection.
+ */
+public class Session {
+
+    // objects to keep track of the currently logged-in user
+    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
+    //       since only one user can be logged-in at a time
+    Caregiver currentCaregiver = null;
+    Patient currentPatient = null;
+
+    final PrintWriter out;
+    // the CLI and the server flush after every command, a script only once it is done
+    final boolean flushEachCommand;
+    // whether the last command did what it was asked, as the command itself reported
+    boolean lastCommandSucceeded = false;
+    // file commands read and write the server's filesystem: a local session may name any file, a remote one
+    // only files in fileDirectory, and none at all if it is null
+    final boolean remote;
+    final Path fileDirectory;
+
+    public Session(PrintWriter out) {
+        this(out, true);
+    }
+
+    public Session(PrintWriter out, boolean flushEachCommand) {
+        this(out, flushEachCommand, false, null);
+    }
+
+    Session(PrintWriter out, boolean flushEachCommand, boolean remote, Path fileDirectory) {
+        this.out = out;
+        this.flushEachCommand = flushEachCommand;
+        this.remote = remote;
+        this.fileDirectory = fileDirectory;
+    }
+
+    public Caregiver getCurrentCaregiver() {
+        return currentCaregiver;
+    }
+
+    public Patient getCurrentPatient() {
+        return currentPatient;
+    }
+}
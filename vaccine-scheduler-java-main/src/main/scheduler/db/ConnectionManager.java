@@ -1,41 +1,79 @@
 package scheduler.db;
 
+import scheduler.metrics.Metrics;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
+/**
+ * Leases a single connection from the shared {@link ConnectionPool} for the duration of one unit of work.
+ * {@link #createConnection()} borrows the connection and {@link #closeConnection()} hands it back to the pool,
+ * so creating a ConnectionManager is cheap and no longer opens a physical connection.
+ */
 public class ConnectionManager {
 
-    private final String driverName = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
-    private final String connectionUrl = "jdbc:sqlserver://" + System.getenv("Server") +
-            ".database.windows.net:1433;database=" + System.getenv("DBName");
-    private final String userName = System.getenv("UserID");
-    private final String userPass = System.getenv("Password");
+    // whether the database is SQL Server, once the first caller asked
+    private static volatile Boolean sqlServer = null;
 
-    private Connection con = null;
+    private final ConnectionPool pool;
+    private PooledConnection pooled = null;
 
     public ConnectionManager() {
-        try {
-            Class.forName(driverName);
-        } catch (ClassNotFoundException e) {
-            System.out.println(e.toString());
-        }
+        this.pool = ConnectionPool.getInstance();
     }
 
     public Connection createConnection() {
-        try {
-            con = DriverManager.getConnection(connectionUrl, userName, userPass);
-        } catch (SQLException e) {
-            e.printStackTrace();
+        if (pooled == null) {
+            try {
+                pooled = pool.borrow();
+                Metrics.connectionOpened();
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return null;
+            }
         }
-        return con;
+        return pooled.getConnection();
     }
 
-    public void closeConnection() {
-        try {
-            this.con.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
+    // returns a prepared statement from the leased connection's statement cache
+    // Note: the statement is reused by later callers of the same connection, do not close it
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        if (pooled == null) {
+            throw new SQLException("No database connection available");
         }
+        return pooled.prepareStatement(sql);
+    }
+
+    // the database only changes with the JdbcUrl, so the first connection answers for all of them
+    boolean isSqlServer() throws SQLException {
+        Boolean answer = sqlServer;
+        if (answer == null) {
+            Connection con = createConnection();
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            answer = MigrationRunner.dialect(con.getMetaData()).equals("sqlserver");
+            sqlServer = answer;
+        }
+        return answer;
+    }
+
+    public void closeConnection() {
+        pool.release(pooled);
+        pooled = null;
+    }
+
+    // the SQLState of a unique violation; the rest of class 23 (foreign keys, NOT NULL, checks) is no duplicate
+    public static final String UNIQUE_VIOLATION = "23505";
+
+    // true if the exception reports a primary key or unique constraint violation
+    public static boolean isDuplicateKey(SQLException e) {
+        // 2627 and 2601 are SQL Server's unique constraint and unique index violations
+        return UNIQUE_VIOLATION.equals(e.getSQLState()) || e.getErrorCode() == 2627 || e.getErrorCode() == 2601;
+    }
+
+    public static PoolStats getPoolStats() {
+        return ConnectionPool.getInstance().getStats();
     }
 }
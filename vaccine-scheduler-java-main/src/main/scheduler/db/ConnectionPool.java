@@ -0,0 +1,355 @@
+package scheduler.db;
+
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of JDBC connections shared by every {@link ConnectionManager}.
+ *
+ * Connections are leased with {@link #borrow()} and handed back with {@link #release(PooledConnection)}.
+ * The pool keeps at least {@code PoolMinIdle} connections open, never opens more than {@code PoolMaxSize},
+ * validates connections that sat idle for a while before handing them out, and retires connections older
+ * than {@code PoolMaxLifetimeMs}. All settings are read through {@link Util#getSetting(String, String)}.
+ *
+ * By default the pool connects to the Azure SQL Server described by the Server/DBName/UserID/Password
+ * environment variables. Setting {@code JdbcUrl} points it at any other JDBC database instead, for example an
+ * embedded one such as {@code jdbc:h2:mem:scheduler;MODE=MSSQLServer;DB_CLOSE_DELAY=-1} for offline testing.
+ */
+public class ConnectionPool {
+
+    private static final String SQL_SERVER_DRIVER = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
+
+    private static ConnectionPool instance = null;
+
+    private final String connectionUrl;
+    private final String userName;
+    private final String userPass;
+    private final int maxSize;
+    private final int minIdle;
+    private final long acquireTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final long validationIntervalMillis;
+    private final int statementCacheSize;
+
+    // fair, so that threads waiting for a connection are served in arrival order
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition returned = lock.newCondition();
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+    private int total = 0;
+    private int leased = 0;
+    private int peakLeased = 0;
+    private boolean closed = false;
+
+    private final ScheduledExecutorService housekeeper;
+
+    // statistics
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder saturatedCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder retiredCount = new LongAdder();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public static synchronized ConnectionPool getInstance() {
+        if (instance == null) {
+            // Note: no shutdown hook closes the pool, other shutdown hooks may still need it to write back
+            //       state, and the connections go away with the process anyway
+            instance = new ConnectionPool();
+        }
+        return instance;
+    }
+
+    private ConnectionPool() {
+        this(Util.getSetting("JdbcUrl", "jdbc:sqlserver://" + System.getenv("Server") +
+                        ".database.windows.net:1433;database=" + System.getenv("DBName")),
+                Util.getSetting("UserID", null),
+                Util.getSetting("Password", null),
+                Util.getIntSetting("PoolMaxSize", 10),
+                Util.getIntSetting("PoolMinIdle", 2),
+                Util.getLongSetting("PoolAcquireTimeoutMs", 30_000),
+                Util.getLongSetting("PoolMaxLifetimeMs", 30 * 60_000),
+                Util.getLongSetting("PoolValidationIntervalMs", 500),
+                Util.getIntSetting("StatementCacheSize", 32));
+    }
+
+    // a pool of its own, apart from the shared one, for tests
+    ConnectionPool(String connectionUrl, String userName, String userPass, int maxSize, int minIdle,
+                   long acquireTimeoutMillis, long maxLifetimeMillis, long validationIntervalMillis,
+                   int statementCacheSize) {
+        this.connectionUrl = connectionUrl;
+        this.userName = userName;
+        this.userPass = userPass;
+        this.maxSize = Math.max(1, maxSize);
+        this.minIdle = Math.min(this.maxSize, Math.max(0, minIdle));
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.statementCacheSize = statementCacheSize;
+
+        if (connectionUrl.startsWith("jdbc:sqlserver:")) {
+            try {
+                Class.forName(SQL_SERVER_DRIVER);
+            } catch (ClassNotFoundException e) {
+                System.out.println(e.toString());
+            }
+        }
+
+        fillToMinIdle();
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::houseKeep, 30, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Leases a connection, waiting up to {@code PoolAcquireTimeoutMs} when every connection is in use.
+     */
+    public PooledConnection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+        boolean waited = false;
+        while (true) {
+            PooledConnection pc = null;
+            boolean create = false;
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("Connection pool is closed");
+                    }
+                    pc = idle.pollLast();
+                    if (pc != null) {
+                        break;
+                    }
+                    if (total < maxSize) {
+                        total++;
+                        create = true;
+                        break;
+                    }
+                    if (!waited) {
+                        waited = true;
+                        saturatedCount.increment();
+                    }
+                    if (remaining <= 0) {
+                        timeoutCount.increment();
+                        throw new SQLException("Timed out after " + acquireTimeoutMillis +
+                                " ms waiting for a database connection");
+                    }
+                    try {
+                        remaining = returned.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection", e);
+                    }
+                }
+                leased++;
+                peakLeased = Math.max(peakLeased, leased);
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                try {
+                    pc = open();
+                } catch (SQLException e) {
+                    discard();
+                    throw e;
+                }
+            } else if (!isUsable(pc)) {
+                pc.close();
+                retiredCount.increment();
+                discard();
+                continue;
+            }
+            recordAcquire(System.nanoTime() - start);
+            return pc;
+        }
+    }
+
+    /**
+     * Hands a leased connection back. Any transaction left open by the borrower is rolled back.
+     */
+    public void release(PooledConnection pc) {
+        if (pc == null) {
+            return;
+        }
+        boolean healthy;
+        try {
+            Connection con = pc.getConnection();
+            healthy = !con.isClosed();
+            if (healthy && !con.getAutoCommit()) {
+                con.rollback();
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            healthy = false;
+        }
+        if (!healthy || pc.isExpired(System.currentTimeMillis(), maxLifetimeMillis)) {
+            pc.close();
+            retiredCount.increment();
+            discard();
+            return;
+        }
+        pc.markReturned();
+        lock.lock();
+        try {
+            leased--;
+            if (closed) {
+                total--;
+                pc.close();
+            } else {
+                idle.addLast(pc);
+            }
+            returned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public PoolStats getStats() {
+        lock.lock();
+        try {
+            long acquires = acquireCount.sum();
+            return new PoolStats(total, idle.size(), leased, peakLeased, maxSize, acquires,
+                    saturatedCount.sum(), timeoutCount.sum(), createdCount.sum(), retiredCount.sum(),
+                    acquires == 0 ? 0 : totalWaitNanos.get() / acquires, maxWaitNanos.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            total -= idle.size();
+            idle.clear();
+            returned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        housekeeper.shutdownNow();
+        for (PooledConnection pc : toClose) {
+            pc.close();
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection con = DriverManager.getConnection(connectionUrl, userName, userPass);
+        createdCount.increment();
+        return new PooledConnection(con, statementCacheSize);
+    }
+
+    // a leased slot was given up, either because opening failed or because the connection was retired
+    private void discard() {
+        lock.lock();
+        try {
+            total--;
+            leased--;
+            returned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        long now = System.currentTimeMillis();
+        if (pc.isExpired(now, maxLifetimeMillis)) {
+            return false;
+        }
+        // connections that were used a moment ago are assumed to be alive, which saves a round trip
+        if (pc.getIdleMillis(now) < validationIntervalMillis) {
+            return true;
+        }
+        try {
+            return pc.getConnection().isValid(5);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void recordAcquire(long waitNanos) {
+        acquireCount.increment();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    // retire expired idle connections and top the pool back up to the minimum idle count
+    private void houseKeep() {
+        List<PooledConnection> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            idle.removeIf(pc -> {
+                if (pc.isExpired(now, maxLifetimeMillis)) {
+                    expired.add(pc);
+                    return true;
+                }
+                return false;
+            });
+            total -= expired.size();
+        } finally {
+            lock.unlock();
+        }
+        for (PooledConnection pc : expired) {
+            pc.close();
+            retiredCount.increment();
+        }
+        fillToMinIdle();
+    }
+
+    private void fillToMinIdle() {
+        while (true) {
+            lock.lock();
+            try {
+                if (closed || idle.size() >= minIdle || total >= maxSize) {
+                    return;
+                }
+                total++;
+            } finally {
+                lock.unlock();
+            }
+            PooledConnection pc;
+            try {
+                pc = open();
+            } catch (SQLException e) {
+                lock.lock();
+                try {
+                    total--;
+                } finally {
+                    lock.unlock();
+                }
+                System.out.println("Could not open a database connection: " + e.getMessage());
+                return;
+            }
+            lock.lock();
+            try {
+                idle.addLast(pc);
+                returned.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package scheduler.db;
+
+import scheduler.repository.Repositories;
+import scheduler.util.Util;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out unique integer IDs using the hi/lo scheme.
+ *
+ * IDs are served from an in-memory block with a single {@link AtomicLong#getAndIncrement()}. When the block
+ * runs out, the next {@code IdBlockSize} IDs are claimed durably from the block source (for appointments,
+ * {@link scheduler.repository.AppointmentRepository#claimIds}, which advances a row of the Sequences table
+ * in a transaction), so IDs stay unique across every process sharing the database and allocating an ID
+ * costs one round trip per block instead of a scan of the owning table.
+ * IDs left unused in a block when the process exits are skipped, never reused.
+ */
+public class IdAllocator {
+
+    private static IdAllocator appointments = null;
+
+    private final BlockSource source;
+    private final int blockSize;
+    private volatile Block current = new Block(0, 0);
+    // a lock rather than synchronized, so that virtual threads waiting for a refill don't pin their carrier
+    private final ReentrantLock refillLock = new ReentrantLock();
+
+    /**
+     * @param source    where blocks of IDs are claimed
+     * @param blockSize how many IDs to claim per round trip
+     */
+    public IdAllocator(BlockSource source, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive!");
+        }
+        this.source = source;
+        this.blockSize = blockSize;
+    }
+
+    public static synchronized IdAllocator forAppointments() {
+        if (appointments == null) {
+            appointments = new IdAllocator(count -> Repositories.appointments().claimIds(count),
+                    Util.getIntSetting("IdBlockSize", 50));
+        }
+        return appointments;
+    }
+
+    public int nextId() throws SQLException {
+        while (true) {
+            Block block = current;
+            long id = block.next.getAndIncrement();
+            if (id < block.end) {
+                return Math.toIntExact(id);
+            }
+            refillLock.lock();
+            try {
+                // another thread may have refilled while we were waiting for the lock
+                if (current == block) {
+                    long start = source.claim(blockSize);
+                    current = new Block(start, start + blockSize);
+                }
+            } finally {
+                refillLock.unlock();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface BlockSource {
+        // reserves count fresh IDs and returns the first
+        long claim(int count) throws SQLException;
+    }
+
+    private static class Block {
+        private final AtomicLong next;
+        private final long end;
+
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package scheduler.db;
+
+import scheduler.metrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Wraps prepared statements so that every execution, every row read from their result sets and every
+ * SQLException they raise is reported to {@link Metrics} for the command running on the calling thread.
+ *
+ * The wrapper is made once per statement when it enters a connection's statement cache, so a cached
+ * statement costs nothing extra to look up; a query still allocates one small wrapper for its result set.
+ */
+class InstrumentedStatements {
+
+    static PreparedStatement wrap(PreparedStatement statement) {
+        if (!Metrics.isEnabled()) {
+            return statement;
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new StatementHandler(statement));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException) {
+                Metrics.sqlError();
+            }
+            throw e.getCause();
+        }
+    }
+
+    private static class StatementHandler implements InvocationHandler {
+        private final PreparedStatement statement;
+
+        private StatementHandler(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                // a batch is one round trip, however many rows it carries
+                Metrics.statementExecuted();
+            }
+            Object result = InstrumentedStatements.invoke(statement, method, args);
+            if (result instanceof ResultSet) {
+                return Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                        new Class<?>[]{ResultSet.class}, new ResultSetHandler((ResultSet) result));
+            }
+            return result;
+        }
+    }
+
+    private static class ResultSetHandler implements InvocationHandler {
+        private final ResultSet resultSet;
+
+        private ResultSetHandler(ResultSet resultSet) {
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = InstrumentedStatements.invoke(resultSet, method, args);
+            if (Boolean.TRUE.equals(result) && method.getName().equals("next")) {
+                Metrics.rowRead();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package scheduler.db;
+
+import scheduler.repository.CaregiverRepository;
+import scheduler.repository.PatientRepository;
+import scheduler.repository.StoredAccount;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Patients and Caregivers tables, which have the same columns; one instance serves each table.
+ */
+public class JdbcAccountRepository implements PatientRepository, CaregiverRepository {
+
+    private final String table;
+
+    // table is Patients or Caregivers
+    public JdbcAccountRepository(String table) {
+        this.table = table;
+    }
+
+    @Override
+    public void insert(StoredAccount account) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        try {
+            PreparedStatement statement = cm.prepareStatement(insertSql());
+            bind(statement, account);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            // a taken username is passed on as is, so that callers can tell it apart
+            if (ConnectionManager.isDuplicateKey(e)) {
+                throw e;
+            }
+            throw new SQLException();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    /**
+     * Inserts the accounts as one JDBC batch in one transaction. If the batch hits a taken username it is
+     * rolled back and the accounts are inserted one at a time instead, to find out which ones are taken.
+     */
+    @Override
+    public List<String> insertAll(List<StoredAccount> accounts) throws SQLException {
+        List<String> taken = new ArrayList<>();
+        if (accounts.isEmpty()) {
+            return taken;
+        }
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            con.setAutoCommit(false);
+            PreparedStatement statement = cm.prepareStatement(insertSql());
+            for (StoredAccount account : accounts) {
+                bind(statement, account);
+                statement.addBatch();
+            }
+            try {
+                statement.executeBatch();
+                con.commit();
+                return taken;
+            } catch (BatchUpdateException e) {
+                if (!ConnectionManager.isDuplicateKey(e)) {
+                    throw e;
+                }
+                con.rollback();
+                statement.clearBatch();
+            }
+
+            con.setAutoCommit(true);
+            for (StoredAccount account : accounts) {
+                bind(statement, account);
+                try {
+                    statement.executeUpdate();
+                } catch (SQLException e) {
+                    if (!ConnectionManager.isDuplicateKey(e)) {
+                        throw e;
+                    }
+                    taken.add(account.getUsername());
+                }
+            }
+            return taken;
+        } finally {
+            // an unfinished transaction is rolled back when the connection goes back to the pool
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public StoredAccount find(String username) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        String getAccount = "SELECT Salt, Hash, HashParams FROM " + table + " WHERE Username = ?";
+        try {
+            PreparedStatement statement = cm.prepareStatement(getAccount);
+            statement.setString(1, username);
+            ResultSet resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                return null;
+            }
+            return new StoredAccount(username, resultSet.getBytes("Salt"), resultSet.getBytes("Hash"),
+                    resultSet.getString("HashParams"));
+        } catch (SQLException e) {
+            throw new SQLException();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public boolean replaceHash(StoredAccount account, String expectedParams) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        String upgrade = "UPDATE " + table + " SET Salt = ?, Hash = ?, HashParams = ? WHERE Username = ? AND " +
+                (expectedParams == null ? "HashParams IS NULL" : "HashParams = ?");
+        try {
+            PreparedStatement statement = cm.prepareStatement(upgrade);
+            statement.setBytes(1, account.getSalt());
+            statement.setBytes(2, account.getHash());
+            statement.setString(3, account.getHashParams());
+            statement.setString(4, account.getUsername());
+            if (expectedParams != null) {
+                statement.setString(5, expectedParams);
+            }
+            return statement.executeUpdate() == 1;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public List<String> usernames() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        String getUsernames = "SELECT Username FROM " + table + ";";
+        List<String> usernames = new ArrayList<>();
+        try {
+            PreparedStatement statement = cm.prepareStatement(getUsernames);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                usernames.add(resultSet.getString("Username"));
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return usernames;
+    }
+
+    private String insertSql() {
+        return "INSERT INTO " + table + " (Username, Salt, Hash, HashParams) VALUES (?, ?, ?, ?)";
+    }
+
+    private static void bind(PreparedStatement statement, StoredAccount account) throws SQLException {
+        statement.setString(1, account.getUsername());
+        statement.setBytes(2, account.getSalt());
+        statement.setBytes(3, account.getHash());
+        statement.setString(4, account.getHashParams());
+    }
+}
@@ -0,0 +1,687 @@
+package scheduler.db;
+
+import scheduler.model.Appointment;
+import scheduler.repository.AppointmentChange;
+import scheduler.repository.AppointmentRepository;
+import scheduler.repository.CaregiverPicker;
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import static scheduler.db.SurrogateKeys.CAREGIVERS;
+import static scheduler.db.SurrogateKeys.PATIENTS;
+import static scheduler.db.JdbcAvailabilityRepository.bindAddDay;
+import static scheduler.db.JdbcAvailabilityRepository.bindClaim;
+import static scheduler.db.JdbcAvailabilityRepository.bindDropFull;
+import static scheduler.db.JdbcAvailabilityRepository.bindFree;
+import static scheduler.db.JdbcAvailabilityRepository.prepareAddDay;
+import static scheduler.db.JdbcAvailabilityRepository.prepareClaim;
+import static scheduler.db.JdbcAvailabilityRepository.prepareDropFull;
+import static scheduler.db.JdbcAvailabilityRepository.prepareFree;
+import static scheduler.db.SurrogateKeys.VACCINES;
+
+/**
+ * Appointment stores caregivers, patients and vaccines by their integer IDs, which the methods translate to
+ * and from the names through {@link SurrogateKeys}, except that find and forEachOf join the names in.
+ */
+public class JdbcAppointmentRepository implements AppointmentRepository {
+
+    private static final String SEQUENCE = "Appointment";
+    private static final String COLUMNS = "ID, AppointmentTime, Slot, Caregiver_ID, Patient_ID, Vaccine_ID";
+    // appointments with the names their IDs stand for joined in, so that reading a row needs no other query
+    private static final String NAMED = "SELECT a.ID, a.AppointmentTime, a.Slot, c.Username AS Caregiver, " +
+            "p.Username AS Patient, v.Name AS Vaccine FROM Appointment a " +
+            "JOIN Caregivers c ON c.ID = a.Caregiver_ID JOIN Patients p ON p.ID = a.Patient_ID " +
+            "JOIN Vaccines v ON v.ID = a.Vaccine_ID ";
+    // book on SQL Server: the dose, the claim, the drop of a full day and the insert as one batch that commits or
+    // rolls back on the server and answers whether it took the dose and claimed the slot. XACT_ABORT rolls the
+    // transaction back on any error, and the SET options end with the batch
+    private static final String BOOK_BATCH = "SET NOCOUNT ON; SET XACT_ABORT ON; " +
+            "DECLARE @dosed int = 1, @claimed int = 0; " +
+            "BEGIN TRANSACTION; " +
+            "IF ? = 1 BEGIN UPDATE Vaccines SET Doses = Doses - 1 WHERE ID = ? AND Doses > 0; " +
+            "SET @dosed = @@ROWCOUNT; END; " +
+            "IF @dosed = 1 BEGIN UPDATE Availabilities SET Slots = Slots & ? " +
+            "WHERE Time = ? AND Caregiver_ID = ? AND (Slots & ?) <> 0; SET @claimed = @@ROWCOUNT; END; " +
+            "IF @claimed = 1 BEGIN " +
+            "DELETE FROM Availabilities WHERE Time = ? AND Caregiver_ID = ? AND Slots = 0; " +
+            "INSERT INTO Appointment (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?); " +
+            "COMMIT; END ELSE ROLLBACK; " +
+            "SELECT @dosed AS Dosed, @claimed AS Claimed;";
+    // how many rows forEachOf fetches per round trip
+    private static final int FETCH_SIZE = Util.getIntSetting("AppointmentFetchSize", 256);
+    // set once the driver answered a batch of claims without a row count for each, see bookAll
+    private static volatile boolean perRowClaims = false;
+
+    /**
+     * The whole booking is one transaction on one pooled connection: a conditional dose decrement, a claim of
+     * one slot in a caregiver's availability (deleting the day if that was its last free slot) and the
+     * appointment insert, followed by the commit. A caregiver
+     * only belongs to this booking if our UPDATE cleared the slot's bit; otherwise a concurrent booking got
+     * there first and the picker is asked for the next one.
+     *
+     * On SQL Server all of it is one round trip, {@link #BOOK_BATCH}, plus one more for every caregiver whose
+     * slot was taken first. Other databases have no batches with control flow, so there it is a round trip per
+     * statement and one for the commit: five for a booking whose first caregiver is free. That leaves H2, which
+     * mostly runs embedded, where a round trip is a method call.
+     */
+    @Override
+    public Appointment book(int id, LocalDate day, String patient, String vaccine, boolean takeDose,
+                            CaregiverPicker picker) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        String takeDoseSql = "UPDATE Vaccines SET Doses = Doses - 1 WHERE ID = ? AND Doses > 0;";
+        String addAppointment = "INSERT INTO Appointment (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?);";
+        Date time = Date.valueOf(day);
+        try {
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            int vaccineId = VACCINES.idOf(cm, vaccine);
+            if (vaccineId == 0) {
+                throw new IllegalArgumentException(UNKNOWN_VACCINE);
+            }
+            int patientId = PATIENTS.idOf(cm, patient);
+            if (cm.isSqlServer()) {
+                return bookInBatch(cm, id, time, patientId, patient, vaccineId, vaccine, takeDose, picker);
+            }
+            con.setAutoCommit(false);
+
+            PreparedStatement statement;
+            if (takeDose) {
+                statement = cm.prepareStatement(takeDoseSql);
+                statement.setInt(1, vaccineId);
+                if (statement.executeUpdate() == 0) {
+                    con.rollback();
+                    throw new IllegalArgumentException(NOT_ENOUGH_DOSES);
+                }
+            }
+
+            String caregiver = null;
+            int caregiverId = 0;
+            int slot = 0;
+            while (caregiver == null) {
+                String candidate = picker.next();
+                if (candidate == null) {
+                    con.rollback();
+                    throw new IllegalArgumentException(NO_CAREGIVER);
+                }
+                caregiverId = CAREGIVERS.idOf(cm, candidate);
+                slot = picker.slot();
+                statement = prepareClaim(cm);
+                bindClaim(statement, time, caregiverId, slot);
+                if (statement.executeUpdate() == 1) {
+                    caregiver = candidate;
+                }
+            }
+            statement = prepareDropFull(cm);
+            bindDropFull(statement, time, caregiverId);
+            statement.executeUpdate();
+
+            statement = cm.prepareStatement(addAppointment);
+            statement.setInt(1, id);
+            statement.setDate(2, time);
+            statement.setInt(3, slot);
+            statement.setInt(4, caregiverId);
+            statement.setInt(5, patientId);
+            statement.setInt(6, vaccineId);
+            statement.executeUpdate();
+
+            con.commit();
+            return new Appointment(id, time, slot, caregiver, patient, vaccine);
+        } finally {
+            // an unfinished transaction is rolled back when the connection goes back to the pool
+            cm.closeConnection();
+        }
+    }
+
+    // book as one batch per caregiver tried, each a transaction of its own that commits once it claimed the slot
+    private static Appointment bookInBatch(ConnectionManager cm, int id, Date time, int patientId, String patient,
+                                           int vaccineId, String vaccine, boolean takeDose, CaregiverPicker picker)
+            throws SQLException {
+        PreparedStatement statement = cm.prepareStatement(BOOK_BATCH);
+        while (true) {
+            String candidate = picker.next();
+            if (candidate == null) {
+                throw new IllegalArgumentException(NO_CAREGIVER);
+            }
+            int caregiverId = CAREGIVERS.idOf(cm, candidate);
+            int slot = picker.slot();
+            long bit = 1L << slot;
+            statement.setInt(1, takeDose ? 1 : 0);
+            statement.setInt(2, vaccineId);
+            statement.setLong(3, ~bit);
+            statement.setDate(4, time);
+            statement.setInt(5, caregiverId);
+            statement.setLong(6, bit);
+            statement.setDate(7, time);
+            statement.setInt(8, caregiverId);
+            statement.setInt(9, id);
+            statement.setDate(10, time);
+            statement.setInt(11, slot);
+            statement.setInt(12, caregiverId);
+            statement.setInt(13, patientId);
+            statement.setInt(14, vaccineId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                if (resultSet.getInt("Dosed") == 0) {
+                    throw new IllegalArgumentException(NOT_ENOUGH_DOSES);
+                }
+                if (resultSet.getInt("Claimed") == 1) {
+                    return new Appointment(id, time, slot, candidate, patient, vaccine);
+                }
+            }
+            // the batch rolled back, dose included; the next one takes it again
+        }
+    }
+
+    /**
+     * One transaction in as many round trips as there are vaccines, plus three: a batch of slot claims, a batch
+     * deleting the days left without a free slot, a batch of inserts for the appointments whose claim found
+     * the slot free, and one dose update per vaccine for all of its appointments, which like book's never
+     * takes more than is left.
+     *
+     * Only a claim that updated exactly one row is ours. A driver may answer a batch with SUCCESS_NO_INFO
+     * instead of the counts; then the batch is rolled back and the claims are made one statement at a time,
+     * as they are from then on.
+     */
+    @Override
+    public boolean[] bookAll(List<Appointment> appointments) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        String addAppointment = "INSERT INTO Appointment (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?);";
+        String takeDoses = "UPDATE Vaccines SET Doses = Doses - ? WHERE ID = ? AND Doses >= ?;";
+        try {
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            int[] caregiverIds = new int[appointments.size()];
+            for (int i = 0; i < caregiverIds.length; i++) {
+                caregiverIds[i] = CAREGIVERS.idOf(cm, appointments.get(i).getCaregiverName());
+            }
+            con.setAutoCommit(false);
+
+            boolean[] booked = claimAll(cm, con, appointments, caregiverIds);
+            PreparedStatement statement = prepareDropFull(cm);
+            boolean any = false;
+            for (int i = 0; i < booked.length; i++) {
+                if (booked[i]) {
+                    bindDropFull(statement, appointments.get(i).getTime(), caregiverIds[i]);
+                    statement.addBatch();
+                    any = true;
+                }
+            }
+            if (any) {
+                statement.executeBatch();
+            }
+
+            Map<Integer, Integer> doses = new HashMap<>();
+            statement = cm.prepareStatement(addAppointment);
+            for (int i = 0; i < booked.length; i++) {
+                if (!booked[i]) {
+                    continue;
+                }
+                Appointment appointment = appointments.get(i);
+                int vaccineId = VACCINES.idOf(cm, appointment.getVaccineName());
+                statement.setInt(1, appointment.getId());
+                statement.setDate(2, appointment.getTime());
+                statement.setInt(3, appointment.getSlot());
+                statement.setInt(4, caregiverIds[i]);
+                statement.setInt(5, PATIENTS.idOf(cm, appointment.getPatientName()));
+                statement.setInt(6, vaccineId);
+                statement.addBatch();
+                doses.merge(vaccineId, 1, Integer::sum);
+            }
+            if (!doses.isEmpty()) {
+                statement.executeBatch();
+                statement = cm.prepareStatement(takeDoses);
+                for (Map.Entry<Integer, Integer> entry : doses.entrySet()) {
+                    statement.setInt(1, entry.getValue());
+                    statement.setInt(2, entry.getKey());
+                    statement.setInt(3, entry.getValue());
+                    if (statement.executeUpdate() == 0) {
+                        con.rollback();
+                        throw new IllegalArgumentException(NOT_ENOUGH_DOSES);
+                    }
+                }
+            }
+
+            con.commit();
+            return booked;
+        } finally {
+            // an unfinished transaction is rolled back when the connection goes back to the pool
+            cm.closeConnection();
+        }
+    }
+
+    // whether each appointment's claim cleared its slot's bit
+    private static boolean[] claimAll(ConnectionManager cm, Connection con, List<Appointment> appointments,
+                                      int[] caregiverIds) throws SQLException {
+        boolean[] claimed = new boolean[appointments.size()];
+        PreparedStatement statement = prepareClaim(cm);
+        if (!perRowClaims) {
+            for (int i = 0; i < claimed.length; i++) {
+                Appointment appointment = appointments.get(i);
+                bindClaim(statement, appointment.getTime(), caregiverIds[i], appointment.getSlot());
+                statement.addBatch();
+            }
+            int[] counts = statement.executeBatch();
+            boolean reliable = counts.length == claimed.length;
+            for (int i = 0; reliable && i < counts.length; i++) {
+                reliable = counts[i] == 0 || counts[i] == 1;
+                claimed[i] = counts[i] == 1;
+            }
+            if (reliable) {
+                return claimed;
+            }
+            // the claims come first in the transaction, so this undoes nothing else
+            con.rollback();
+            perRowClaims = true;
+        }
+        for (int i = 0; i < claimed.length; i++) {
+            Appointment appointment = appointments.get(i);
+            bindClaim(statement, appointment.getTime(), caregiverIds[i], appointment.getSlot());
+            claimed[i] = statement.executeUpdate() == 1;
+        }
+        return claimed;
+    }
+
+    @Override
+    public Appointment find(int id) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        String checkAppointment = NAMED + "WHERE a.ID = ?;";
+        try {
+            PreparedStatement statement = cm.prepareStatement(checkAppointment);
+            statement.setInt(1, id);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? read(resultSet) : null;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public Appointment cancel(int id, String patient) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            int patientId = patient == null ? 0 : PATIENTS.idOf(cm, patient);
+            con.setAutoCommit(false);
+            List<Appointment> cancelled = deleteWhere(cm, patient == null ? "ID = ?" : "ID = ? AND Patient_ID = ?",
+                    statement -> {
+                        statement.setInt(1, id);
+                        if (patient != null) {
+                            statement.setInt(2, patientId);
+                        }
+                    });
+            restoreDoses(cm, cancelled);
+            releaseCaregivers(cm, cancelled);
+            con.commit();
+            return cancelled.isEmpty() ? null : cancelled.get(0);
+        } finally {
+            // an unfinished transaction is rolled back when the connection goes back to the pool
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public List<Appointment> cancelCaregiverDay(String caregiver, LocalDate day) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        String removeAvailability = "DELETE FROM Availabilities WHERE Time = ? AND Caregiver_ID = ?;";
+        Date time = Date.valueOf(day);
+        try {
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            int caregiverId = CAREGIVERS.idOf(cm, caregiver);
+            con.setAutoCommit(false);
+            List<Appointment> cancelled = deleteWhere(cm, "Caregiver_ID = ? AND AppointmentTime = ?", statement -> {
+                statement.setInt(1, caregiverId);
+                statement.setDate(2, time);
+            });
+            restoreDoses(cm, cancelled);
+            PreparedStatement statement = cm.prepareStatement(removeAvailability);
+            statement.setDate(1, time);
+            statement.setInt(2, caregiverId);
+            statement.executeUpdate();
+            con.commit();
+            return cancelled;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public List<Appointment> cancelVaccine(String vaccine, LocalDate from, LocalDate to) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            int vaccineId = VACCINES.idOf(cm, vaccine);
+            con.setAutoCommit(false);
+            List<Appointment> cancelled = deleteWhere(cm,
+                    "Vaccine_ID = ? AND AppointmentTime >= ? AND AppointmentTime <= ?", statement -> {
+                        statement.setInt(1, vaccineId);
+                        statement.setDate(2, Date.valueOf(from));
+                        statement.setDate(3, Date.valueOf(to));
+                    });
+            restoreDoses(cm, cancelled);
+            releaseCaregivers(cm, cancelled);
+            con.commit();
+            return cancelled;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    /**
+     * Deletes the matching appointments with one statement that also returns them: DELETE ... OUTPUT on SQL
+     * Server, a delete inside OLD TABLE (...) on H2. The rows are read in full before their IDs are translated,
+     * which may query the same connection.
+     */
+    private List<Appointment> deleteWhere(ConnectionManager cm, String condition, Binder binder) throws SQLException {
+        String deleteAppointments = cm.isSqlServer()
+                ? "DELETE FROM Appointment OUTPUT DELETED.ID, DELETED.AppointmentTime, DELETED.Slot, " +
+                "DELETED.Caregiver_ID, DELETED.Patient_ID, DELETED.Vaccine_ID WHERE " + condition + ";"
+                : "SELECT " + COLUMNS + " FROM OLD TABLE (DELETE FROM Appointment WHERE " + condition + ");";
+        PreparedStatement statement = cm.prepareStatement(deleteAppointments);
+        binder.bind(statement);
+        List<int[]> rows = new ArrayList<>();
+        List<Date> times = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                rows.add(new int[] {resultSet.getInt("ID"), resultSet.getInt("Slot"),
+                        resultSet.getInt("Caregiver_ID"), resultSet.getInt("Patient_ID"),
+                        resultSet.getInt("Vaccine_ID")});
+                times.add(resultSet.getDate("AppointmentTime"));
+            }
+        }
+        List<Appointment> deleted = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            int[] row = rows.get(i);
+            deleted.add(new Appointment(row[0], times.get(i), row[1], CAREGIVERS.nameOf(cm, row[2]),
+                    PATIENTS.nameOf(cm, row[3]), VACCINES.nameOf(cm, row[4])));
+        }
+        return deleted;
+    }
+
+    // one update per vaccine, however many of its appointments were cancelled
+    private static void restoreDoses(ConnectionManager cm, List<Appointment> cancelled) throws SQLException {
+        if (cancelled.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> doses = new TreeMap<>();
+        for (Appointment appointment : cancelled) {
+            doses.merge(VACCINES.idOf(cm, appointment.getVaccineName()), 1, Integer::sum);
+        }
+        PreparedStatement statement = cm.prepareStatement("UPDATE Vaccines SET Doses = Doses + ? WHERE ID = ?;");
+        for (Map.Entry<Integer, Integer> entry : doses.entrySet()) {
+            statement.setInt(1, entry.getValue());
+            statement.setInt(2, entry.getKey());
+            statement.addBatch();
+        }
+        statement.executeBatch();
+    }
+
+    /**
+     * Frees the slots in one batch of updates, and inserts with a second batch the caregiver-days that are gone,
+     * as days booked before the schema had slots are: their bookings deleted the whole row.
+     */
+    private static void releaseCaregivers(ConnectionManager cm, List<Appointment> cancelled) throws SQLException {
+        if (cancelled.isEmpty()) {
+            return;
+        }
+        int[] caregiverIds = new int[cancelled.size()];
+        PreparedStatement statement = prepareFree(cm);
+        for (int i = 0; i < caregiverIds.length; i++) {
+            Appointment appointment = cancelled.get(i);
+            caregiverIds[i] = CAREGIVERS.idOf(cm, appointment.getCaregiverName());
+            bindFree(statement, appointment.getTime(), caregiverIds[i], 1L << appointment.getSlot());
+            statement.addBatch();
+        }
+        int[] freed = statement.executeBatch();
+        statement = prepareAddDay(cm);
+        boolean missing = false;
+        for (int i = 0; i < caregiverIds.length; i++) {
+            if (freed[i] == 0) {
+                Appointment appointment = cancelled.get(i);
+                bindAddDay(statement, appointment.getTime(), caregiverIds[i], 1L << appointment.getSlot());
+                statement.addBatch();
+                missing = true;
+            }
+        }
+        if (missing) {
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * One transaction for all the changes. Every statement is conditional on the appointment row, whose
+     * insert or delete decides whether the rest of the change still has to be written. A booking whose claim
+     * updated no row has its appointment deleted again, like a booking in book or bookAll that loses the race.
+     */
+    @Override
+    public List<Appointment> applyAll(List<AppointmentChange> changes) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        String addAppointment = "INSERT INTO Appointment (" + COLUMNS + ") " +
+                "SELECT ?, ?, ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM Appointment WHERE ID = ?);";
+        String cancelAppointment = "DELETE FROM Appointment WHERE ID = ?;";
+        String changeDoses = "UPDATE Vaccines SET Doses = Doses + ? WHERE ID = ?;";
+        List<Appointment> skipped = new ArrayList<>();
+        try {
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            con.setAutoCommit(false);
+            for (AppointmentChange change : changes) {
+                Appointment appointment = change.getAppointment();
+                int caregiverId = CAREGIVERS.idOf(cm, appointment.getCaregiverName());
+                int vaccineId = VACCINES.idOf(cm, appointment.getVaccineName());
+                PreparedStatement statement;
+                if (change.isCancellation()) {
+                    statement = cm.prepareStatement(cancelAppointment);
+                    statement.setInt(1, appointment.getId());
+                    if (statement.executeUpdate() == 0) {
+                        continue;
+                    }
+                    long slot = 1L << appointment.getSlot();
+                    statement = prepareFree(cm);
+                    bindFree(statement, appointment.getTime(), caregiverId, slot);
+                    if (statement.executeUpdate() == 0) {
+                        statement = prepareAddDay(cm);
+                        bindAddDay(statement, appointment.getTime(), caregiverId, slot);
+                        statement.executeUpdate();
+                    }
+                } else {
+                    statement = cm.prepareStatement(addAppointment);
+                    statement.setInt(1, appointment.getId());
+                    statement.setDate(2, appointment.getTime());
+                    statement.setInt(3, appointment.getSlot());
+                    statement.setInt(4, caregiverId);
+                    statement.setInt(5, PATIENTS.idOf(cm, appointment.getPatientName()));
+                    statement.setInt(6, vaccineId);
+                    statement.setInt(7, appointment.getId());
+                    if (statement.executeUpdate() == 0) {
+                        continue;
+                    }
+                    statement = prepareClaim(cm);
+                    bindClaim(statement, appointment.getTime(), caregiverId, appointment.getSlot());
+                    if (statement.executeUpdate() == 0) {
+                        statement = cm.prepareStatement(cancelAppointment);
+                        statement.setInt(1, appointment.getId());
+                        statement.executeUpdate();
+                        skipped.add(appointment);
+                        continue;
+                    }
+                    statement = prepareDropFull(cm);
+                    bindDropFull(statement, appointment.getTime(), caregiverId);
+                    statement.executeUpdate();
+                }
+                statement = cm.prepareStatement(changeDoses);
+                statement.setInt(1, change.isCancellation() ? 1 : -1);
+                statement.setInt(2, vaccineId);
+                statement.executeUpdate();
+            }
+            con.commit();
+            return skipped;
+        } finally {
+            // an unfinished transaction is rolled back when the connection goes back to the pool
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> countByCaregiver() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        // answered from IX_Appointment_Caregiver alone
+        String countAppointments = "SELECT Caregiver_ID, COUNT(*) AS Appointments FROM Appointment " +
+                "GROUP BY Caregiver_ID;";
+        try {
+            PreparedStatement statement = cm.prepareStatement(countAppointments);
+            Map<Integer, Integer> byId = new HashMap<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    byId.put(resultSet.getInt("Caregiver_ID"), resultSet.getInt("Appointments"));
+                }
+            }
+            Map<String, Integer> counts = new HashMap<>();
+            for (Map.Entry<Integer, Integer> entry : byId.entrySet()) {
+                counts.put(CAREGIVERS.nameOf(cm, entry.getKey()), entry.getValue());
+            }
+            return counts;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // keyset pagination: a page starts after the last ID of the previous one, so no page re-reads earlier rows
+    @Override
+    public void forEachOf(boolean caregiver, String username, int afterId, LocalDate from, LocalDate to, int limit,
+                          Consumer<Appointment> action) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        // the names are joined in rather than looked up per row, which would be a query per patient not yet
+        // seen and, on SQL Server, a second statement that makes the driver buffer the rest of this one
+        String appointmentInfo = NAMED +
+                "WHERE a." + (caregiver ? "Caregiver_ID" : "Patient_ID") + " = ? AND a.ID > ? " +
+                "AND a.AppointmentTime >= ? AND a.AppointmentTime <= ? ORDER BY a.ID;";
+        try {
+            PreparedStatement statement = cm.prepareStatement(appointmentInfo);
+            statement.setInt(1, (caregiver ? CAREGIVERS : PATIENTS).idOf(cm, username));
+            statement.setInt(2, afterId);
+            statement.setDate(3, Date.valueOf(from));
+            statement.setDate(4, Date.valueOf(to));
+            statement.setMaxRows(limit);
+            statement.setFetchSize(Math.min(limit, FETCH_SIZE));
+            // rows are handed over as they arrive, nothing is collected first
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    action.accept(read(resultSet));
+                }
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    /**
+     * Claims the IDs by advancing the sequence's row in the Sequences table inside a transaction, so IDs stay
+     * unique across every process sharing the database. The row is created on first use, starting after the
+     * highest ID already in the table.
+     */
+    @Override
+    public long claimIds(int count) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+
+        String advance = "UPDATE Sequences SET NextValue = NextValue + ? WHERE Name = ?;";
+        String read = "SELECT NextValue FROM Sequences WHERE Name = ?;";
+        try {
+            con.setAutoCommit(false);
+            PreparedStatement statement = cm.prepareStatement(advance);
+            statement.setInt(1, count);
+            statement.setString(2, SEQUENCE);
+            if (statement.executeUpdate() == 0) {
+                con.commit();
+                con.setAutoCommit(true);
+                seed(cm);
+                con.setAutoCommit(false);
+                statement = cm.prepareStatement(advance);
+                statement.setInt(1, count);
+                statement.setString(2, SEQUENCE);
+                statement.executeUpdate();
+            }
+            statement = cm.prepareStatement(read);
+            statement.setString(1, SEQUENCE);
+            ResultSet resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                throw new SQLException("Sequence " + SEQUENCE + " disappeared");
+            }
+            long end = resultSet.getLong("NextValue");
+            con.commit();
+            return end - count;
+        } finally {
+            // an unfinished transaction is rolled back when the connection goes back to the pool
+            cm.closeConnection();
+        }
+    }
+
+    // create the sequence row, starting after the highest ID already in use
+    private static void seed(ConnectionManager cm) throws SQLException {
+        String insert = "INSERT INTO Sequences (Name, NextValue) VALUES (?, ?);";
+        PreparedStatement statement = cm.prepareStatement("SELECT COALESCE(MAX(ID), 0) + 1 FROM Appointment;");
+        ResultSet resultSet = statement.executeQuery();
+        long first = resultSet.next() ? resultSet.getLong(1) : 1;
+        try {
+            statement = cm.prepareStatement(insert);
+            statement.setString(1, SEQUENCE);
+            statement.setLong(2, first);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            // another process created the row first, which is just as good
+            if (!ConnectionManager.isDuplicateKey(e)) {
+                throw e;
+            }
+        }
+    }
+
+    private interface Binder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    // a row of the NAMED query
+    private static Appointment read(ResultSet resultSet) throws SQLException {
+        return new Appointment(resultSet.getInt("ID"), resultSet.getDate("AppointmentTime"), resultSet.getInt("Slot"),
+                resultSet.getString("Caregiver"), resultSet.getString("Patient"), resultSet.getString("Vaccine"));
+    }
+}
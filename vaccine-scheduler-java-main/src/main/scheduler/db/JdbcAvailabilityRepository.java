@@ -0,0 +1,245 @@
+package scheduler.db;
+
+import scheduler.repository.AvailabilityRepository;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static scheduler.db.SurrogateKeys.CAREGIVERS;
+
+/**
+ * Availabilities stores caregivers by their integer IDs, see SurrogateKeys, and one row per caregiver-day
+ * whose Slots bigint has a bit set for every free slot. The claim of a day's last free slot deletes the row,
+ * and freeing a slot inserts it again.
+ *
+ * Slots are claimed and freed by single conditional UPDATEs that do the bit arithmetic in the database, so
+ * that two bookings of different slots of one caregiver-day never overwrite each other. SQL Server has the
+ * bitwise operators for that, H2 the BITAND and BITOR functions; the statements below are shared with
+ * JdbcAppointmentRepository.
+ */
+public class JdbcAvailabilityRepository implements AvailabilityRepository {
+
+    @Override
+    public long insert(LocalDate day, String caregiver, long slots) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        String bookedSlots = "SELECT Slot FROM Appointment WHERE Caregiver_ID = ? AND AppointmentTime = ?;";
+        String getSlots = "SELECT Slots FROM Availabilities WHERE Time = ? AND Caregiver_ID = ?;";
+        Date time = Date.valueOf(day);
+        try {
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            int caregiverId = CAREGIVERS.idOf(cm, caregiver);
+            con.setAutoCommit(false);
+
+            PreparedStatement statement = cm.prepareStatement(bookedSlots);
+            statement.setInt(1, caregiverId);
+            statement.setDate(2, time);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    slots &= ~(1L << resultSet.getInt("Slot"));
+                }
+            }
+            statement = prepareFree(cm);
+            bindFree(statement, time, caregiverId, slots);
+            if (statement.executeUpdate() == 0 && slots != 0) {
+                statement = prepareAddDay(cm);
+                bindAddDay(statement, time, caregiverId, slots);
+                statement.executeUpdate();
+            }
+
+            statement = cm.prepareStatement(getSlots);
+            statement.setDate(1, time);
+            statement.setInt(2, caregiverId);
+            long free;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                free = resultSet.next() ? resultSet.getLong("Slots") : 0;
+            }
+            con.commit();
+            return free;
+        } finally {
+            // an unfinished transaction is rolled back when the connection goes back to the pool
+            cm.closeConnection();
+        }
+    }
+
+    /**
+     * Days the caregiver already has are dropped with one query, the slots of the appointments on the other
+     * days are taken out with a second one, and the rest are inserted as one JDBC batch in the same
+     * transaction.
+     */
+    @Override
+    public SortedMap<LocalDate, Long> insertAll(String caregiver, Collection<LocalDate> days, long slots)
+            throws SQLException {
+        TreeMap<LocalDate, Long> toInsert = new TreeMap<>();
+        for (LocalDate day : days) {
+            toInsert.put(day, slots);
+        }
+        if (toInsert.isEmpty()) {
+            return toInsert;
+        }
+
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        String existingAvailability = "SELECT Time FROM Availabilities WHERE Caregiver_ID = ? AND Time BETWEEN ? AND ?";
+        String bookedSlots = "SELECT AppointmentTime, Slot FROM Appointment " +
+                "WHERE Caregiver_ID = ? AND AppointmentTime BETWEEN ? AND ?";
+        String addAvailability = "INSERT INTO Availabilities (Time, Caregiver_ID, Slots) VALUES (?, ?, ?)";
+        try {
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            int caregiverId = CAREGIVERS.idOf(cm, caregiver);
+            con.setAutoCommit(false);
+
+            Date first = Date.valueOf(toInsert.firstKey());
+            Date last = Date.valueOf(toInsert.lastKey());
+            PreparedStatement statement = cm.prepareStatement(existingAvailability);
+            statement.setInt(1, caregiverId);
+            statement.setDate(2, first);
+            statement.setDate(3, last);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                toInsert.remove(resultSet.getDate("Time").toLocalDate());
+            }
+            // a day without a row may still have appointments, in the slots that were claimed last
+            statement = cm.prepareStatement(bookedSlots);
+            statement.setInt(1, caregiverId);
+            statement.setDate(2, first);
+            statement.setDate(3, last);
+            resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                long bit = 1L << resultSet.getInt("Slot");
+                toInsert.computeIfPresent(resultSet.getDate("AppointmentTime").toLocalDate(),
+                        (day, free) -> (free & ~bit) == 0 ? null : free & ~bit);
+            }
+
+            statement = cm.prepareStatement(addAvailability);
+            for (Map.Entry<LocalDate, Long> day : toInsert.entrySet()) {
+                statement.setDate(1, Date.valueOf(day.getKey()));
+                statement.setInt(2, caregiverId);
+                statement.setLong(3, day.getValue());
+                statement.addBatch();
+            }
+            if (!toInsert.isEmpty()) {
+                statement.executeBatch();
+            }
+            con.commit();
+        } finally {
+            // an unfinished transaction is rolled back when the connection goes back to the pool
+            cm.closeConnection();
+        }
+        return toInsert;
+    }
+
+    @Override
+    public boolean delete(LocalDate day, String caregiver) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        String decAvailability = "DELETE FROM Availabilities WHERE Time = ? AND Caregiver_ID = ?;";
+        try {
+            PreparedStatement statement = cm.prepareStatement(decAvailability);
+            statement.setDate(1, Date.valueOf(day));
+            statement.setInt(2, CAREGIVERS.idOf(cm, caregiver));
+            return statement.executeUpdate() == 1;
+        } catch (SQLException e) {
+            throw new SQLException();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public void forEach(Visitor visitor) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        // joined for the order only, which the AvailabilityIndex gives its ordinals in; rows without a free
+        // slot are left over from before full days were deleted
+        String getAvailabilities = "SELECT a.Time, c.Username, a.Slots FROM Availabilities a " +
+                "JOIN Caregivers c ON c.ID = a.Caregiver_ID WHERE a.Slots <> 0 ORDER BY c.Username;";
+        try {
+            PreparedStatement statement = cm.prepareStatement(getAvailabilities);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                visitor.accept(resultSet.getDate("Time").toLocalDate(), resultSet.getString("Username"),
+                        resultSet.getLong("Slots"));
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // clears a slot's bit if it is still set; one row updated means this caller claimed the slot
+    static PreparedStatement prepareClaim(ConnectionManager cm) throws SQLException {
+        return cm.prepareStatement("UPDATE Availabilities SET Slots = " + and(cm, "Slots", "?") +
+                " WHERE Time = ? AND Caregiver_ID = ? AND " + and(cm, "Slots", "?") + " <> 0;");
+    }
+
+    static void bindClaim(PreparedStatement statement, Date day, int caregiverId, int slot) throws SQLException {
+        long bit = 1L << slot;
+        statement.setLong(1, ~bit);
+        statement.setDate(2, day);
+        statement.setInt(3, caregiverId);
+        statement.setLong(4, bit);
+    }
+
+    // deletes a caregiver-day whose last free slot was just claimed
+    static PreparedStatement prepareDropFull(ConnectionManager cm) throws SQLException {
+        return cm.prepareStatement("DELETE FROM Availabilities WHERE Time = ? AND Caregiver_ID = ? AND Slots = 0;");
+    }
+
+    static void bindDropFull(PreparedStatement statement, Date day, int caregiverId) throws SQLException {
+        statement.setDate(1, day);
+        statement.setInt(2, caregiverId);
+    }
+
+    // sets the bits of free slots in a caregiver-day that exists
+    static PreparedStatement prepareFree(ConnectionManager cm) throws SQLException {
+        return cm.prepareStatement("UPDATE Availabilities SET Slots = " + or(cm, "Slots", "?") +
+                " WHERE Time = ? AND Caregiver_ID = ?;");
+    }
+
+    static void bindFree(PreparedStatement statement, Date day, int caregiverId, long slots) throws SQLException {
+        statement.setLong(1, slots);
+        statement.setDate(2, day);
+        statement.setInt(3, caregiverId);
+    }
+
+    // inserts a caregiver-day unless it exists, for after prepareFree found none
+    static PreparedStatement prepareAddDay(ConnectionManager cm) throws SQLException {
+        return cm.prepareStatement("INSERT INTO Availabilities (Time, Caregiver_ID, Slots) SELECT ?, ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM Availabilities WHERE Time = ? AND Caregiver_ID = ?);");
+    }
+
+    static void bindAddDay(PreparedStatement statement, Date day, int caregiverId, long slots) throws SQLException {
+        statement.setDate(1, day);
+        statement.setInt(2, caregiverId);
+        statement.setLong(3, slots);
+        statement.setDate(4, day);
+        statement.setInt(5, caregiverId);
+    }
+
+    // H2 cannot tell the type of a bare parameter in BITAND, hence the casts
+    private static String and(ConnectionManager cm, String left, String right) throws SQLException {
+        return cm.isSqlServer() ? "(" + left + " & " + right + ")"
+                : "BITAND(" + left + ", CAST(" + right + " AS bigint))";
+    }
+
+    private static String or(ConnectionManager cm, String left, String right) throws SQLException {
+        return cm.isSqlServer() ? "(" + left + " | " + right + ")"
+                : "BITOR(" + left + ", CAST(" + right + " AS bigint))";
+    }
+}
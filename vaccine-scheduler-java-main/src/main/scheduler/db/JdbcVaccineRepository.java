@@ -0,0 +1,136 @@
+package scheduler.db;
+
+import scheduler.repository.VaccineRepository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class JdbcVaccineRepository implements VaccineRepository {
+
+    @Override
+    public void insert(String vaccineName, int doses) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        String addVaccine = "INSERT INTO Vaccines (Name, Doses) VALUES (?, ?)";
+        try {
+            PreparedStatement statement = cm.prepareStatement(addVaccine);
+            statement.setString(1, vaccineName);
+            statement.setInt(2, doses);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            if (ConnectionManager.isDuplicateKey(e)) {
+                throw e;
+            }
+            throw new SQLException();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public int findDoses(String vaccineName) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        String getVaccine = "SELECT Name, Doses FROM Vaccines WHERE Name = ?;";
+        try {
+            PreparedStatement statement = cm.prepareStatement(getVaccine);
+            statement.setString(1, vaccineName);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getInt("Doses") : -1;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> findAll() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        String getVaccines = "SELECT Name, Doses FROM Vaccines;";
+        Map<String, Integer> doses = new TreeMap<>();
+        try {
+            PreparedStatement statement = cm.prepareStatement(getVaccines);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                doses.put(resultSet.getString("Name"), resultSet.getInt("Doses"));
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return doses;
+    }
+
+    @Override
+    public void addDoses(String vaccineName, int num) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        // write the change as a delta so that concurrent sessions don't overwrite each other
+        String addDoses = "UPDATE Vaccines SET Doses = Doses + ? WHERE Name = ?;";
+        try {
+            PreparedStatement statement = cm.prepareStatement(addDoses);
+            statement.setInt(1, num);
+            statement.setString(2, vaccineName);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new SQLException();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // one batch of updates in one transaction
+    @Override
+    public void addDoses(Map<String, Long> deltas) throws SQLException {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+
+        String updateDoses = "UPDATE Vaccines SET Doses = Doses + ? WHERE Name = ?;";
+        try {
+            con.setAutoCommit(false);
+            PreparedStatement statement = cm.prepareStatement(updateDoses);
+            for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+                statement.setLong(1, delta.getValue());
+                statement.setString(2, delta.getKey());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            con.commit();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public boolean takeDoses(String vaccineName, int num) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        // the condition keeps the stock from going negative even when other sessions took doses meanwhile
+        String takeDoses = "UPDATE Vaccines SET Doses = Doses - ? WHERE Name = ? AND Doses >= ?;";
+        try {
+            PreparedStatement statement = cm.prepareStatement(takeDoses);
+            statement.setInt(1, num);
+            statement.setString(2, vaccineName);
+            statement.setInt(3, num);
+            return statement.executeUpdate() == 1;
+        } catch (SQLException e) {
+            throw new SQLException();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package scheduler.db;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Brings the schema up to date by applying the numbered scripts listed in {@code db/migration/index.txt}.
+ *
+ * Every applied version is recorded in the SchemaHistory table with a CRC32 checksum of its script, and a
+ * script whose checksum no longer matches its record stops the run, since the database would otherwise
+ * silently differ from the scripts. Each version runs in its own transaction together with its history row
+ * (DDL is transactional on SQL Server; H2 commits DDL as it goes).
+ *
+ * A database created by hand from create.sql has no history but already has the V1 tables; it is baselined,
+ * i.e. V1 is recorded without being run. V1 is therefore exactly the original create.sql, and everything added
+ * since is a later version. Scripts are split into statements at lines ending with {@code ;}, and {@code --}
+ * comment lines are skipped. A script may have a per-dialect variant, see {@link #dialect}.
+ */
+public class MigrationRunner {
+
+    private static final String LOCATION = "db/migration/";
+
+    private final Connection con;
+
+    public MigrationRunner(Connection con) {
+        this.con = con;
+    }
+
+    // migrates the pooled database, for startup
+    public static int migrate() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            return new MigrationRunner(con).run();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    /**
+     * Applies every pending version in order.
+     *
+     * @return the number of versions applied
+     */
+    public int run() throws SQLException {
+        String dialect = dialect(con.getMetaData());
+        List<Migration> migrations = load(dialect);
+        boolean autoCommit = con.getAutoCommit();
+        try {
+            Map<Integer, Long> applied = history(migrations);
+            int count = 0;
+            for (Migration migration : migrations) {
+                Long checksum = applied.get(migration.version);
+                if (checksum == null) {
+                    apply(migration);
+                    count++;
+                } else if (checksum != migration.checksum) {
+                    throw new SQLException("Schema version " + migration.version + " was changed after it was applied: "
+                            + migration.script);
+                }
+            }
+            return count;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    // the recorded versions with their checksums, creating the history table and a baseline if there is none
+    private Map<Integer, Long> history(List<Migration> migrations) throws SQLException {
+        Map<Integer, Long> applied = new TreeMap<>();
+        if (!tableExists("SchemaHistory")) {
+            boolean baseline = tableExists("Caregivers");
+            con.setAutoCommit(false);
+            try (Statement statement = con.createStatement()) {
+                statement.executeUpdate("CREATE TABLE SchemaHistory (Version int, Description varchar(255), " +
+                        "Script varchar(255), Checksum bigint, InstalledOn datetime, ExecutionMs int, " +
+                        "PRIMARY KEY (Version))");
+                if (baseline && !migrations.isEmpty()) {
+                    record(migrations.get(0), 0);
+                    applied.put(migrations.get(0).version, migrations.get(0).checksum);
+                }
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            }
+            return applied;
+        }
+
+        try (Statement statement = con.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT Version, Checksum FROM SchemaHistory")) {
+            while (resultSet.next()) {
+                applied.put(resultSet.getInt("Version"), resultSet.getLong("Checksum"));
+            }
+        }
+        return applied;
+    }
+
+    private void apply(Migration migration) throws SQLException {
+        long start = System.currentTimeMillis();
+        con.setAutoCommit(false);
+        try (Statement statement = con.createStatement()) {
+            for (String sql : migration.statements) {
+                statement.execute(sql);
+            }
+            record(migration, (int) (System.currentTimeMillis() - start));
+            con.commit();
+        } catch (SQLException e) {
+            con.rollback();
+            throw new SQLException("Schema version " + migration.version + " failed: " + e.getMessage(), e);
+        }
+        System.out.println("Applied schema version " + migration.version + " (" + migration.description + ")");
+    }
+
+    private void record(Migration migration, int executionMillis) throws SQLException {
+        String addHistory = "INSERT INTO SchemaHistory (Version, Description, Script, Checksum, InstalledOn, ExecutionMs) " +
+                "VALUES (?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement statement = con.prepareStatement(addHistory)) {
+            statement.setInt(1, migration.version);
+            statement.setString(2, migration.description);
+            statement.setString(3, migration.script);
+            statement.setLong(4, migration.checksum);
+            statement.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+            statement.setInt(6, executionMillis);
+            statement.executeUpdate();
+        }
+    }
+
+    private boolean tableExists(String table) throws SQLException {
+        DatabaseMetaData metaData = con.getMetaData();
+        // identifiers may be stored in upper case (H2) or as written (SQL Server)
+        for (String name : new String[]{table, table.toUpperCase(Locale.ROOT)}) {
+            try (ResultSet resultSet = metaData.getTables(null, null, name, new String[]{"TABLE"})) {
+                if (resultSet.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The name variant scripts use for this database: {@code sqlserver}, {@code h2}, or else the first word of
+     * the product name in lower case. {@code V2__x.h2.sql} replaces {@code V2__x.sql} on H2, for example.
+     */
+    static String dialect(DatabaseMetaData metaData) throws SQLException {
+        String product = metaData.getDatabaseProductName().toLowerCase(Locale.ROOT);
+        if (product.contains("sql server")) {
+            return "sqlserver";
+        }
+        return product.split("\\s+")[0];
+    }
+
+    private static List<Migration> load(String dialect) throws SQLException {
+        List<Migration> migrations = new ArrayList<>();
+        try {
+            for (String line : readLines(LOCATION + "index.txt")) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String variant = line.replaceFirst("\\.sql$", "." + dialect + ".sql");
+                List<String> lines = readLines(LOCATION + variant);
+                migrations.add(new Migration(line, lines != null ? lines : readLines(LOCATION + line)));
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new SQLException("Could not read the schema migrations", e);
+        }
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).version <= migrations.get(i - 1).version) {
+                throw new SQLException("Schema versions are out of order at " + migrations.get(i).script);
+            }
+        }
+        return migrations;
+    }
+
+    // the lines of a resource, or null if there is no such resource
+    private static List<String> readLines(String resource) throws IOException {
+        InputStream in = MigrationRunner.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            return null;
+        }
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        System.out.println("Applied " + migrate() + " schema version(s)");
+    }
+
+    private static class Migration {
+        private final String script;
+        private final int version;
+        private final String description;
+        private final long checksum;
+        private final List<String> statements = new ArrayList<>();
+
+        // script names look like V2__appointment_key.sql
+        private Migration(String script, List<String> lines) {
+            if (lines == null || !script.matches("V\\d+__\\w+\\.sql")) {
+                throw new IllegalArgumentException("Missing or misnamed schema migration " + script);
+            }
+            this.script = script;
+            int separator = script.indexOf("__");
+            this.version = Integer.parseInt(script.substring(1, separator));
+            this.description = script.substring(separator + 2, script.length() - 4).replace('_', ' ');
+
+            CRC32 crc = new CRC32();
+            StringBuilder statement = new StringBuilder();
+            for (String line : lines) {
+                // line endings and trailing blanks do not change the checksum
+                String trimmed = line.stripTrailing();
+                crc.update(trimmed.getBytes(StandardCharsets.UTF_8));
+                if (trimmed.isBlank() || trimmed.trim().startsWith("--")) {
+                    continue;
+                }
+                statement.append(trimmed).append('\n');
+                if (trimmed.endsWith(";")) {
+                    String sql = statement.toString().trim();
+                    // a single statement loses its terminator; several on one line are sent as one batch
+                    statements.add(sql.indexOf(';') == sql.length() - 1 ? sql.substring(0, sql.length() - 1) : sql);
+                    statement.setLength(0);
+                }
+            }
+            if (!statement.toString().isBlank()) {
+                statements.add(statement.toString().trim());
+            }
+            this.checksum = crc.getValue();
+        }
+    }
+}
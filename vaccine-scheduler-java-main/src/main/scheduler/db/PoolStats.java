@@ -0,0 +1,111 @@
+package scheduler.db;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point-in-time snapshot of {@link ConnectionPool} counters.
+ */
+public class PoolStats {
+    private final int total;
+    private final int idle;
+    private final int leased;
+    private final int peakLeased;
+    private final int maxSize;
+    private final long acquireCount;
+    private final long saturatedCount;
+    private final long timeoutCount;
+    private final long createdCount;
+    private final long retiredCount;
+    private final long averageWaitNanos;
+    private final long maxWaitNanos;
+
+    PoolStats(int total, int idle, int leased, int peakLeased, int maxSize, long acquireCount,
+              long saturatedCount, long timeoutCount, long createdCount, long retiredCount,
+              long averageWaitNanos, long maxWaitNanos) {
+        this.total = total;
+        this.idle = idle;
+        this.leased = leased;
+        this.peakLeased = peakLeased;
+        this.maxSize = maxSize;
+        this.acquireCount = acquireCount;
+        this.saturatedCount = saturatedCount;
+        this.timeoutCount = timeoutCount;
+        this.createdCount = createdCount;
+        this.retiredCount = retiredCount;
+        this.averageWaitNanos = averageWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    // Getters
+    public int getTotal() {
+        return total;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getLeased() {
+        return leased;
+    }
+
+    public int getPeakLeased() {
+        return peakLeased;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getAcquireCount() {
+        return acquireCount;
+    }
+
+    // number of acquires that found every connection leased and had to wait
+    public long getSaturatedCount() {
+        return saturatedCount;
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    public long getRetiredCount() {
+        return retiredCount;
+    }
+
+    public long getAverageWaitNanos() {
+        return averageWaitNanos;
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    // fraction of acquires that found the pool saturated
+    public double getSaturationRatio() {
+        return acquireCount == 0 ? 0.0 : (double) saturatedCount / acquireCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{" +
+                "total=" + total +
+                ", idle=" + idle +
+                ", leased=" + leased +
+                ", peakLeased=" + peakLeased +
+                ", maxSize=" + maxSize +
+                ", acquires=" + acquireCount +
+                ", saturated=" + saturatedCount +
+                ", timeouts=" + timeoutCount +
+                ", created=" + createdCount +
+                ", retired=" + retiredCount +
+                ", avgWaitMicros=" + TimeUnit.NANOSECONDS.toMicros(averageWaitNanos) +
+                ", maxWaitMicros=" + TimeUnit.NANOSECONDS.toMicros(maxWaitNanos) +
+                '}';
+    }
+}
@@ -0,0 +1,93 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A physical connection owned by {@link ConnectionPool}, together with its bookkeeping and a small
+ * LRU cache of prepared statements. Only the thread that leased it from the pool may use it.
+ */
+public class PooledConnection {
+    private final Connection connection;
+    private final long createdAt;
+    private final int statementCacheSize;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    private long lastReturnedAt;
+
+    PooledConnection(Connection connection, int statementCacheSize) {
+        this.connection = connection;
+        this.createdAt = System.currentTimeMillis();
+        this.lastReturnedAt = this.createdAt;
+        this.statementCacheSize = statementCacheSize;
+        // access-ordered so that the eldest entry is the least recently used statement
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    // returns a cached statement for the given sql, preparing it on first use
+    // Note: cached statements are owned by the connection, callers must not close them
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement != null && !statement.isClosed()) {
+            statement.clearParameters();
+            return statement;
+        }
+        statement = InstrumentedStatements.wrap(connection.prepareStatement(sql));
+        if (statementCacheSize > 0) {
+            statements.put(sql, statement);
+            evictStatements();
+        }
+        return statement;
+    }
+
+    public int getCachedStatementCount() {
+        return statements.size();
+    }
+
+    boolean isExpired(long now, long maxLifetimeMillis) {
+        return maxLifetimeMillis > 0 && now - createdAt >= maxLifetimeMillis;
+    }
+
+    long getIdleMillis(long now) {
+        return now - lastReturnedAt;
+    }
+
+    void markReturned() {
+        lastReturnedAt = System.currentTimeMillis();
+    }
+
+    private void evictStatements() {
+        Iterator<Map.Entry<String, PreparedStatement>> it = statements.entrySet().iterator();
+        while (statements.size() > statementCacheSize && it.hasNext()) {
+            closeQuietly(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    void close() {
+        for (PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // the connection is being thrown away anyway
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // nothing useful to do with a failure to close a cached statement
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package scheduler.db;
+
+import scheduler.util.NameDictionary;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The integer IDs that Appointment and Availabilities store in place of usernames and vaccine names (schema
+ * V5), translated both ways in a {@link NameDictionary} per table so that writes need no join. Reads that
+ * stream appointments join the names in instead, so that they never query in the middle of a result set.
+ *
+ * Caregivers and vaccines are few, and are read whole the first time either way is asked; patients are
+ * looked up one at a time as they show up. A name or ID missing from the dictionary, such as one added by
+ * another process, is looked up on the caller's connection and kept. Rows are never renamed and their IDs
+ * never change, so nothing in a dictionary goes stale.
+ */
+final class SurrogateKeys {
+
+    static final SurrogateKeys CAREGIVERS = new SurrogateKeys("Caregivers", "Username", true);
+    static final SurrogateKeys PATIENTS = new SurrogateKeys("Patients", "Username", false);
+    static final SurrogateKeys VACCINES = new SurrogateKeys("Vaccines", "Name", true);
+
+    private final String table;
+    private final String nameColumn;
+    private final boolean preload;
+    private final NameDictionary dictionary = new NameDictionary();
+    private volatile boolean loaded = false;
+
+    private SurrogateKeys(String table, String nameColumn, boolean preload) {
+        this.table = table;
+        this.nameColumn = nameColumn;
+        this.preload = preload;
+    }
+
+    // the ID of the row with the name, or 0 if there is no such row; identity columns start at 1
+    int idOf(ConnectionManager cm, String name) throws SQLException {
+        load(cm);
+        int id = dictionary.idOf(name);
+        if (id >= 0) {
+            return id;
+        }
+        PreparedStatement statement = cm.prepareStatement(
+                "SELECT ID, " + nameColumn + " FROM " + table + " WHERE " + nameColumn + " = ?;");
+        statement.setString(1, name);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            if (!resultSet.next()) {
+                return 0;
+            }
+            id = resultSet.getInt("ID");
+            // kept under the stored spelling, which a case-insensitive collation may not match exactly
+            dictionary.put(resultSet.getString(nameColumn), id);
+        }
+        return id;
+    }
+
+    // the name of the row with the ID; every ID read from a foreign key has one
+    String nameOf(ConnectionManager cm, int id) throws SQLException {
+        load(cm);
+        String name = dictionary.nameOf(id);
+        if (name != null) {
+            return name;
+        }
+        PreparedStatement statement = cm.prepareStatement(
+                "SELECT " + nameColumn + " FROM " + table + " WHERE ID = ?;");
+        statement.setInt(1, id);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            if (!resultSet.next()) {
+                throw new SQLException("No " + table + " row with ID " + id);
+            }
+            name = resultSet.getString(nameColumn);
+        }
+        dictionary.put(name, id);
+        return name;
+    }
+
+    private void load(ConnectionManager cm) throws SQLException {
+        if (loaded || !preload) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            PreparedStatement statement = cm.prepareStatement("SELECT ID, " + nameColumn + " FROM " + table + ";");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    dictionary.put(resultSet.getString(nameColumn), resultSet.getInt("ID"));
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SurrogateKeys{" +
+                "table=" + table +
+                ", names=" + dictionary.size() +
+                ", footprintBytes=" + dictionary.getFootprintBytes() +
+                '}';
+    }
+}
@@ -0,0 +1,86 @@
+package scheduler.memory;
+
+import scheduler.db.ConnectionManager;
+import scheduler.repository.CaregiverRepository;
+import scheduler.repository.PatientRepository;
+import scheduler.repository.StoredAccount;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+class MemoryAccountRepository implements PatientRepository, CaregiverRepository {
+
+    private final MemoryStore store;
+    private final ConcurrentHashMap<String, StoredAccount> accounts = new ConcurrentHashMap<>();
+
+    MemoryAccountRepository(MemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void insert(StoredAccount account) throws SQLException {
+        store.changeLock().lock();
+        try {
+            if (accounts.putIfAbsent(account.getUsername(), account) != null) {
+                throw new SQLIntegrityConstraintViolationException("Username " + account.getUsername() + " is taken",
+                        ConnectionManager.UNIQUE_VIOLATION);
+            }
+        } finally {
+            store.changeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> insertAll(List<StoredAccount> accounts) throws SQLException {
+        List<String> taken = new ArrayList<>();
+        for (StoredAccount account : accounts) {
+            try {
+                insert(account);
+            } catch (SQLIntegrityConstraintViolationException e) {
+                taken.add(account.getUsername());
+            }
+        }
+        return taken;
+    }
+
+    @Override
+    public StoredAccount find(String username) {
+        return accounts.get(username);
+    }
+
+    @Override
+    public boolean replaceHash(StoredAccount account, String expectedParams) {
+        store.changeLock().lock();
+        try {
+            boolean[] replaced = {false};
+            accounts.computeIfPresent(account.getUsername(), (username, current) -> {
+                if (!Objects.equals(current.getHashParams(), expectedParams)) {
+                    return current;
+                }
+                replaced[0] = true;
+                return account;
+            });
+            return replaced[0];
+        } finally {
+            store.changeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> usernames() {
+        return new ArrayList<>(accounts.keySet());
+    }
+
+    List<StoredAccount> all() {
+        return new ArrayList<>(accounts.values());
+    }
+
+    // for loading a snapshot
+    void put(StoredAccount account) {
+        accounts.put(account.getUsername(), account);
+    }
+}
@@ -0,0 +1,340 @@
+package scheduler.memory;
+
+import scheduler.db.ConnectionManager;
+import scheduler.model.Appointment;
+import scheduler.repository.AppointmentChange;
+import scheduler.repository.AppointmentRepository;
+import scheduler.repository.CaregiverPicker;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Appointments by ID, plus the IDs of every caregiver's and every patient's appointments in ID order, which
+ * is what listing them page by page needs.
+ */
+class MemoryAppointmentRepository implements AppointmentRepository {
+
+    private final MemoryStore store;
+    private final ConcurrentSkipListMap<Integer, Appointment> byId = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, ConcurrentSkipListSet<Integer>> byCaregiver = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentSkipListSet<Integer>> byPatient = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    MemoryAppointmentRepository(MemoryStore store) {
+        this.store = store;
+    }
+
+    // every step is undone if a later one fails
+    @Override
+    public Appointment book(int id, LocalDate day, String patient, String vaccine, boolean takeDose,
+                            CaregiverPicker picker) throws SQLException {
+        MemoryVaccineRepository vaccines = store.vaccineTable();
+        MemoryAvailabilityRepository availabilities = store.availabilityTable();
+        store.changeLock().lock();
+        try {
+            if (takeDose && !vaccines.takeDoses(vaccine, 1)) {
+                throw new IllegalArgumentException(vaccines.findDoses(vaccine) >= 0 ? NOT_ENOUGH_DOSES : UNKNOWN_VACCINE);
+            }
+            String caregiver = null;
+            boolean booked = false;
+            try {
+                while (caregiver == null) {
+                    String candidate = picker.next();
+                    if (candidate == null) {
+                        throw new IllegalArgumentException(NO_CAREGIVER);
+                    }
+                    if (availabilities.claim(day, candidate, picker.slot())) {
+                        caregiver = candidate;
+                    }
+                }
+                Appointment appointment = new Appointment(id, Date.valueOf(day), picker.slot(), caregiver, patient,
+                        vaccine);
+                if (byId.putIfAbsent(id, appointment) != null) {
+                    throw new SQLIntegrityConstraintViolationException("Appointment " + id + " exists",
+                            ConnectionManager.UNIQUE_VIOLATION);
+                }
+                index(appointment);
+                booked = true;
+                return appointment;
+            } finally {
+                if (!booked) {
+                    if (takeDose) {
+                        vaccines.addDoses(vaccine, 1);
+                    }
+                    if (caregiver != null) {
+                        availabilities.release(day, caregiver, picker.slot());
+                    }
+                }
+            }
+        } finally {
+            store.changeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean[] bookAll(List<Appointment> appointments) {
+        MemoryVaccineRepository vaccines = store.vaccineTable();
+        MemoryAvailabilityRepository availabilities = store.availabilityTable();
+        boolean[] booked = new boolean[appointments.size()];
+        store.changeLock().lock();
+        try {
+            Map<String, Integer> doses = new HashMap<>();
+            for (int i = 0; i < booked.length; i++) {
+                Appointment appointment = appointments.get(i);
+                booked[i] = availabilities.claim(appointment.getTime().toLocalDate(),
+                        appointment.getCaregiverName(), appointment.getSlot());
+                if (booked[i]) {
+                    doses.merge(appointment.getVaccineName(), 1, Integer::sum);
+                }
+            }
+            Map<String, Integer> taken = new HashMap<>();
+            for (Map.Entry<String, Integer> entry : doses.entrySet()) {
+                // the change lock is shared with other changes, so the stock is checked and taken in one step
+                if (!vaccines.takeDoses(entry.getKey(), entry.getValue())) {
+                    // give the doses and the slots back, so that nothing changes
+                    taken.forEach(vaccines::addDoses);
+                    for (int i = 0; i < booked.length; i++) {
+                        Appointment appointment = appointments.get(i);
+                        if (booked[i]) {
+                            availabilities.release(appointment.getTime().toLocalDate(),
+                                    appointment.getCaregiverName(), appointment.getSlot());
+                        }
+                    }
+                    throw new IllegalArgumentException(NOT_ENOUGH_DOSES);
+                }
+                taken.put(entry.getKey(), entry.getValue());
+            }
+            for (int i = 0; i < booked.length; i++) {
+                if (booked[i]) {
+                    Appointment appointment = appointments.get(i);
+                    byId.put(appointment.getId(), appointment);
+                    index(appointment);
+                }
+            }
+        } finally {
+            store.changeLock().unlock();
+        }
+        return booked;
+    }
+
+    @Override
+    public Appointment find(int id) {
+        return byId.get(id);
+    }
+
+    @Override
+    public Appointment cancel(int id, String patient) {
+        Appointment appointment = byId.get(id);
+        if (appointment == null || (patient != null && !appointment.getPatientName().equals(patient))) {
+            return null;
+        }
+        List<Appointment> cancelled = cancelAll(List.of(appointment), true);
+        return cancelled.isEmpty() ? null : cancelled.get(0);
+    }
+
+    @Override
+    public List<Appointment> cancelCaregiverDay(String caregiver, LocalDate day) {
+        store.changeLock().lock();
+        try {
+            List<Appointment> cancelled = cancelAll(matching(byCaregiver.get(caregiver),
+                    appointment -> appointment.getTime().toLocalDate().equals(day)), false);
+            store.availabilityTable().delete(day, caregiver);
+            return cancelled;
+        } finally {
+            store.changeLock().unlock();
+        }
+    }
+
+    // there is no index by vaccine, so every appointment is looked at
+    @Override
+    public List<Appointment> cancelVaccine(String vaccine, LocalDate from, LocalDate to) {
+        return cancelAll(matching(byId.keySet(), appointment -> {
+            LocalDate day = appointment.getTime().toLocalDate();
+            return appointment.getVaccineName().equals(vaccine) && !day.isBefore(from) && !day.isAfter(to);
+        }), true);
+    }
+
+    // returns the appointments that were still there to cancel
+    private List<Appointment> cancelAll(List<Appointment> appointments, boolean releaseCaregivers) {
+        MemoryVaccineRepository vaccines = store.vaccineTable();
+        MemoryAvailabilityRepository availabilities = store.availabilityTable();
+        List<Appointment> cancelled = new ArrayList<>();
+        store.changeLock().lock();
+        try {
+            for (Appointment appointment : appointments) {
+                if (!delete(appointment.getId())) {
+                    continue;
+                }
+                if (releaseCaregivers) {
+                    availabilities.release(appointment.getTime().toLocalDate(), appointment.getCaregiverName(),
+                            appointment.getSlot());
+                }
+                vaccines.addDoses(appointment.getVaccineName(), 1);
+                cancelled.add(appointment);
+            }
+        } finally {
+            store.changeLock().unlock();
+        }
+        return cancelled;
+    }
+
+    private List<Appointment> matching(Set<Integer> ids, Predicate<Appointment> filter) {
+        List<Appointment> matches = new ArrayList<>();
+        if (ids != null) {
+            for (Integer id : ids) {
+                Appointment appointment = byId.get(id);
+                if (appointment != null && filter.test(appointment)) {
+                    matches.add(appointment);
+                }
+            }
+        }
+        return matches;
+    }
+
+    // whether the appointment existed
+    boolean delete(int id) {
+        store.changeLock().lock();
+        try {
+            Appointment appointment = byId.remove(id);
+            if (appointment == null) {
+                return false;
+            }
+            ConcurrentSkipListSet<Integer> ids = byCaregiver.get(appointment.getCaregiverName());
+            if (ids != null) {
+                ids.remove(id);
+            }
+            ids = byPatient.get(appointment.getPatientName());
+            if (ids != null) {
+                ids.remove(id);
+            }
+            return true;
+        } finally {
+            store.changeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Appointment> applyAll(List<AppointmentChange> changes) {
+        MemoryVaccineRepository vaccines = store.vaccineTable();
+        MemoryAvailabilityRepository availabilities = store.availabilityTable();
+        List<Appointment> skipped = new ArrayList<>();
+        store.changeLock().lock();
+        try {
+            for (AppointmentChange change : changes) {
+                Appointment appointment = change.getAppointment();
+                LocalDate day = appointment.getTime().toLocalDate();
+                if (change.isCancellation()) {
+                    if (!delete(appointment.getId())) {
+                        continue;
+                    }
+                    availabilities.release(day, appointment.getCaregiverName(), appointment.getSlot());
+                    vaccines.addDoses(appointment.getVaccineName(), 1);
+                } else {
+                    if (byId.containsKey(appointment.getId())) {
+                        continue;
+                    }
+                    if (!availabilities.claim(day, appointment.getCaregiverName(), appointment.getSlot())) {
+                        skipped.add(appointment);
+                        continue;
+                    }
+                    byId.put(appointment.getId(), appointment);
+                    index(appointment);
+                    vaccines.addDoses(appointment.getVaccineName(), -1);
+                }
+            }
+        } finally {
+            store.changeLock().unlock();
+        }
+        return skipped;
+    }
+
+    @Override
+    public void forEachOf(boolean caregiver, String username, int afterId, LocalDate from, LocalDate to, int limit,
+                          Consumer<Appointment> action) {
+        ConcurrentSkipListSet<Integer> ids = (caregiver ? byCaregiver : byPatient).get(username);
+        if (ids == null) {
+            return;
+        }
+        int count = 0;
+        for (Integer id : ids.tailSet(afterId, false)) {
+            if (count >= limit) {
+                return;
+            }
+            Appointment appointment = byId.get(id);
+            if (appointment == null) {
+                continue;
+            }
+            LocalDate day = appointment.getTime().toLocalDate();
+            if (!day.isBefore(from) && !day.isAfter(to)) {
+                action.accept(appointment);
+                count++;
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Integer> countByCaregiver() {
+        Map<String, Integer> counts = new HashMap<>();
+        byCaregiver.forEach((caregiver, ids) -> {
+            if (!ids.isEmpty()) {
+                counts.put(caregiver, ids.size());
+            }
+        });
+        return counts;
+    }
+
+    @Override
+    public long claimIds(int count) {
+        return nextId.getAndAdd(count);
+    }
+
+    // the slots of a caregiver's day that have an appointment
+    long bookedSlots(String caregiver, LocalDate day) {
+        long booked = 0;
+        for (Appointment appointment : matching(byCaregiver.get(caregiver),
+                appointment -> appointment.getTime().toLocalDate().equals(day))) {
+            booked |= 1L << appointment.getSlot();
+        }
+        return booked;
+    }
+
+    List<Appointment> all() {
+        return new ArrayList<>(byId.values());
+    }
+
+    long getNextId() {
+        return nextId.get();
+    }
+
+    // for loading a snapshot
+    void setNextId(long next) {
+        nextId.set(Math.max(next, byId.isEmpty() ? 1 : byId.lastKey() + 1L));
+    }
+
+    // for loading a snapshot
+    void put(Appointment appointment) {
+        byId.put(appointment.getId(), appointment);
+        index(appointment);
+    }
+
+    private void index(Appointment appointment) {
+        byCaregiver.computeIfAbsent(appointment.getCaregiverName(), name -> new ConcurrentSkipListSet<>())
+                .add(appointment.getId());
+        byPatient.computeIfAbsent(appointment.getPatientName(), name -> new ConcurrentSkipListSet<>())
+                .add(appointment.getId());
+    }
+}
@@ -0,0 +1,124 @@
+package scheduler.memory;
+
+import scheduler.repository.AvailabilityRepository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// The free slots of every caregiver-day; changes are made under the store's change lock.
+class MemoryAvailabilityRepository implements AvailabilityRepository {
+
+    private final MemoryStore store;
+    // ordered by caregiver and then day, so one caregiver's days are a contiguous range
+    private final ConcurrentSkipListMap<Key, Long> slots = new ConcurrentSkipListMap<>(
+            Comparator.comparing((Key key) -> key.caregiver).thenComparing(key -> key.day));
+
+    MemoryAvailabilityRepository(MemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public long insert(LocalDate day, String caregiver, long free) {
+        store.changeLock().lock();
+        try {
+            free &= ~store.appointmentTable().bookedSlots(caregiver, day);
+            if (free == 0) {
+                return slots.getOrDefault(new Key(day, caregiver), 0L);
+            }
+            return slots.merge(new Key(day, caregiver), free, (old, added) -> old | added);
+        } finally {
+            store.changeLock().unlock();
+        }
+    }
+
+    @Override
+    public SortedMap<LocalDate, Long> insertAll(String caregiver, Collection<LocalDate> days, long free) {
+        SortedMap<LocalDate, Long> inserted = new TreeMap<>();
+        store.changeLock().lock();
+        try {
+            for (LocalDate day : days) {
+                Key key = new Key(day, caregiver);
+                long open = free & ~store.appointmentTable().bookedSlots(caregiver, day);
+                if (open != 0 && slots.putIfAbsent(key, open) == null) {
+                    inserted.put(day, open);
+                }
+            }
+        } finally {
+            store.changeLock().unlock();
+        }
+        return inserted;
+    }
+
+    @Override
+    public boolean delete(LocalDate day, String caregiver) {
+        store.changeLock().lock();
+        try {
+            return slots.remove(new Key(day, caregiver)) != null;
+        } finally {
+            store.changeLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEach(Visitor visitor) {
+        for (Map.Entry<Key, Long> entry : slots.entrySet()) {
+            visitor.accept(entry.getKey().day, entry.getKey().caregiver, entry.getValue());
+        }
+    }
+
+    // clears a slot's bit, dropping the day once none is left; returns whether it was set, i.e. the slot was free
+    boolean claim(LocalDate day, String caregiver, int slot) {
+        Key key = new Key(day, caregiver);
+        long bit = 1L << slot;
+        store.changeLock().lock();
+        try {
+            // the change lock is shared between changes, so the bit is tested and cleared with a compare-and-set;
+            // computeIfPresent would not do, as the skip list may run its function for attempts that then fail
+            while (true) {
+                Long free = slots.get(key);
+                if (free == null || (free & bit) == 0) {
+                    return false;
+                }
+                if (free == bit ? slots.remove(key, free) : slots.replace(key, free, free & ~bit)) {
+                    return true;
+                }
+            }
+        } finally {
+            store.changeLock().unlock();
+        }
+    }
+
+    // sets a slot's bit, adding the caregiver-day if it is gone
+    void release(LocalDate day, String caregiver, int slot) {
+        store.changeLock().lock();
+        try {
+            slots.merge(new Key(day, caregiver), 1L << slot, (free, bit) -> free | bit);
+        } finally {
+            store.changeLock().unlock();
+        }
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    // for loading a snapshot
+    void put(LocalDate day, String caregiver, long free) {
+        slots.put(new Key(day, caregiver), free);
+    }
+
+    private static class Key {
+        private final LocalDate day;
+        private final String caregiver;
+
+        private Key(LocalDate day, String caregiver) {
+            this.day = day;
+            this.caregiver = caregiver;
+        }
+    }
+}
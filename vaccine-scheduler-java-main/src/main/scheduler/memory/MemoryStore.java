@@ -0,0 +1,268 @@
+package scheduler.memory;
+
+import scheduler.model.Appointment;
+import scheduler.repository.AppointmentRepository;
+import scheduler.repository.AvailabilityRepository;
+import scheduler.repository.CaregiverRepository;
+import scheduler.repository.PatientRepository;
+import scheduler.repository.StoredAccount;
+import scheduler.repository.VaccineRepository;
+import scheduler.util.Util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps every table in this process, in concurrent maps and sorted sets, for {@code Storage=memory}.
+ *
+ * Reads never lock. Changes share the read side of a read-write lock among themselves, so they only wait
+ * for a snapshot, which takes the write side to see a consistent state. If {@code MemorySnapshotPath} is set,
+ * the store is loaded from that file on startup and written back every {@code MemorySnapshotMs} milliseconds
+ * (60000 by default, 0 for only at exit) and when the process exits; a snapshot is written to a temporary
+ * file and moved into place, so a crash never leaves a half-written one. Changes made since the last
+ * snapshot are lost if the process dies.
+ *
+ * The store belongs to one process; leave the dose ledger off with it, the stock is already in memory.
+ */
+public final class MemoryStore {
+
+    private static final int MAGIC = 0x56534E50;
+    // 2 added the free slots of availabilities and the slot of appointments; 1 is still read
+    private static final int FORMAT = 2;
+
+    private static MemoryStore instance = null;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Path snapshotPath;
+    private final MemoryAccountRepository patients;
+    private final MemoryAccountRepository caregivers;
+    private final MemoryVaccineRepository vaccines;
+    private final MemoryAvailabilityRepository availabilities;
+    private final MemoryAppointmentRepository appointments;
+
+    public static synchronized MemoryStore getInstance() {
+        if (instance == null) {
+            String path = Util.getSetting("MemorySnapshotPath", null);
+            MemoryStore store = new MemoryStore(path == null || path.isBlank() ? null : Paths.get(path));
+            if (store.snapshotPath != null) {
+                try {
+                    store.load();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not load the snapshot " + path, e);
+                }
+                store.start(Util.getLongSetting("MemorySnapshotMs", 60000));
+            }
+            instance = store;
+        }
+        return instance;
+    }
+
+    // an empty store that is never saved
+    public MemoryStore() {
+        this(null);
+    }
+
+    // the repositories keep a reference to the store, so they are made last, once everything else is set; the
+    // class is final, so no subclass can see the store before its constructor finished
+    private MemoryStore(Path snapshotPath) {
+        this.snapshotPath = snapshotPath;
+        this.patients = new MemoryAccountRepository(this);
+        this.caregivers = new MemoryAccountRepository(this);
+        this.vaccines = new MemoryVaccineRepository(this);
+        this.availabilities = new MemoryAvailabilityRepository(this);
+        this.appointments = new MemoryAppointmentRepository(this);
+    }
+
+    public PatientRepository patients() {
+        return patients;
+    }
+
+    public CaregiverRepository caregivers() {
+        return caregivers;
+    }
+
+    public VaccineRepository vaccines() {
+        return vaccines;
+    }
+
+    public AvailabilityRepository availabilities() {
+        return availabilities;
+    }
+
+    public AppointmentRepository appointments() {
+        return appointments;
+    }
+
+    // changes hold this while they run
+    ReentrantReadWriteLock.ReadLock changeLock() {
+        return lock.readLock();
+    }
+
+    MemoryVaccineRepository vaccineTable() {
+        return vaccines;
+    }
+
+    MemoryAvailabilityRepository availabilityTable() {
+        return availabilities;
+    }
+
+    MemoryAppointmentRepository appointmentTable() {
+        return appointments;
+    }
+
+    // writes the whole store to the snapshot file, if there is one
+    public void snapshot() throws IOException {
+        if (snapshotPath == null) {
+            return;
+        }
+        Path temp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        lock.writeLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            writeAccounts(out, patients.all());
+            writeAccounts(out, caregivers.all());
+
+            Map<String, Integer> doses = vaccines.findAll();
+            out.writeInt(doses.size());
+            for (Map.Entry<String, Integer> entry : doses.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+
+            out.writeInt(availabilities.size());
+            availabilities.forEach((day, caregiver, slots) -> {
+                try {
+                    out.writeUTF(caregiver);
+                    out.writeLong(day.toEpochDay());
+                    out.writeLong(slots);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            List<Appointment> all = appointments.all();
+            out.writeInt(all.size());
+            for (Appointment appointment : all) {
+                out.writeInt(appointment.getId());
+                out.writeLong(appointment.getTime().toLocalDate().toEpochDay());
+                out.writeShort(appointment.getSlot());
+                out.writeUTF(appointment.getCaregiverName());
+                out.writeUTF(appointment.getPatientName());
+                out.writeUTF(appointment.getVaccineName());
+            }
+            out.writeLong(appointments.getNextId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a scheduler snapshot");
+            }
+            int format = in.readInt();
+            if (format < 1 || format > FORMAT) {
+                throw new IOException("Unknown snapshot format " + format);
+            }
+            readAccounts(in, patients);
+            readAccounts(in, caregivers);
+            for (int i = in.readInt(); i > 0; i--) {
+                vaccines.put(in.readUTF(), in.readInt());
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String caregiver = in.readUTF();
+                LocalDate day = LocalDate.ofEpochDay(in.readLong());
+                // format 1 had whole days only
+                availabilities.put(day, caregiver, format >= 2 ? in.readLong() : -1L);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                int id = in.readInt();
+                Date time = Date.valueOf(LocalDate.ofEpochDay(in.readLong()));
+                int slot = format >= 2 ? in.readUnsignedShort() : 0;
+                appointments.put(new Appointment(id, time, slot, in.readUTF(), in.readUTF(), in.readUTF()));
+            }
+            appointments.setNextId(in.readLong());
+        }
+    }
+
+    private static void writeAccounts(DataOutputStream out, List<StoredAccount> accounts) throws IOException {
+        out.writeInt(accounts.size());
+        for (StoredAccount account : accounts) {
+            out.writeUTF(account.getUsername());
+            writeBytes(out, account.getSalt());
+            writeBytes(out, account.getHash());
+            out.writeBoolean(account.getHashParams() != null);
+            if (account.getHashParams() != null) {
+                out.writeUTF(account.getHashParams());
+            }
+        }
+    }
+
+    private static void readAccounts(DataInputStream in, MemoryAccountRepository accounts) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            String username = in.readUTF();
+            byte[] salt = readBytes(in);
+            byte[] hash = readBytes(in);
+            String hashParams = in.readBoolean() ? in.readUTF() : null;
+            accounts.put(new StoredAccount(username, salt, hash, hashParams));
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private void start(long snapshotMillis) {
+        ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "memory-store-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        if (snapshotMillis > 0) {
+            saver.scheduleWithFixedDelay(() -> {
+                try {
+                    snapshot();
+                } catch (IOException e) {
+                    System.out.println("Error occurred when saving the snapshot.");
+                    e.printStackTrace();
+                }
+            }, snapshotMillis, snapshotMillis, TimeUnit.MILLISECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            saver.shutdown();
+            try {
+                snapshot();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "memory-store-shutdown"));
+    }
+}
@@ -0,0 +1,97 @@
+package scheduler.memory;
+
+import scheduler.db.ConnectionManager;
+import scheduler.repository.VaccineRepository;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class MemoryVaccineRepository implements VaccineRepository {
+
+    private final MemoryStore store;
+    private final ConcurrentHashMap<String, AtomicInteger> doses = new ConcurrentHashMap<>();
+
+    MemoryVaccineRepository(MemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void insert(String vaccineName, int doses) throws SQLException {
+        store.changeLock().lock();
+        try {
+            if (this.doses.putIfAbsent(vaccineName, new AtomicInteger(doses)) != null) {
+                throw new SQLIntegrityConstraintViolationException("Vaccine " + vaccineName + " exists",
+                        ConnectionManager.UNIQUE_VIOLATION);
+            }
+        } finally {
+            store.changeLock().unlock();
+        }
+    }
+
+    @Override
+    public int findDoses(String vaccineName) {
+        AtomicInteger stock = doses.get(vaccineName);
+        return stock == null ? -1 : stock.get();
+    }
+
+    @Override
+    public Map<String, Integer> findAll() {
+        Map<String, Integer> all = new TreeMap<>();
+        doses.forEach((name, stock) -> all.put(name, stock.get()));
+        return all;
+    }
+
+    // like the UPDATE it stands for, a change to an unknown vaccine does nothing
+    @Override
+    public void addDoses(String vaccineName, int num) {
+        store.changeLock().lock();
+        try {
+            AtomicInteger stock = doses.get(vaccineName);
+            if (stock != null) {
+                stock.addAndGet(num);
+            }
+        } finally {
+            store.changeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addDoses(Map<String, Long> deltas) {
+        store.changeLock().lock();
+        try {
+            deltas.forEach((name, delta) -> addDoses(name, Math.toIntExact(delta)));
+        } finally {
+            store.changeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean takeDoses(String vaccineName, int num) {
+        store.changeLock().lock();
+        try {
+            AtomicInteger stock = doses.get(vaccineName);
+            if (stock == null) {
+                return false;
+            }
+            int current;
+            do {
+                current = stock.get();
+                if (current < num) {
+                    return false;
+                }
+            } while (!stock.compareAndSet(current, current - num));
+            return true;
+        } finally {
+            store.changeLock().unlock();
+        }
+    }
+
+    // for loading a snapshot
+    void put(String vaccineName, int doses) {
+        this.doses.put(vaccineName, new AtomicInteger(doses));
+    }
+}
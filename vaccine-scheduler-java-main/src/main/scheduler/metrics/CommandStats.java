@@ -0,0 +1,128 @@
+package scheduler.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What one command has cost since startup: its latencies, how often it failed, and the connections it
+ * leased, the statements it executed and the rows it read. A command fails when an exception escapes it or
+ * when one of its statements raised an SQLException, even if the command caught and reported it.
+ */
+public class CommandStats implements CommandStatsMBean {
+
+    private final String command;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder sqlErrors = new LongAdder();
+
+    CommandStats(String command) {
+        this.command = command;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    void record(long nanos, boolean failed) {
+        latency.record(nanos);
+        if (failed) {
+            failures.increment();
+        }
+    }
+
+    void connectionOpened() {
+        connections.increment();
+    }
+
+    void statementExecuted() {
+        statements.increment();
+    }
+
+    void rowRead() {
+        rowsRead.increment();
+    }
+
+    void sqlError() {
+        sqlErrors.increment();
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getMeanMicros() {
+        return latency.getMeanMicros();
+    }
+
+    @Override
+    public long getP50Micros() {
+        return latency.percentileMicros(0.50);
+    }
+
+    @Override
+    public long getP99Micros() {
+        return latency.percentileMicros(0.99);
+    }
+
+    @Override
+    public long getP999Micros() {
+        return latency.percentileMicros(0.999);
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return latency.getMaxMicros();
+    }
+
+    @Override
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    @Override
+    public long getStatements() {
+        return statements.sum();
+    }
+
+    @Override
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    @Override
+    public long getSqlErrors() {
+        return sqlErrors.sum();
+    }
+
+    @Override
+    public String toString() {
+        long count = getCount();
+        return "command=" + command +
+                " count=" + count +
+                " failures=" + getFailures() +
+                " meanUs=" + getMeanMicros() +
+                " p50Us=" + getP50Micros() +
+                " p99Us=" + getP99Micros() +
+                " p999Us=" + getP999Micros() +
+                " maxUs=" + getMaxMicros() +
+                " connections=" + getConnections() +
+                " statements=" + getStatements() +
+                " rowsRead=" + getRowsRead() +
+                " sqlErrors=" + getSqlErrors() +
+                String.format(" connectionsPerOp=%.2f statementsPerOp=%.2f rowsPerOp=%.2f",
+                        perOp(getConnections(), count), perOp(getStatements(), count), perOp(getRowsRead(), count));
+    }
+
+    private static double perOp(long total, long count) {
+        return count == 0 ? 0 : (double) total / count;
+    }
+}
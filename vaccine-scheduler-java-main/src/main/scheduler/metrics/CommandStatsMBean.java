@@ -0,0 +1,30 @@
+package scheduler.metrics;
+
+/**
+ * The JMX view of one command's {@link CommandStats}. Latencies are in microseconds; the database counters
+ * are totals since startup, divide them by Count for the cost of one command.
+ */
+public interface CommandStatsMBean {
+
+    long getCount();
+
+    long getFailures();
+
+    long getMeanMicros();
+
+    long getP50Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+
+    long getConnections();
+
+    long getStatements();
+
+    long getRowsRead();
+
+    long getSqlErrors();
+}
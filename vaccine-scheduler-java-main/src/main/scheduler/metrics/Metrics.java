@@ -0,0 +1,225 @@
+package scheduler.metrics;
+
+import scheduler.db.ConnectionManager;
+import scheduler.repository.Repositories;
+import scheduler.util.Util;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-command metrics: every command run through {@code Scheduler.execute} is timed in a {@link Scope}, and
+ * the database layer reports the connections, statements, rows and SQL errors of the command running on its
+ * thread. Work done outside any command (startup loads, the dose ledger's flusher) counts as "background".
+ *
+ * Every command's {@link CommandStats} is registered as the MBean {@code scheduler:type=Command,name=<command>}
+ * when it first runs, for jconsole or any other JMX client, and so is every component that calls
+ * {@link #register}, as {@code scheduler:type=<component>}. If {@code MetricsDumpPath} is set, {@link #start()}
+ * also writes all of them to that file every {@code MetricsDumpMs} milliseconds (60000) and at exit,
+ * replacing the previous dump. {@code Metrics=false} turns all of it off, including the statement wrappers.
+ */
+public class Metrics {
+
+    public static final String BACKGROUND = "background";
+
+    private static final boolean ENABLED = Boolean.parseBoolean(Util.getSetting("Metrics", "true"));
+    private static final Map<String, CommandStats> commands = new ConcurrentHashMap<>();
+    private static final Map<String, Object> components = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Scope> current = new ThreadLocal<>();
+    private static final Scope NONE = new Scope(null, null);
+
+    private static boolean started = false;
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Starts timing a command on the calling thread. The caller marks the scope completed once the command
+     * returns normally and closes it in a finally block.
+     */
+    public static Scope enter(String command) {
+        if (!ENABLED) {
+            return NONE;
+        }
+        Scope scope = new Scope(forCommand(command), current.get());
+        current.set(scope);
+        return scope;
+    }
+
+    public static CommandStats forCommand(String command) {
+        return commands.computeIfAbsent(command, Metrics::register);
+    }
+
+    /**
+     * Registers a component's standard MBean, which must implement the interface named after its class plus
+     * MBean, and adds its toString() to the dump.
+     */
+    public static void register(String component, Object mbean) {
+        if (!ENABLED || components.putIfAbsent(component, mbean) != null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean,
+                    new ObjectName("scheduler:type=" + component));
+        } catch (JMException e) {
+            // the component still goes to the dump, only the JMX view is missing
+            e.printStackTrace();
+        }
+    }
+
+    public static void connectionOpened() {
+        if (ENABLED) {
+            stats().connectionOpened();
+        }
+    }
+
+    public static void statementExecuted() {
+        if (ENABLED) {
+            stats().statementExecuted();
+        }
+    }
+
+    public static void rowRead() {
+        if (ENABLED) {
+            stats().rowRead();
+        }
+    }
+
+    public static void sqlError() {
+        if (ENABLED) {
+            Scope scope = current.get();
+            if (scope != null) {
+                scope.sqlErrors++;
+            }
+            stats().sqlError();
+        }
+    }
+
+    // every command's metrics, one line each in command order, followed by the components and the connection
+    // pool counters
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("# ").append(Instant.now()).append('\n');
+        for (CommandStats stats : new TreeMap<>(commands).values()) {
+            report.append(stats).append('\n');
+        }
+        for (Object component : new TreeMap<>(components).values()) {
+            report.append(component).append('\n');
+        }
+        if (!Repositories.isInMemory()) {
+            report.append(ConnectionManager.getPoolStats()).append('\n');
+        }
+        return report.toString();
+    }
+
+    // starts the periodic dump if MetricsDumpPath is set; later calls do nothing
+    public static synchronized void start() {
+        String path = Util.getSetting("MetricsDumpPath", null);
+        if (started || !ENABLED || path == null || path.isBlank()) {
+            return;
+        }
+        started = true;
+        Path dumpPath = Paths.get(path);
+        long dumpMillis = Util.getLongSetting("MetricsDumpMs", 60000);
+        ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        if (dumpMillis > 0) {
+            dumper.scheduleWithFixedDelay(() -> {
+                try {
+                    dump(dumpPath);
+                } catch (IOException e) {
+                    System.out.println("Error occurred when writing the metrics dump.");
+                    e.printStackTrace();
+                }
+            }, dumpMillis, dumpMillis, TimeUnit.MILLISECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            dumper.shutdown();
+            try {
+                dump(dumpPath);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "metrics-shutdown"));
+    }
+
+    // written to a temporary file and moved into place, so a reader never sees half a dump
+    private static void dump(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(temp, report(), StandardCharsets.UTF_8);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static CommandStats stats() {
+        Scope scope = current.get();
+        return scope == null ? forCommand(BACKGROUND) : scope.stats;
+    }
+
+    private static CommandStats register(String command) {
+        CommandStats stats = new CommandStats(command);
+        try {
+            // command names are plain words from a fixed set, see Scheduler.execute
+            ObjectName name = new ObjectName("scheduler:type=Command,name=" + command);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(stats, name);
+        } catch (JMException e) {
+            // the metrics still go to the dump, only the JMX view is missing
+            e.printStackTrace();
+        }
+        return stats;
+    }
+
+    /**
+     * One command being timed. Scopes nest, so that a command run from inside another (a script, say) is
+     * counted on its own and the outer one resumes afterwards.
+     */
+    public static class Scope implements AutoCloseable {
+        private final CommandStats stats;
+        private final Scope outer;
+        private final long start = System.nanoTime();
+        private boolean completed = false;
+        private int sqlErrors = 0;
+
+        private Scope(CommandStats stats, Scope outer) {
+            this.stats = stats;
+            this.outer = outer;
+        }
+
+        // the command returned normally; whether it did what was asked is up to the command itself
+        public void completed() {
+            if (stats != null) {
+                completed = true;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (stats == null) {
+                return;
+            }
+            stats.record(System.nanoTime() - start, !completed || sqlErrors > 0);
+            if (outer == null) {
+                current.remove();
+            } else {
+                current.set(outer);
+            }
+        }
+    }
+}
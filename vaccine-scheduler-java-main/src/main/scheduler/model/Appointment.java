@@ -0,0 +1,350 @@
+package scheduler.model;
+
+import scheduler.db.IdAllocator;
+import scheduler.repository.AppointmentRepository;
+import scheduler.repository.CaregiverPicker;
+import scheduler.repository.Repositories;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Appointment {
+    public static final String NO_SUCH_APPOINTMENT = "The appointment does not exist!";
+    public static final String NOT_YOURS = "Sorry, you need permission";
+
+    private final int id;
+    private final Date time;
+    // see TimeSlots
+    private final int slot;
+    private final String caregiverName;
+    private final String patientName;
+    private final String vaccineName;
+
+    public Appointment(int id, Date time, int slot, String caregiverName, String patientName, String vaccineName) {
+        this.id = id;
+        this.time = time;
+        this.slot = slot;
+        this.caregiverName = caregiverName;
+        this.patientName = patientName;
+        this.vaccineName = vaccineName;
+    }
+
+    // Getters
+    public int getId() {
+        return id;
+    }
+
+    public Date getTime() {
+        return time;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    // the start of the slot, like 09:15
+    public String getStartTime() {
+        return TimeSlots.format(slot);
+    }
+
+    public String getCaregiverName() {
+        return caregiverName;
+    }
+
+    public String getPatientName() {
+        return patientName;
+    }
+
+    public String getVaccineName() {
+        return vaccineName;
+    }
+
+    /**
+     * Books one dose of a vaccine with any caregiver available on the given day, in a given time slot or in
+     * the first free slot of the caregiver it gets.
+     *
+     * The booking is a single unit of work in the {@link AppointmentRepository}: with the JDBC backend one
+     * transaction on one pooled connection (a conditional dose decrement, a claim of one slot in a caregiver's
+     * availability and the appointment insert), where the old reserve command ran seven statements on six
+     * freshly opened connections with no transaction around any of them. If any step fails nothing is written.
+     *
+     * Caregivers and their slots are offered from the {@link AvailabilityIndex} without a query, in the order
+     * its {@link AssignmentStrategy} picks them, and taken out of it right away, so that concurrent bookings
+     * here pick someone else; a caregiver only belongs to this booking if its slot could still be claimed,
+     * otherwise a concurrent reservation got there first and the next one is tried.
+     *
+     * With the {@link DoseLedger} enabled the dose is taken from the in-memory stock beforehand instead, and
+     * handed back if the booking fails; the Vaccines table then only sees the ledger's batched deltas.
+     *
+     * With the {@link ReservationJournal} enabled the booking is decided in memory and journaled instead, see
+     * {@link #reserveJournaled}, and with the {@link ReservationCoalescer} it is decided in memory and written
+     * with a group of others, see {@link #reserveGrouped}.
+     */
+    public static class AppointmentReserver {
+        private final String patientName;
+        private final Date time;
+        // -1 for any
+        private final int slot;
+        private final String vaccineName;
+
+        public AppointmentReserver(String patientName, Date time, String vaccineName) {
+            this(patientName, time, -1, vaccineName);
+        }
+
+        public AppointmentReserver(String patientName, Date time, int slot, String vaccineName) {
+            this.patientName = patientName;
+            this.time = time;
+            this.slot = slot;
+            this.vaccineName = vaccineName;
+        }
+
+        // throws IllegalArgumentException with a message for the user when the booking cannot be made
+        public Appointment reserve() throws SQLException {
+            // allocated before leasing a connection: a block refill needs a connection of its own, and holding
+            // one while waiting for it could exhaust the pool when many sessions reserve at once
+            // Note: IDs of failed bookings are simply skipped
+            int id = IdAllocator.forAppointments().nextId();
+            if (ReservationJournal.isEnabled()) {
+                return reserveJournaled(id);
+            }
+            if (ReservationCoalescer.isEnabled()) {
+                return reserveGrouped(id);
+            }
+
+            DoseLedger ledger = DoseLedger.isEnabled() ? DoseLedger.getInstance() : null;
+            if (ledger != null && !ledger.tryTake(vaccineName, 1)) {
+                throw new IllegalArgumentException(ledger.contains(vaccineName)
+                        ? AppointmentRepository.NOT_ENOUGH_DOSES : AppointmentRepository.UNKNOWN_VACCINE);
+            }
+            AvailabilityIndex index = AvailabilityIndex.getInstance();
+            LocalDate day = time.toLocalDate();
+            // the last slot offered, which is the claimed one once the booking got that far
+            AvailabilityIndex.Claim[] offered = {null};
+            CaregiverPicker picker = new CaregiverPicker() {
+                @Override
+                public String next() {
+                    offered[0] = take(index, day);
+                    return offered[0] == null ? null : offered[0].getCaregiver();
+                }
+
+                @Override
+                public int slot() {
+                    return offered[0].getSlot();
+                }
+            };
+            boolean booked = false;
+            try {
+                Appointment appointment = Repositories.appointments()
+                        .book(id, day, patientName, vaccineName, ledger == null, picker);
+                booked = true;
+                index.booked(appointment.getCaregiverName());
+                if (ledger == null) {
+                    VaccineCatalog.getInstance().apply(vaccineName, -1);
+                }
+                return appointment;
+            } catch (IllegalArgumentException e) {
+                if (ledger == null && e.getMessage().equals(AppointmentRepository.NOT_ENOUGH_DOSES)) {
+                    // the cached doses may still say otherwise
+                    VaccineCatalog.getInstance().invalidate(vaccineName);
+                }
+                throw e;
+            } finally {
+                if (ledger != null && !booked) {
+                    ledger.add(vaccineName, 1);
+                }
+                // the claim was undone, so the slot is still free
+                if (offered[0] != null && !booked) {
+                    index.add(day, offered[0].getCaregiver(), TimeSlots.bit(offered[0].getSlot()));
+                }
+            }
+        }
+
+        /**
+         * Takes the dose from the ledger and the caregiver from the index, both without a query, and returns
+         * once the journal has the booking on disk; the tables get it when the journal is applied.
+         */
+        private Appointment reserveJournaled(int id) throws SQLException {
+            DoseLedger ledger = DoseLedger.getInstance();
+            if (!ledger.tryTake(vaccineName, 1, false)) {
+                throw new IllegalArgumentException(ledger.contains(vaccineName)
+                        ? AppointmentRepository.NOT_ENOUGH_DOSES : AppointmentRepository.UNKNOWN_VACCINE);
+            }
+            AvailabilityIndex index = AvailabilityIndex.getInstance();
+            LocalDate day = time.toLocalDate();
+            AvailabilityIndex.Claim claim = take(index, day);
+            boolean booked = false;
+            try {
+                if (claim == null) {
+                    throw new IllegalArgumentException(AppointmentRepository.NO_CAREGIVER);
+                }
+                Appointment appointment = new Appointment(id, time, claim.getSlot(), claim.getCaregiver(),
+                        patientName, vaccineName);
+                ReservationJournal.getInstance().booked(appointment);
+                booked = true;
+                index.booked(claim.getCaregiver());
+                return appointment;
+            } finally {
+                if (!booked) {
+                    ledger.add(vaccineName, 1, false);
+                    if (claim != null) {
+                        index.add(day, claim.getCaregiver(), TimeSlots.bit(claim.getSlot()));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Takes the dose from the ledger and the caregiver from the index, both without a query, and has the
+         * coalescer write the booking with others. A slot another process claimed first is dropped and the
+         * next one is tried.
+         */
+        private Appointment reserveGrouped(int id) throws SQLException {
+            DoseLedger ledger = DoseLedger.getInstance();
+            if (!ledger.tryTake(vaccineName, 1, false)) {
+                throw new IllegalArgumentException(ledger.contains(vaccineName)
+                        ? AppointmentRepository.NOT_ENOUGH_DOSES : AppointmentRepository.UNKNOWN_VACCINE);
+            }
+            AvailabilityIndex index = AvailabilityIndex.getInstance();
+            LocalDate day = time.toLocalDate();
+            AvailabilityIndex.Claim claim = null;
+            Appointment appointment = null;
+            try {
+                while (appointment == null) {
+                    claim = take(index, day);
+                    if (claim == null) {
+                        throw new IllegalArgumentException(AppointmentRepository.NO_CAREGIVER);
+                    }
+                    Appointment candidate = new Appointment(id, time, claim.getSlot(), claim.getCaregiver(),
+                            patientName, vaccineName);
+                    if (ReservationCoalescer.getInstance().book(candidate)) {
+                        appointment = candidate;
+                    } else {
+                        // gone from the table, so it stays out of the index too
+                        claim = null;
+                    }
+                }
+                index.booked(claim.getCaregiver());
+                return appointment;
+            } finally {
+                if (appointment == null) {
+                    ledger.add(vaccineName, 1, false);
+                    if (claim != null) {
+                        index.add(day, claim.getCaregiver(), TimeSlots.bit(claim.getSlot()));
+                    }
+                }
+            }
+        }
+
+        private AvailabilityIndex.Claim take(AvailabilityIndex index, LocalDate day) {
+            return slot < 0 ? index.take(day) : index.take(day, slot);
+        }
+    }
+
+    /**
+     * Cancels appointments, one by ID or all of a caregiver's day or of a vaccine at once. Each is one unit of
+     * work in the {@link AppointmentRepository}, which with JDBC deletes the appointments with a single
+     * statement that returns them, gives their doses back with one update per vaccine and frees their
+     * caregivers' slots with one batch; the old cancel command ran five statements on five
+     * connections for a single appointment. The {@link AvailabilityIndex} and the dose cache or ledger are
+     * brought up to date afterwards.
+     *
+     * With the {@link ReservationJournal} enabled a single cancellation is journaled instead, like a booking.
+     */
+    public static class AppointmentCanceller {
+
+        /**
+         * Cancels one appointment; with a patient given, only if it is theirs.
+         *
+         * @throws IllegalArgumentException with a message for the user when there is nothing to cancel
+         */
+        public Appointment cancel(int id, String patientName) throws SQLException {
+            if (ReservationJournal.isEnabled()) {
+                return cancelJournaled(id, patientName);
+            }
+            Appointment appointment = Repositories.appointments().cancel(id, patientName);
+            if (appointment == null) {
+                // only asked on the failure path, to tell a missing appointment apart from someone else's
+                throw new IllegalArgumentException(patientName != null && Repositories.appointments().find(id) != null
+                        ? NOT_YOURS : NO_SUCH_APPOINTMENT);
+            }
+            released(List.of(appointment), true);
+            return appointment;
+        }
+
+        // cancels a caregiver's appointments on a day, for when the caregiver cannot come
+        public List<Appointment> cancelCaregiverDay(String caregiverName, LocalDate day) throws SQLException {
+            // out of the index first, so that no booking picks the caregiver meanwhile
+            AvailabilityIndex index = AvailabilityIndex.getInstance();
+            long removed = index.remove(day, caregiverName);
+            boolean cancelledDay = false;
+            try {
+                ReservationJournal.applyPending();
+                List<Appointment> cancelled = Repositories.appointments().cancelCaregiverDay(caregiverName, day);
+                cancelledDay = true;
+                released(cancelled, false);
+                return cancelled;
+            } finally {
+                // the day is still in the table, so its free slots are still free
+                if (!cancelledDay && removed != 0) {
+                    index.add(day, caregiverName, removed);
+                }
+            }
+        }
+
+        // cancels the appointments for a vaccine in [from, to], for a recalled lot
+        public List<Appointment> cancelVaccine(String vaccineName, LocalDate from, LocalDate to) throws SQLException {
+            ReservationJournal.applyPending();
+            List<Appointment> cancelled = Repositories.appointments().cancelVaccine(vaccineName, from, to);
+            released(cancelled, true);
+            return cancelled;
+        }
+
+        private Appointment cancelJournaled(int id, String patientName) throws SQLException {
+            // a journaled booking is not in the table until applied
+            ReservationJournal journal = ReservationJournal.getInstance();
+            journal.apply();
+            Appointment appointment = Repositories.appointments().find(id);
+            if (appointment == null) {
+                throw new IllegalArgumentException(NO_SUCH_APPOINTMENT);
+            }
+            if (patientName != null && !appointment.getPatientName().equals(patientName)) {
+                throw new IllegalArgumentException(NOT_YOURS);
+            }
+            // the journal gives the dose and the availability back in the tables later
+            if (!journal.cancelled(appointment)) {
+                throw new IllegalArgumentException(NO_SUCH_APPOINTMENT);
+            }
+            released(List.of(appointment), true);
+            return appointment;
+        }
+
+        // the tables already have the doses back; the in-memory copies of them follow
+        private static void released(List<Appointment> cancelled, boolean caregiversAvailable) throws SQLException {
+            if (cancelled.isEmpty()) {
+                return;
+            }
+            AvailabilityIndex index = AvailabilityIndex.getInstance();
+            Map<String, Integer> doses = new HashMap<>();
+            for (Appointment appointment : cancelled) {
+                if (caregiversAvailable) {
+                    index.add(appointment.getTime().toLocalDate(), appointment.getCaregiverName(),
+                            TimeSlots.bit(appointment.getSlot()));
+                }
+                index.released(appointment.getCaregiverName());
+                doses.merge(appointment.getVaccineName(), 1, Integer::sum);
+            }
+            DoseLedger ledger = DoseLedger.isEnabled() ? DoseLedger.getInstance() : null;
+            for (Map.Entry<String, Integer> entry : doses.entrySet()) {
+                if (ledger != null) {
+                    ledger.add(entry.getKey(), entry.getValue(), false);
+                } else {
+                    VaccineCatalog.getInstance().apply(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+}
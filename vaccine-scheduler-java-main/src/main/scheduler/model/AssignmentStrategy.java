@@ -0,0 +1,213 @@
+package scheduler.model;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses which of the caregivers available on a day a booking gets, for the {@link AvailabilityIndex}.
+ * Caregivers are identified by their ordinal in the index. The index calls every method except
+ * {@link #loadChanged} while holding the lock of the day's bits. A booking for a given time slot only considers
+ * the caregivers free in that slot, which {@link #pickFrom} chooses among.
+ *
+ * The {@code AssignmentStrategy} setting picks one of:
+ * <ul>
+ *     <li>{@code least_loaded} (the default): the caregiver with the fewest appointments, ties broken by
+ *     ordinal. Every day keeps a binary heap of (load, ordinal) keys, so a pick costs O(log n).</li>
+ *     <li>{@code round_robin}: the next available caregiver after the one picked last, on any day.</li>
+ *     <li>{@code alphabetical}: the available caregiver with the lowest ordinal. Ordinals follow name order
+ *     for the caregivers loaded at startup and order of first appearance for those added later.</li>
+ * </ul>
+ */
+interface AssignmentStrategy {
+
+    // one of the set bits of available, or -1 if there is none; the caller clears the bit it gets
+    int pick(LocalDate day, BitSet available);
+
+    // one of the set bits of candidates, the caregivers free in a given slot, or -1 if there is none
+    default int pickFrom(BitSet candidates) {
+        return candidates.nextSetBit(0);
+    }
+
+    // a caregiver became available on a day
+    default void added(LocalDate day, int ordinal) {
+    }
+
+    // the last available caregiver of a day was taken or removed
+    default void emptied(LocalDate day) {
+    }
+
+    // a caregiver's appointments went up or down by delta
+    default void loadChanged(int ordinal, int delta) {
+    }
+
+    static AssignmentStrategy forName(String name) {
+        if (name.equals("least_loaded")) {
+            return new LeastLoaded();
+        } else if (name.equals("round_robin")) {
+            return new RoundRobin();
+        } else if (name.equals("alphabetical")) {
+            return (day, available) -> available.nextSetBit(0);
+        }
+        throw new IllegalArgumentException(
+                "AssignmentStrategy must be least_loaded, round_robin or alphabetical: " + name);
+    }
+
+    class RoundRobin implements AssignmentStrategy {
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        @Override
+        public int pick(LocalDate day, BitSet available) {
+            int ordinal = available.nextSetBit(cursor.get());
+            if (ordinal < 0) {
+                ordinal = available.nextSetBit(0);
+            }
+            if (ordinal >= 0) {
+                cursor.set(ordinal + 1);
+            }
+            return ordinal;
+        }
+
+        @Override
+        public int pickFrom(BitSet candidates) {
+            return pick(null, candidates);
+        }
+    }
+
+    /**
+     * The heaps are corrected lazily: a key whose caregiver is no longer available is dropped when it reaches
+     * the top, and a key with an outdated load is pushed back with the current one. A booking raises a load,
+     * so its outdated keys only surface too early and get fixed; a cancellation lowers one, and the day it
+     * frees gets a fresh key, but on other days the caregiver waits for its old key to surface.
+     *
+     * A day's heap is dropped once nobody is available that day, and the heaps of past days whenever a new one
+     * is built, so the map only holds the days still being booked.
+     */
+    class LeastLoaded implements AssignmentStrategy {
+        private final Map<Integer, AtomicInteger> loads = new ConcurrentHashMap<>();
+        // built for a day the first time it is picked from
+        private final Map<LocalDate, LongHeap> heaps = new ConcurrentHashMap<>();
+
+        @Override
+        public int pick(LocalDate day, BitSet available) {
+            LongHeap heap = heaps.get(day);
+            if (heap == null) {
+                LocalDate today = LocalDate.now();
+                heaps.keySet().removeIf(d -> d.isBefore(today));
+                heap = new LongHeap();
+                for (int i = available.nextSetBit(0); i >= 0; i = available.nextSetBit(i + 1)) {
+                    heap.push(key(load(i), i));
+                }
+                heaps.put(day, heap);
+            }
+            while (heap.size() > 0) {
+                long top = heap.pop();
+                int ordinal = (int) top;
+                if (!available.get(ordinal)) {
+                    continue;
+                }
+                int load = load(ordinal);
+                if (load != (int) (top >>> 32)) {
+                    heap.push(key(load, ordinal));
+                    continue;
+                }
+                return ordinal;
+            }
+            return -1;
+        }
+
+        // a plain scan, as the candidates change with the slot and the heaps are per day
+        @Override
+        public int pickFrom(BitSet candidates) {
+            int best = -1;
+            int bestLoad = Integer.MAX_VALUE;
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                int load = load(i);
+                if (load < bestLoad) {
+                    best = i;
+                    bestLoad = load;
+                }
+            }
+            return best;
+        }
+
+        @Override
+        public void added(LocalDate day, int ordinal) {
+            LongHeap heap = heaps.get(day);
+            if (heap != null) {
+                heap.push(key(load(ordinal), ordinal));
+            }
+        }
+
+        @Override
+        public void emptied(LocalDate day) {
+            heaps.remove(day);
+        }
+
+        @Override
+        public void loadChanged(int ordinal, int delta) {
+            loads.computeIfAbsent(ordinal, o -> new AtomicInteger()).addAndGet(delta);
+        }
+
+        private int load(int ordinal) {
+            AtomicInteger load = loads.get(ordinal);
+            return load == null ? 0 : Math.max(0, load.get());
+        }
+
+        // ordered by load and then by ordinal
+        private static long key(int load, int ordinal) {
+            return ((long) load << 32) | ordinal;
+        }
+    }
+
+    // a binary min-heap of longs, without boxing
+    class LongHeap {
+        private long[] keys = new long[16];
+        private int size = 0;
+
+        int size() {
+            return size;
+        }
+
+        void push(long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                i = parent;
+            }
+            keys[i] = key;
+        }
+
+        long pop() {
+            long top = keys[0];
+            long last = keys[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (last <= keys[child]) {
+                    break;
+                }
+                keys[i] = keys[child];
+                i = child;
+            }
+            keys[i] = last;
+            return top;
+        }
+    }
+}
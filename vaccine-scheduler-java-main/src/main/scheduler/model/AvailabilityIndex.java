@@ -0,0 +1,366 @@
+package scheduler.model;
+
+import scheduler.repository.Repositories;
+import scheduler.util.NameDictionary;
+import scheduler.util.Util;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * An in-process copy of the availability repository, indexed by day.
+ *
+ * Each caregiver gets a small ordinal in a {@link NameDictionary} the first time it is seen. Each day holds
+ * the free {@link TimeSlots} of every caregiver as one long per ordinal, plus a {@link BitSet} with the
+ * ordinals of the caregivers that have any slot free, so finding and claiming a free slot is a couple of bit
+ * scans. The longs of the first {@code AvailabilityDenseOrdinals} ordinals (1024) are an array, those of
+ * later ones a map, so that a day with a few late caregivers does not hold an array sized for all of them.
+ * It is loaded once at startup and kept coherent by every code path that changes Availabilities in this
+ * process; the table stays the arbiter when two bookings race for the same slot.
+ *
+ * Which available caregiver a booking gets is up to the {@link AssignmentStrategy} named by the
+ * {@code AssignmentStrategy} setting, which also learns every caregiver's appointment count at startup.
+ */
+public class AvailabilityIndex {
+
+    private static AvailabilityIndex instance = null;
+
+    private final String strategyName = Util.getSetting("AssignmentStrategy", "least_loaded");
+    private final AssignmentStrategy strategy = AssignmentStrategy.forName(strategyName);
+
+    private static final int DENSE_ORDINALS = Math.max(0, Util.getIntSetting("AvailabilityDenseOrdinals", 1024));
+
+    private final ConcurrentSkipListMap<LocalDate, Day> days = new ConcurrentSkipListMap<>();
+    private final NameDictionary caregivers = new NameDictionary();
+
+    public static synchronized AvailabilityIndex getInstance() throws SQLException {
+        if (instance == null) {
+            AvailabilityIndex index = new AvailabilityIndex();
+            index.load();
+            instance = index;
+        }
+        return instance;
+    }
+
+    // frees slots of a caregiver's day
+    public void add(LocalDate day, String caregiver, long slots) {
+        slots &= TimeSlots.ALL;
+        if (slots == 0) {
+            return;
+        }
+        int ordinal = ordinalOf(caregiver);
+        Day bits = days.computeIfAbsent(day, d -> new Day());
+        synchronized (bits) {
+            long free = bits.free(ordinal);
+            bits.setFree(ordinal, free | slots);
+            if (free == 0) {
+                bits.available.set(ordinal);
+                strategy.added(day, ordinal);
+            }
+        }
+    }
+
+    // takes away the caregiver's whole day, returning the slots that were free so that they can be put back
+    public long remove(LocalDate day, String caregiver) {
+        int ordinal = caregivers.idOf(caregiver);
+        Day bits = days.get(day);
+        if (ordinal < 0 || bits == null) {
+            return 0;
+        }
+        synchronized (bits) {
+            long free = bits.free(ordinal);
+            bits.setFree(ordinal, 0);
+            clear(day, bits, ordinal);
+            return free;
+        }
+    }
+
+    // whether the caregiver has any slot free that day
+    public boolean contains(LocalDate day, String caregiver) {
+        int ordinal = caregivers.idOf(caregiver);
+        Day bits = days.get(day);
+        if (ordinal < 0 || bits == null) {
+            return false;
+        }
+        synchronized (bits) {
+            return bits.available.get(ordinal);
+        }
+    }
+
+    /**
+     * Takes the first free slot of the caregiver the strategy picks out of that day's available ones, or
+     * returns null if there is none.
+     */
+    public Claim take(LocalDate day) {
+        Day bits = days.get(day);
+        if (bits == null) {
+            return null;
+        }
+        int ordinal;
+        int slot;
+        synchronized (bits) {
+            ordinal = strategy.pick(day, bits.available);
+            if (ordinal < 0) {
+                return null;
+            }
+            long free = bits.free(ordinal);
+            slot = TimeSlots.first(free);
+            free &= ~TimeSlots.bit(slot);
+            bits.setFree(ordinal, free);
+            if (free == 0) {
+                clear(day, bits, ordinal);
+            } else {
+                // still available, for the strategy to pick again
+                strategy.added(day, ordinal);
+            }
+        }
+        return new Claim(caregivers.nameOf(ordinal), slot);
+    }
+
+    /**
+     * Takes the given slot of one of the caregivers that have it free, the one the strategy picks, or returns
+     * null if none has.
+     */
+    public Claim take(LocalDate day, int slot) {
+        Day bits = days.get(day);
+        if (bits == null) {
+            return null;
+        }
+        long bit = TimeSlots.bit(slot);
+        int ordinal;
+        synchronized (bits) {
+            BitSet candidates = new BitSet();
+            for (int i = bits.available.nextSetBit(0); i >= 0; i = bits.available.nextSetBit(i + 1)) {
+                if ((bits.free(i) & bit) != 0) {
+                    candidates.set(i);
+                }
+            }
+            ordinal = strategy.pickFrom(candidates);
+            if (ordinal < 0) {
+                return null;
+            }
+            long free = bits.free(ordinal) & ~bit;
+            bits.setFree(ordinal, free);
+            if (free == 0) {
+                clear(day, bits, ordinal);
+            }
+        }
+        return new Claim(caregivers.nameOf(ordinal), slot);
+    }
+
+    // records that a caregiver got an appointment
+    public void booked(String caregiver) {
+        strategy.loadChanged(ordinalOf(caregiver), 1);
+    }
+
+    // records that one of a caregiver's appointments was cancelled
+    public void released(String caregiver) {
+        strategy.loadChanged(ordinalOf(caregiver), -1);
+    }
+
+    public List<String> caregivers(LocalDate day) {
+        return new ArrayList<>(slots(day).keySet());
+    }
+
+    // the free slots of every caregiver with any that day, in ordinal order
+    public Map<String, Long> slots(LocalDate day) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        Day bits = days.get(day);
+        if (bits == null) {
+            return result;
+        }
+        synchronized (bits) {
+            for (int i = bits.available.nextSetBit(0); i >= 0; i = bits.available.nextSetBit(i + 1)) {
+                result.put(caregivers.nameOf(i), bits.free(i));
+            }
+        }
+        return result;
+    }
+
+    public int count(LocalDate day) {
+        Day bits = days.get(day);
+        if (bits == null) {
+            return 0;
+        }
+        synchronized (bits) {
+            return bits.available.cardinality();
+        }
+    }
+
+    // the number of available caregivers for every day in [from, to] that has at least one
+    public NavigableMap<LocalDate, Integer> counts(LocalDate from, LocalDate to) {
+        NavigableMap<LocalDate, Integer> result = new TreeMap<>();
+        for (Map.Entry<LocalDate, Day> entry : days.subMap(from, true, to, true).entrySet()) {
+            int count;
+            synchronized (entry.getValue()) {
+                count = entry.getValue().available.cardinality();
+            }
+            if (count > 0) {
+                result.put(entry.getKey(), count);
+            }
+        }
+        return result;
+    }
+
+    // the first n days on or after from with at least one available caregiver, with their counts
+    public NavigableMap<LocalDate, Integer> next(LocalDate from, int n) {
+        NavigableMap<LocalDate, Integer> result = new TreeMap<>();
+        for (Map.Entry<LocalDate, Day> entry : days.tailMap(from, true).entrySet()) {
+            if (result.size() >= n) {
+                break;
+            }
+            int count;
+            synchronized (entry.getValue()) {
+                count = entry.getValue().available.cardinality();
+            }
+            if (count > 0) {
+                result.put(entry.getKey(), count);
+            }
+        }
+        return result;
+    }
+
+    public int getCaregiverCount() {
+        return caregivers.size();
+    }
+
+    public int getDayCount() {
+        return days.size();
+    }
+
+    /**
+     * A rough estimate of the heap used by the index: the words of every day, plus typical JVM object and map
+     * entry overheads, plus the caregiver dictionary.
+     */
+    public long getFootprintBytes() {
+        long bytes = 0;
+        for (Day bits : days.values()) {
+            long words;
+            int sparse;
+            synchronized (bits) {
+                words = (bits.available.size() + 63) / 64 + bits.slots.length;
+                sparse = bits.sparse.size();
+            }
+            // Day + BitSet + two long[] headers + words + skip list node and LocalDate key, plus a HashMap node,
+            // its table slot and the boxed key and value for every sparse ordinal
+            bytes += 16 + 24 + 2 * 16 + words * 8 + 88 + sparse * (32 + 8 + 16 + 24);
+        }
+        return bytes + caregivers.getFootprintBytes();
+    }
+
+    // marks a caregiver unavailable, under the day's lock, and tells the strategy when nobody is left
+    private void clear(LocalDate day, Day bits, int ordinal) {
+        if (bits.available.get(ordinal)) {
+            bits.available.clear(ordinal);
+            if (bits.available.isEmpty()) {
+                strategy.emptied(day);
+            }
+        }
+    }
+
+    // the ordinal of a caregiver, assigning the next free one on first sight
+    private int ordinalOf(String caregiver) {
+        int ordinal = caregivers.idOf(caregiver);
+        // readers only find an ordinal through a day's bits, which are set after this returns and under that
+        // day's lock, so they always see the name as well
+        return ordinal >= 0 ? ordinal : caregivers.add(caregiver);
+    }
+
+    private void load() throws SQLException {
+        // ordered by name, so that ordinals follow alphabetical order at startup
+        Repositories.availabilities().forEach(this::add);
+        for (Map.Entry<String, Integer> entry : Repositories.appointments().countByCaregiver().entrySet()) {
+            strategy.loadChanged(ordinalOf(entry.getKey()), entry.getValue());
+        }
+    }
+
+    @Override
+    public String toString() {
+        long available = 0;
+        long free = 0;
+        for (Day bits : days.values()) {
+            synchronized (bits) {
+                available += bits.available.cardinality();
+                for (long slots : bits.slots) {
+                    free += Long.bitCount(slots);
+                }
+                for (long slots : bits.sparse.values()) {
+                    free += Long.bitCount(slots);
+                }
+            }
+        }
+        return "AvailabilityIndex{" +
+                "caregivers=" + getCaregiverCount() +
+                ", days=" + getDayCount() +
+                ", availabilities=" + available +
+                ", freeSlots=" + free +
+                ", slotMinutes=" + TimeSlots.MINUTES +
+                ", footprintBytes=" + getFootprintBytes() +
+                ", strategy=" + strategyName +
+                '}';
+    }
+
+    // a caregiver and the slot of a day taken for it
+    public static class Claim {
+        private final String caregiver;
+        private final int slot;
+
+        private Claim(String caregiver, int slot) {
+            this.caregiver = caregiver;
+            this.slot = slot;
+        }
+
+        public String getCaregiver() {
+            return caregiver;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+    }
+
+    // one day's free slots, guarded by the object's lock
+    private static class Day {
+        // ordinals with at least one free slot
+        private final BitSet available = new BitSet();
+        // free slots of the dense ordinals, grown on demand
+        private long[] slots = new long[0];
+        // free slots of the ordinals beyond, only those with any
+        private final Map<Integer, Long> sparse = new HashMap<>();
+
+        private long free(int ordinal) {
+            if (ordinal >= DENSE_ORDINALS) {
+                return sparse.getOrDefault(ordinal, 0L);
+            }
+            return ordinal < slots.length ? slots[ordinal] : 0;
+        }
+
+        private void setFree(int ordinal, long free) {
+            if (ordinal >= DENSE_ORDINALS) {
+                if (free == 0) {
+                    sparse.remove(ordinal);
+                } else {
+                    sparse.put(ordinal, free);
+                }
+                return;
+            }
+            if (ordinal >= slots.length) {
+                if (free == 0) {
+                    return;
+                }
+                slots = Arrays.copyOf(slots, Math.min(DENSE_ORDINALS, Math.max(ordinal + 1, slots.length * 2)));
+            }
+            slots[ordinal] = free;
+        }
+    }
+}
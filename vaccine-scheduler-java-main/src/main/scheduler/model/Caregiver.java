@@ -1,26 +1,36 @@
 package scheduler.model;
 
-import scheduler.db.ConnectionManager;
+import scheduler.repository.Repositories;
+import scheduler.repository.StoredAccount;
+import scheduler.util.HashParams;
+import scheduler.util.PasswordHasher;
 import scheduler.util.Util;
 
 import java.sql.*;
-import java.util.Arrays;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
 
 public class Caregiver {
     private final String username;
     private final byte[] salt;
     private final byte[] hash;
+    private final String hashParams;
 
     private Caregiver(CaregiverBuilder builder) {
         this.username = builder.username;
         this.salt = builder.salt;
         this.hash = builder.hash;
+        this.hashParams = PasswordHasher.current().encode();
     }
 
     private Caregiver(CaregiverGetter getter) {
         this.username = getter.username;
         this.salt = getter.salt;
         this.hash = getter.hash;
+        this.hashParams = getter.hashParams;
     }
 
     // Getters
@@ -36,39 +46,44 @@ public class Caregiver {
         return hash;
     }
 
+    public String getHashParams() {
+        return hashParams;
+    }
+
     public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addCaregiver = "INSERT INTO Caregivers VALUES (? , ?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addCaregiver);
-            statement.setString(1, this.username);
-            statement.setBytes(2, this.salt);
-            statement.setBytes(3, this.hash);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
-        }
+        // a taken username comes back as a duplicate key, so that callers can tell it apart
+        Repositories.caregivers().insert(new StoredAccount(this.username, this.salt, this.hash, this.hashParams));
+        UsernameFilter.forCaregivers().add(this.username);
+    }
+
+    /**
+     * Frees the given time slots of a day; slots that already have an appointment stay taken.
+     *
+     * @return the slots the day has free afterwards
+     */
+    public long uploadAvailability(Date d, long slots) throws SQLException {
+        // a journaled booking or cancellation of this day may not be in the table yet
+        ReservationJournal.applyPending();
+        long free = Repositories.availabilities().insert(d.toLocalDate(), this.username, slots);
+        AvailabilityIndex.getInstance().add(d.toLocalDate(), this.username, free);
+        return free;
     }
 
-    public void uploadAvailability(Date d) throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addAvailability = "INSERT INTO Availabilities VALUES (? , ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addAvailability);
-            statement.setDate(1, d);
-            statement.setString(2, this.username);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
+    /**
+     * Uploads many whole days of availability at once, in one unit of work; days the caregiver already has
+     * are skipped, and so are days whose every slot already has an appointment.
+     *
+     * @return the number of days inserted; the others were already there
+     */
+    public int uploadAvailabilities(Collection<LocalDate> days) throws SQLException {
+        ReservationJournal.applyPending();
+        SortedMap<LocalDate, Long> inserted = Repositories.availabilities().insertAll(this.username, days,
+                TimeSlots.ALL);
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        for (Map.Entry<LocalDate, Long> day : inserted.entrySet()) {
+            index.add(day.getKey(), this.username, day.getValue());
         }
+        return inserted.size();
     }
 
     public static class CaregiverBuilder {
@@ -90,6 +105,7 @@ public class Caregiver {
         private final String password;
         private byte[] salt;
         private byte[] hash;
+        private String hashParams;
 
         public CaregiverGetter(String username, String password) {
             this.username = username;
@@ -97,34 +113,46 @@ public class Caregiver {
         }
 
         public Caregiver get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
+            StoredAccount account = Repositories.caregivers().find(this.username);
+            if (account == null) {
+                return null;
+            }
+            byte[] salt = account.getSalt();
+            // we need to call Util.trim() to get rid of the paddings,
+            // try to remove the use of Util.trim() and you'll see :)
+            byte[] hash = Util.trim(account.getHash());
+            String storedParams = account.getHashParams();
+
+            // check if the password matches
+            HashParams params = HashParams.decode(storedParams);
+            if (!PasswordHasher.verify(password, salt, hash, params)) {
+                return null;
+            }
+            this.salt = salt;
+            this.hash = hash;
+            this.hashParams = params.encode();
+            // the password is known right now, so this is the moment to rehash with the current parameters
+            if (!params.equals(PasswordHasher.current())) {
+                upgradeHash(storedParams);
+            }
+            return new Caregiver(this);
+        }
+
+        private void upgradeHash(String storedParams) {
+            byte[] newSalt = PasswordHasher.newSalt();
+            byte[] newHash = PasswordHasher.hash(password, newSalt, PasswordHasher.current());
 
-            String getCaregiver = "SELECT Salt, Hash FROM Caregivers WHERE Username = ?";
+            StoredAccount upgraded = new StoredAccount(this.username, newSalt, newHash, PasswordHasher.current().encode());
             try {
-                PreparedStatement statement = con.prepareStatement(getCaregiver);
-                statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    // we need to call Util.trim() to get rid of the paddings,
-                    // try to remove the use of Util.trim() and you'll see :)
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Caregiver(this);
-                    }
+                // only replace the hash we verified, in case a concurrent login upgraded it already
+                if (Repositories.caregivers().replaceHash(upgraded, storedParams)) {
+                    this.salt = newSalt;
+                    this.hash = newHash;
+                    this.hashParams = upgraded.getHashParams();
                 }
-                return null;
             } catch (SQLException e) {
-                throw new SQLException();
-            } finally {
-                cm.closeConnection();
+                // the old hash still works, the upgrade will be retried on the next login
+                e.printStackTrace();
             }
         }
     }
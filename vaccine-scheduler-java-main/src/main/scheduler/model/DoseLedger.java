@@ -0,0 +1,187 @@
+package scheduler.model;
+
+import scheduler.repository.Repositories;
+import scheduler.util.Util;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process dose counts for every vaccine, enabled with the {@code DoseLedger=true} setting.
+ *
+ * Each vaccine has a lock-free stock counter: taking doses is a compare-and-set loop that never lets the
+ * stock go negative, adding doses is a plain atomic add. Every change is also recorded as a delta in a
+ * striped {@link LongAdder}, and a background thread writes the accumulated deltas to the vaccine repository
+ * every {@code DoseLedgerFlushMs} milliseconds in one unit of work (with JDBC, one batch of
+ * {@code Doses = Doses + ?} updates), so the database only ever sees relative changes. The counts are
+ * reconciled with the repository on startup.
+ *
+ * The stock check is local to this process, so the ledger is meant for a single scheduler process (or the
+ * server mode) owning the vaccine stock. Deltas not yet flushed when the process dies are lost.
+ *
+ * The {@link ReservationJournal} and the {@link ReservationCoalescer} turn the ledger on as well, for their
+ * stock checks; the doses they take (and the journal gives back) are written with the bookings, not as
+ * deltas here.
+ */
+public class DoseLedger {
+
+    private static DoseLedger instance = null;
+
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(Util.getSetting("DoseLedger", "false")) || ReservationJournal.isEnabled()
+                || ReservationCoalescer.isEnabled();
+    }
+
+    public static synchronized DoseLedger getInstance() throws SQLException {
+        if (instance == null) {
+            DoseLedger ledger = new DoseLedger();
+            ledger.reconcile();
+            ledger.start(Util.getLongSetting("DoseLedgerFlushMs", 500));
+            instance = ledger;
+        }
+        return instance;
+    }
+
+    private DoseLedger() {
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "dose-ledger-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public boolean contains(String vaccineName) {
+        return counters.containsKey(vaccineName);
+    }
+
+    // returns the current stock, or -1 if the vaccine is unknown
+    public int getDoses(String vaccineName) {
+        Counter counter = counters.get(vaccineName);
+        return counter == null ? -1 : (int) counter.stock.get();
+    }
+
+    public Map<String, Integer> getAllDoses() {
+        Map<String, Integer> doses = new TreeMap<>();
+        counters.forEach((name, counter) -> doses.put(name, (int) counter.stock.get()));
+        return doses;
+    }
+
+    // takes num doses if that many are left, without ever letting the stock go negative
+    public boolean tryTake(String vaccineName, int num) {
+        return tryTake(vaccineName, num, true);
+    }
+
+    // writeBack is false when the caller writes the change to the database itself
+    public boolean tryTake(String vaccineName, int num, boolean writeBack) {
+        Counter counter = counters.get(vaccineName);
+        if (counter == null) {
+            return false;
+        }
+        long current;
+        do {
+            current = counter.stock.get();
+            if (current < num) {
+                return false;
+            }
+        } while (!counter.stock.compareAndSet(current, current - num));
+        if (writeBack) {
+            counter.delta.add(-num);
+        }
+        return true;
+    }
+
+    public void add(String vaccineName, int num) {
+        add(vaccineName, num, true);
+    }
+
+    public void add(String vaccineName, int num, boolean writeBack) {
+        Counter counter = counters.get(vaccineName);
+        if (counter == null) {
+            throw new IllegalArgumentException("Unknown vaccine " + vaccineName);
+        }
+        counter.stock.addAndGet(num);
+        if (writeBack) {
+            counter.delta.add(num);
+        }
+    }
+
+    // registers a vaccine whose row was just inserted with the given doses
+    public void register(String vaccineName, int doses) {
+        counters.putIfAbsent(vaccineName, new Counter(doses));
+    }
+
+    // load the stock of every vaccine, after writing back whatever is still pending
+    public void reconcile() throws SQLException {
+        flush();
+        for (Map.Entry<String, Integer> entry : Repositories.vaccines().findAll().entrySet()) {
+            Counter counter = counters.get(entry.getKey());
+            if (counter == null) {
+                counters.put(entry.getKey(), new Counter(entry.getValue()));
+            } else {
+                counter.stock.set(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Writes the deltas accumulated since the last flush in one unit of work. Deltas that fail to
+     * write stay pending and are retried by the next flush.
+     */
+    public synchronized void flush() throws SQLException {
+        Map<String, Long> deltas = new LinkedHashMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            Counter counter = entry.getValue();
+            long delta = counter.delta.sum() - counter.flushed;
+            if (delta != 0) {
+                deltas.put(entry.getKey(), delta);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Repositories.vaccines().addDoses(deltas);
+        deltas.forEach((name, delta) -> counters.get(name).flushed += delta);
+    }
+
+    private void start(long flushMillis) {
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (SQLException e) {
+                System.out.println("Error occurred when writing back vaccine doses.");
+                e.printStackTrace();
+            }
+        }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            flusher.shutdown();
+            try {
+                flush();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }, "dose-ledger-shutdown"));
+    }
+
+    private static class Counter {
+        private final AtomicLong stock;
+        // every change ever made, summed across stripes; only the flusher reads it
+        private final LongAdder delta = new LongAdder();
+        // the part of delta already written to the database, guarded by the flush lock
+        private long flushed = 0;
+
+        private Counter(long stock) {
+            this.stock = new AtomicLong(stock);
+        }
+    }
+}
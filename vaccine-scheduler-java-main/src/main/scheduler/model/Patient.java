@@ -1,26 +1,31 @@
 package scheduler.model;
 
-import scheduler.db.ConnectionManager;
+import scheduler.repository.Repositories;
+import scheduler.repository.StoredAccount;
+import scheduler.util.HashParams;
+import scheduler.util.PasswordHasher;
 import scheduler.util.Util;
 
 import java.sql.*;
-import java.util.Arrays;
 
 public class Patient {
     private final String username;
     private final byte[] salt;
     private final byte[] hash;
+    private final String hashParams;
 
     private Patient(Patient.PatientBuilder builder) {
         this.username = builder.username;
         this.salt = builder.salt;
         this.hash = builder.hash;
+        this.hashParams = PasswordHasher.current().encode();
     }
 
     private Patient(Patient.PatientGetter getter) {
         this.username = getter.username;
         this.salt = getter.salt;
         this.hash = getter.hash;
+        this.hashParams = getter.hashParams;
     }
 
     // Getters
@@ -36,22 +41,14 @@ public class Patient {
         return hash;
     }
 
+    public String getHashParams() {
+        return hashParams;
+    }
+
     public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addPatient = "INSERT INTO Patients VALUES (? , ?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addPatient);
-            statement.setString(1, this.username);
-            statement.setBytes(2, this.salt);
-            statement.setBytes(3, this.hash);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
-        }
+        // a taken username comes back as a duplicate key, so that callers can tell it apart
+        Repositories.patients().insert(new StoredAccount(this.username, this.salt, this.hash, this.hashParams));
+        UsernameFilter.forPatients().add(this.username);
     }
 
     public static class PatientBuilder {
@@ -73,6 +70,7 @@ public class Patient {
         private final String password;
         private byte[] salt;
         private byte[] hash;
+        private String hashParams;
 
         public PatientGetter(String username, String password) {
             this.username = username;
@@ -80,34 +78,46 @@ public class Patient {
         }
 
         public Patient get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
+            StoredAccount account = Repositories.patients().find(this.username);
+            if (account == null) {
+                return null;
+            }
+            byte[] salt = account.getSalt();
+            // we need to call Util.trim() to get rid of the paddings,
+            // try to remove the use of Util.trim() and you'll see :)
+            byte[] hash = Util.trim(account.getHash());
+            String storedParams = account.getHashParams();
+
+            // check if the password matches
+            HashParams params = HashParams.decode(storedParams);
+            if (!PasswordHasher.verify(password, salt, hash, params)) {
+                return null;
+            }
+            this.salt = salt;
+            this.hash = hash;
+            this.hashParams = params.encode();
+            // the password is known right now, so this is the moment to rehash with the current parameters
+            if (!params.equals(PasswordHasher.current())) {
+                upgradeHash(storedParams);
+            }
+            return new Patient(this);
+        }
+
+        private void upgradeHash(String storedParams) {
+            byte[] newSalt = PasswordHasher.newSalt();
+            byte[] newHash = PasswordHasher.hash(password, newSalt, PasswordHasher.current());
 
-            String getPatient = "SELECT Salt, Hash FROM Patients WHERE Username = ?";
+            StoredAccount upgraded = new StoredAccount(this.username, newSalt, newHash, PasswordHasher.current().encode());
             try {
-                PreparedStatement statement = con.prepareStatement(getPatient);
-                statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    // we need to call Util.trim() to get rid of the paddings,
-                    // try to remove the use of Util.trim() and you'll see :)
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Patient(this);
-                    }
+                // only replace the hash we verified, in case a concurrent login upgraded it already
+                if (Repositories.patients().replaceHash(upgraded, storedParams)) {
+                    this.salt = newSalt;
+                    this.hash = newHash;
+                    this.hashParams = upgraded.getHashParams();
                 }
-                return null;
             } catch (SQLException e) {
-                throw new SQLException();
-            } finally {
-                cm.closeConnection();
+                // the old hash still works, the upgrade will be retried on the next login
+                e.printStackTrace();
             }
         }
     }
@@ -0,0 +1,176 @@
+package scheduler.model;
+
+import scheduler.repository.Repositories;
+import scheduler.util.Util;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group commit for reserve, enabled with the {@code ReservationCoalescer=true} setting.
+ *
+ * Every booking takes its dose from the {@link DoseLedger} and its caregiver from the {@link AvailabilityIndex}
+ * in memory, then waits here while one committer thread writes it together with every other booking that
+ * arrived meanwhile: the thread takes what is queued, keeps collecting for up to
+ * {@code ReservationCoalescerWindowMicros} microseconds (200) or until it has
+ * {@code ReservationCoalescerMaxBatch} bookings (64), and books all of them with
+ * {@code AppointmentRepository.bookAll}, which with JDBC is one transaction of batched statements. While a
+ * group commits the next one queues up, so under contention a commit carries more bookings rather than
+ * the bookings waiting for more commits.
+ *
+ * Every booking gets its own answer: booked, or not because another process claimed its caregiver's
+ * availability first. If the commit fails, every booking in the group gets the SQLException. A group that
+ * needs more of a vaccine than the database has left is committed again one booking at a time, so that only
+ * the bookings of that vaccine are told there are not enough doses.
+ *
+ * The {@link ReservationJournal} takes precedence when both are enabled.
+ */
+public class ReservationCoalescer {
+
+    private static ReservationCoalescer instance = null;
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final long windowNanos;
+    private final int maxBatch;
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder bookings = new LongAdder();
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(Util.getSetting("ReservationCoalescer", "false"));
+    }
+
+    public static synchronized ReservationCoalescer getInstance() {
+        if (instance == null) {
+            ReservationCoalescer coalescer = new ReservationCoalescer(
+                    Util.getLongSetting("ReservationCoalescerWindowMicros", 200),
+                    Util.getIntSetting("ReservationCoalescerMaxBatch", 64));
+            coalescer.start();
+            instance = coalescer;
+        }
+        return instance;
+    }
+
+    private ReservationCoalescer(long windowMicros, int maxBatch) {
+        this.windowNanos = Math.max(0, windowMicros) * 1000;
+        this.maxBatch = Math.max(1, maxBatch);
+    }
+
+    /**
+     * Books an appointment whose dose and caregiver were already taken, with the next group, and returns
+     * whether it was booked; false means its caregiver's availability was already gone.
+     */
+    public boolean book(Appointment appointment) throws SQLException {
+        Request request = new Request(appointment);
+        queue.add(request);
+        try {
+            // not interruptible: the group may still commit the booking after the caller gave up on it
+            return request.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw new SQLException("Error occurred when committing a group of bookings", e.getCause());
+        }
+    }
+
+    public double getMeanGroupSize() {
+        long count = commits.sum();
+        return count == 0 ? 0 : (double) bookings.sum() / count;
+    }
+
+    private void start() {
+        ExecutorService committer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "reservation-committer");
+            t.setDaemon(true);
+            return t;
+        });
+        committer.execute(this::run);
+    }
+
+    private void run() {
+        List<Request> group = new ArrayList<>(maxBatch);
+        try {
+            while (true) {
+                group.add(queue.take());
+                queue.drainTo(group, maxBatch - group.size());
+                long deadline = System.nanoTime() + windowNanos;
+                while (group.size() < maxBatch) {
+                    long wait = deadline - System.nanoTime();
+                    Request next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                    queue.drainTo(group, maxBatch - group.size());
+                }
+                commit(group);
+                group.clear();
+            }
+        } catch (InterruptedException e) {
+            // only at exit, the thread is a daemon
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commit(List<Request> group) {
+        List<Appointment> appointments = new ArrayList<>(group.size());
+        for (Request request : group) {
+            appointments.add(request.appointment);
+        }
+        boolean[] booked;
+        try {
+            booked = Repositories.appointments().bookAll(appointments);
+        } catch (IllegalArgumentException e) {
+            if (group.size() > 1) {
+                for (Request request : group) {
+                    commit(List.of(request));
+                }
+                return;
+            }
+            group.get(0).result.completeExceptionally(e);
+            return;
+        } catch (SQLException | RuntimeException e) {
+            for (Request request : group) {
+                request.result.completeExceptionally(e);
+            }
+            return;
+        }
+        commits.increment();
+        bookings.add(group.size());
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).result.complete(booked[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ReservationCoalescer{" +
+                "commits=" + commits.sum() +
+                ", bookings=" + bookings.sum() +
+                ", meanGroupSize=" + String.format("%.1f", getMeanGroupSize()) +
+                ", windowMicros=" + windowNanos / 1000 +
+                ", maxBatch=" + maxBatch +
+                '}';
+    }
+
+    private static class Request {
+        private final Appointment appointment;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private Request(Appointment appointment) {
+            this.appointment = appointment;
+        }
+    }
+}
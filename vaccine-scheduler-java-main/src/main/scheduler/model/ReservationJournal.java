@@ -0,0 +1,403 @@
+package scheduler.model;
+
+import scheduler.repository.AppointmentChange;
+import scheduler.repository.Repositories;
+import scheduler.util.Util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal for reserve and cancel, enabled with the {@code ReservationJournal=true} setting.
+ *
+ * A booking is decided in memory, with the stock of the {@link DoseLedger} and the caregivers of the
+ * {@link AvailabilityIndex}, appended to the journal and acknowledged as soon as the entry is on disk, so that
+ * reserve waits for a local fsync instead of the database. Cancellations are journaled the same way. A
+ * background thread applies the journal to the Appointment, Availabilities and Vaccines tables every
+ * {@code ReservationJournalFlushMs} milliseconds (100), {@code ReservationJournalBatch} entries (500) per unit
+ * of work, and on startup whatever a crash left unapplied is applied before anything is loaded from those
+ * tables. Commands that read or change them directly apply the journal first, see {@link #applyPending()}.
+ *
+ * The journal is the file {@code ReservationJournalPath} (reservations.journal) of
+ * {@code ReservationJournalBytes} bytes (8 MB), mapped into memory. Its header holds the offset and sequence
+ * number of the first entry not yet applied. Every entry carries its length, a CRC32 and the next sequence
+ * number, so replay stops at a torn write as well as at an entry left over from before the journal last
+ * started over at the beginning, which it does whenever everything in it has been applied. Entries appended
+ * at the same time are forced to disk with one fsync.
+ *
+ * Like the ledger, the journal is meant for a single scheduler process (or the server mode) owning the
+ * appointments: the in-memory stock and availabilities decide the bookings, the tables only record them.
+ */
+public class ReservationJournal {
+
+    private static final int MAGIC = 0x524a4e31;
+    // magic, then the offset and the sequence number of the first entry not yet applied
+    private static final int HEADER_BYTES = 32;
+    private static final int APPLIED_OFFSET_AT = 8;
+    private static final int APPLIED_SEQUENCE_AT = 16;
+    // payload length, CRC32 of the sequence number and the payload, sequence number
+    private static final int ENTRY_HEADER_BYTES = 16;
+    // entries of kinds 1 and 2, from before time slots, are read as slot 0
+    private static final byte BOOKED = 1;
+    private static final byte CANCELLED = 2;
+    // the same, with the slot after the day
+    private static final byte BOOKED_AT = 3;
+    private static final byte CANCELLED_AT = 4;
+
+    private static ReservationJournal instance = null;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int batchSize;
+    private final ScheduledExecutorService flusher;
+    // every appointment cancelled since startup; IDs are never handed out twice, so this is all it takes to
+    // turn away a second cancellation of one that is still in the table
+    private final Set<Integer> cancelled = ConcurrentHashMap.newKeySet();
+    private final int replayed;
+    // bookings that could not be written because their slot was taken meanwhile
+    private final AtomicInteger dropped = new AtomicInteger();
+
+    // the lock order is applyLock, then syncLock, then tailLock. Locks rather than synchronized, as they are
+    // held across fsyncs and database writes, which would otherwise pin the carriers of virtual threads
+    private final ReentrantLock applyLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final ReentrantLock tailLock = new ReentrantLock();
+    // the first entry not yet applied, guarded by applyLock
+    private int applied;
+    private long appliedSequence;
+    // the end of the entries forced to disk and the sequence number after them, guarded by syncLock
+    private int synced;
+    private long syncedSequence;
+    // the end of the entries written and the sequence number of the next one, guarded by tailLock
+    private int tail;
+    private long nextSequence;
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(Util.getSetting("ReservationJournal", "false"));
+    }
+
+    public static synchronized ReservationJournal getInstance() throws SQLException {
+        if (instance == null) {
+            Path path = Paths.get(Util.getSetting("ReservationJournalPath", "reservations.journal"));
+            ReservationJournal journal;
+            try {
+                journal = new ReservationJournal(path, Util.getIntSetting("ReservationJournalBytes", 8 << 20));
+            } catch (IOException e) {
+                throw new SQLException("Could not open the reservation journal " + path, e);
+            }
+            // whatever a crash left behind, before anyone loads the tables
+            journal.apply();
+            journal.start(Util.getLongSetting("ReservationJournalFlushMs", 100));
+            instance = journal;
+        }
+        return instance;
+    }
+
+    // applies whatever is still in the journal, for commands that read or change its tables directly
+    public static void applyPending() throws SQLException {
+        if (isEnabled()) {
+            getInstance().apply();
+        }
+    }
+
+    private ReservationJournal(Path path, int capacity) throws IOException {
+        this.path = path;
+        this.batchSize = Math.max(1, Util.getIntSetting("ReservationJournalBatch", 500));
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // a journal written with a larger size keeps it, so that none of its entries are cut off
+            long size = Math.max(channel.size(), Math.max(capacity, 1 << 16));
+            // the mapping stays valid after the channel is closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "reservation-journal-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+
+        if (buffer.getInt(0) != MAGIC) {
+            if (buffer.getInt(0) != 0 || buffer.getLong(APPLIED_OFFSET_AT) != 0) {
+                throw new IOException(path + " is not a reservation journal");
+            }
+            buffer.putInt(0, MAGIC);
+            markApplied(HEADER_BYTES, 1);
+        }
+        applied = (int) buffer.getLong(APPLIED_OFFSET_AT);
+        appliedSequence = buffer.getLong(APPLIED_SEQUENCE_AT);
+        if (applied < HEADER_BYTES || applied > buffer.capacity()) {
+            throw new IOException(path + " has a damaged header");
+        }
+        // everything after the applied entries that is intact and in sequence is still to be applied
+        int at = applied;
+        long sequence = appliedSequence;
+        while (isEntry(at, sequence)) {
+            at += ENTRY_HEADER_BYTES + buffer.getInt(at);
+            sequence++;
+        }
+        tail = synced = at;
+        nextSequence = syncedSequence = sequence;
+        replayed = (int) (sequence - appliedSequence);
+    }
+
+    // appends a booking and returns once it is on disk
+    public void booked(Appointment appointment) throws SQLException {
+        append(BOOKED_AT, appointment);
+    }
+
+    /**
+     * Appends a cancellation and returns once it is on disk, or returns false without appending anything if
+     * the appointment was already cancelled.
+     */
+    public boolean cancelled(Appointment appointment) throws SQLException {
+        if (!cancelled.add(appointment.getId())) {
+            return false;
+        }
+        boolean appended = false;
+        try {
+            append(CANCELLED_AT, appointment);
+            appended = true;
+            return true;
+        } finally {
+            if (!appended) {
+                cancelled.remove(appointment.getId());
+            }
+        }
+    }
+
+    /**
+     * Writes the entries appended so far to the tables, {@code ReservationJournalBatch} per unit of work,
+     * moving the header past each batch once it is written. An entry is never lost: if a batch fails it is
+     * tried again by the next call, and if the process dies before the header moved, replay writes it again,
+     * which {@code AppointmentRepository.applyAll} turns into nothing. A booking whose slot another process
+     * took in the meantime cannot be written; it is dropped and logged.
+     */
+    public void apply() throws SQLException {
+        applyLock.lock();
+        try {
+            int end = sync(Long.MAX_VALUE);
+            List<AppointmentChange> batch = new ArrayList<>();
+            int at = applied;
+            long sequence = appliedSequence;
+            while (at < end) {
+                batch.add(read(at + ENTRY_HEADER_BYTES));
+                at += ENTRY_HEADER_BYTES + buffer.getInt(at);
+                sequence++;
+                if (batch.size() == batchSize || at == end) {
+                    for (Appointment appointment : Repositories.appointments().applyAll(batch)) {
+                        dropped.incrementAndGet();
+                        System.out.println("Appointment " + appointment.getId() + " of " + appointment.getPatientName()
+                                + " was not written: " + appointment.getCaregiverName() + " is no longer free on "
+                                + appointment.getTime() + " in slot " + appointment.getSlot() + ".");
+                    }
+                    markApplied(at, sequence);
+                    batch.clear();
+                }
+            }
+            // once everything was applied the journal starts over, unless someone appended meanwhile
+            syncLock.lock();
+            tailLock.lock();
+            try {
+                if (applied == tail && applied > HEADER_BYTES) {
+                    markApplied(HEADER_BYTES, nextSequence);
+                    synced = tail = HEADER_BYTES;
+                }
+            } finally {
+                tailLock.unlock();
+                syncLock.unlock();
+            }
+        } finally {
+            applyLock.unlock();
+        }
+    }
+
+    public int getPendingBytes() {
+        tailLock.lock();
+        try {
+            return tail - HEADER_BYTES;
+        } finally {
+            tailLock.unlock();
+        }
+    }
+
+    private void append(byte kind, Appointment appointment) throws SQLException {
+        byte[] caregiver = appointment.getCaregiverName().getBytes(StandardCharsets.UTF_8);
+        byte[] patient = appointment.getPatientName().getBytes(StandardCharsets.UTF_8);
+        byte[] vaccine = appointment.getVaccineName().getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 4 + 8 + 2 + 3 * 2 + caregiver.length + patient.length + vaccine.length;
+        int size = ENTRY_HEADER_BYTES + length;
+        if (HEADER_BYTES + size > buffer.capacity()) {
+            throw new SQLException("The entry does not fit into the reservation journal " + path);
+        }
+        long sequence;
+        while (true) {
+            tailLock.lock();
+            try {
+                if (tail + size <= buffer.capacity()) {
+                    int at = tail;
+                    sequence = nextSequence++;
+                    int field = at + ENTRY_HEADER_BYTES;
+                    buffer.put(field, kind);
+                    buffer.putInt(field + 1, appointment.getId());
+                    buffer.putLong(field + 5, appointment.getTime().toLocalDate().toEpochDay());
+                    buffer.putShort(field + 13, (short) appointment.getSlot());
+                    field = putString(field + 15, caregiver);
+                    field = putString(field, patient);
+                    putString(field, vaccine);
+                    buffer.putInt(at, length);
+                    buffer.putLong(at + 8, sequence);
+                    buffer.putInt(at + 4, checksum(at, length));
+                    tail += size;
+                    break;
+                }
+            } finally {
+                tailLock.unlock();
+            }
+            // full: once everything in it is applied, the journal starts over at the beginning
+            apply();
+        }
+        sync(sequence);
+    }
+
+    /**
+     * Forces the entries up to the given sequence number to disk, along with any appended by other threads
+     * in the meantime, which then find theirs already done. Returns the end of the entries on disk.
+     */
+    private int sync(long sequence) throws SQLException {
+        syncLock.lock();
+        try {
+            if (sequence < syncedSequence) {
+                return synced;
+            }
+            int end;
+            long next;
+            tailLock.lock();
+            try {
+                end = tail;
+                next = nextSequence;
+            } finally {
+                tailLock.unlock();
+            }
+            if (end > synced) {
+                try {
+                    buffer.force(synced, end - synced);
+                } catch (UncheckedIOException e) {
+                    throw new SQLException("Could not write the reservation journal " + path, e.getCause());
+                }
+            }
+            synced = end;
+            syncedSequence = next;
+            return synced;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // caller holds applyLock, or is the constructor
+    private void markApplied(int offset, long sequence) {
+        buffer.putLong(APPLIED_OFFSET_AT, offset);
+        buffer.putLong(APPLIED_SEQUENCE_AT, sequence);
+        buffer.force(0, HEADER_BYTES);
+        applied = offset;
+        appliedSequence = sequence;
+    }
+
+    private boolean isEntry(int at, long sequence) {
+        if (at + ENTRY_HEADER_BYTES > buffer.capacity()) {
+            return false;
+        }
+        int length = buffer.getInt(at);
+        if (length <= 0 || length > buffer.capacity() - at - ENTRY_HEADER_BYTES) {
+            return false;
+        }
+        return buffer.getLong(at + 8) == sequence && buffer.getInt(at + 4) == checksum(at, length);
+    }
+
+    // over the sequence number and the payload
+    private int checksum(int at, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(at + 8, 8 + length));
+        return (int) crc.getValue();
+    }
+
+    private AppointmentChange read(int at) {
+        byte kind = buffer.get(at);
+        int id = buffer.getInt(at + 1);
+        LocalDate day = LocalDate.ofEpochDay(buffer.getLong(at + 5));
+        int slot = 0;
+        int field = at + 13;
+        if (kind == BOOKED_AT || kind == CANCELLED_AT) {
+            slot = buffer.getShort(field);
+            field += 2;
+        }
+        String caregiver = getString(field);
+        field += 2 + buffer.getShort(field);
+        String patient = getString(field);
+        field += 2 + buffer.getShort(field);
+        String vaccine = getString(field);
+        return new AppointmentChange(kind == CANCELLED || kind == CANCELLED_AT,
+                new Appointment(id, Date.valueOf(day), slot, caregiver, patient, vaccine));
+    }
+
+    // returns the offset after the string
+    private int putString(int at, byte[] value) {
+        buffer.putShort(at, (short) value.length);
+        buffer.put(at + 2, value);
+        return at + 2 + value.length;
+    }
+
+    private String getString(int at) {
+        byte[] value = new byte[buffer.getShort(at)];
+        buffer.get(at + 2, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private void start(long flushMillis) {
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                apply();
+            } catch (SQLException e) {
+                System.out.println("Error occurred when applying the reservation journal.");
+                e.printStackTrace();
+            }
+        }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            flusher.shutdown();
+            try {
+                apply();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }, "reservation-journal-shutdown"));
+    }
+
+    @Override
+    public String toString() {
+        return "ReservationJournal{" +
+                "path=" + path +
+                ", capacity=" + buffer.capacity() +
+                ", replayed=" + replayed +
+                ", dropped=" + dropped.get() +
+                ", pendingBytes=" + getPendingBytes() +
+                '}';
+    }
+}
@@ -0,0 +1,123 @@
+package scheduler.model;
+
+import scheduler.util.Util;
+
+/**
+ * The time slots a day is divided into for availabilities and appointments, and the bitmaps that record
+ * them: bit i of a long stands for slot i, so a caregiver-day is one long in memory and one bigint in the
+ * Availabilities table.
+ *
+ * Slots are {@code SlotMinutes} minutes long (1440, a whole day) and the first one starts at
+ * {@code SlotDayStart} (00:00); a day has as many as fit before midnight, up to 64. The settings belong to the
+ * data: the bitmaps and Appointment.Slot are numbered by them, so they must not change while the tables have
+ * availabilities or appointments in them.
+ */
+public final class TimeSlots {
+
+    public static final int MINUTES;
+    // minute of the day the first slot starts at
+    public static final int DAY_START;
+    public static final int PER_DAY;
+    // every slot of the day
+    public static final long ALL;
+
+    static {
+        MINUTES = Util.getIntSetting("SlotMinutes", 1440);
+        DAY_START = parseMinute(Util.getSetting("SlotDayStart", "00:00"));
+        if (MINUTES <= 0 || DAY_START < 0 || DAY_START + MINUTES > 24 * 60) {
+            throw new IllegalStateException("SlotMinutes and SlotDayStart leave no slot in a day: "
+                    + MINUTES + ", " + DAY_START);
+        }
+        PER_DAY = Math.min(64, (24 * 60 - DAY_START) / MINUTES);
+        ALL = PER_DAY == 64 ? -1L : (1L << PER_DAY) - 1;
+    }
+
+    private TimeSlots() {
+    }
+
+    // whether a day is more than one slot, i.e. times are worth showing
+    public static boolean isEnabled() {
+        return PER_DAY > 1;
+    }
+
+    public static long bit(int slot) {
+        return 1L << slot;
+    }
+
+    // the first free slot of a bitmap, or -1 if there is none
+    public static int first(long slots) {
+        return slots == 0 ? -1 : Long.numberOfTrailingZeros(slots);
+    }
+
+    /**
+     * The slot starting at a time like 09:15.
+     *
+     * @throws IllegalArgumentException if the time is not the start of a slot
+     */
+    public static int parse(String time) {
+        int minute = parseMinute(time) - DAY_START;
+        if (minute < 0 || minute % MINUTES != 0 || minute / MINUTES >= PER_DAY) {
+            throw new IllegalArgumentException("Not the start of a time slot: " + time);
+        }
+        return minute / MINUTES;
+    }
+
+    /**
+     * The slots covering a range like 09:00-12:00, whose end is the end of its last slot.
+     *
+     * @throws IllegalArgumentException if the range is malformed, empty or not on slot boundaries
+     */
+    public static long parseRange(String range) {
+        int dash = range.indexOf('-');
+        if (dash < 0) {
+            throw new IllegalArgumentException("Not a time range: " + range);
+        }
+        int from = parse(range.substring(0, dash));
+        int endMinute = parseMinute(range.substring(dash + 1)) - DAY_START;
+        if (endMinute % MINUTES != 0 || endMinute / MINUTES > PER_DAY || endMinute / MINUTES <= from) {
+            throw new IllegalArgumentException("Not a range of time slots: " + range);
+        }
+        int to = endMinute / MINUTES;
+        return (to == 64 ? -1L : (1L << to) - 1) & ~((1L << from) - 1);
+    }
+
+    // the start of a slot, like 09:15
+    public static String format(int slot) {
+        return formatMinute(DAY_START + slot * MINUTES);
+    }
+
+    // the free slots of a bitmap as ranges, like "09:00-10:30 14:00-15:00"
+    public static String describe(long slots) {
+        StringBuilder ranges = new StringBuilder();
+        slots &= ALL;
+        while (slots != 0) {
+            int from = Long.numberOfTrailingZeros(slots);
+            int to = Long.numberOfTrailingZeros(~(slots >>> from)) + from;
+            if (ranges.length() > 0) {
+                ranges.append(' ');
+            }
+            ranges.append(format(from)).append('-').append(formatMinute(DAY_START + to * MINUTES));
+            slots &= to == 64 ? 0 : -1L << to;
+        }
+        return ranges.toString();
+    }
+
+    private static int parseMinute(String time) {
+        int colon = time.indexOf(':');
+        try {
+            int hour = Integer.parseInt(time.substring(0, colon < 0 ? 0 : colon));
+            int minute = Integer.parseInt(time.substring(colon + 1));
+            if (colon == 2 && time.length() == 5 && hour >= 0 && minute >= 0 && minute < 60
+                    && hour * 60 + minute <= 24 * 60) {
+                return hour * 60 + minute;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Not a time in the form 'hh:mm': " + time);
+    }
+
+    private static String formatMinute(int minute) {
+        return String.format("%02d:%02d", minute / 60, minute % 60);
+    }
+}
@@ -0,0 +1,171 @@
+package scheduler.model;
+
+import scheduler.repository.AccountRepository;
+import scheduler.repository.Repositories;
+import scheduler.repository.StoredAccount;
+import scheduler.util.PasswordHasher;
+import scheduler.util.Util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Creates patient and caregiver accounts in bulk from CSV lines of the form {@code role,username,password},
+ * where role is {@code patient} or {@code caregiver}. A first line starting with {@code role} is a header.
+ *
+ * The input is streamed in chunks of {@code ImportBatchSize} lines. The passwords of a chunk are hashed in
+ * parallel on the {@link PasswordHasher} pool while the previous chunk is written, and each chunk is inserted
+ * with one {@link AccountRepository#insertAll} per role (one JDBC batch in one transaction). Names the
+ * {@link UsernameFilter} knows are taken are rejected before hashing; there is no existence query, and the
+ * names the repository still reports as taken are rejected after the fact. Rejected lines go to the reject
+ * writer as {@code line,role,username,reason} (passwords are never written out).
+ */
+public class UserImporter {
+
+    private final int batchSize;
+    private final PrintWriter rejects;
+    private int imported = 0;
+    private int rejected = 0;
+
+    public UserImporter(PrintWriter rejects) {
+        this.batchSize = Math.max(1, Util.getIntSetting("ImportBatchSize", 1000));
+        this.rejects = rejects;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public void importUsers(BufferedReader reader) throws IOException, SQLException {
+        List<Row> pending = null;
+        int lineNumber = 0;
+        String line;
+        List<Row> chunk = new ArrayList<>();
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || (lineNumber == 1 && line.trim().toLowerCase().startsWith("role"))) {
+                continue;
+            }
+            Row row = Row.parse(lineNumber, line.trim());
+            if (row == null) {
+                reject(lineNumber, line.split(",", 3)[0], "", "malformed line");
+                continue;
+            }
+            if (filterFor(row).contains(row.username)) {
+                reject(lineNumber, role(row), row.username, "username taken");
+                continue;
+            }
+            chunk.add(row);
+            if (chunk.size() == batchSize) {
+                // start hashing this chunk before writing the previous one
+                submitHashes(chunk);
+                if (pending != null) {
+                    insert(pending);
+                }
+                pending = chunk;
+                chunk = new ArrayList<>();
+            }
+        }
+        submitHashes(chunk);
+        if (pending != null) {
+            insert(pending);
+        }
+        insert(chunk);
+        rejects.flush();
+    }
+
+    private void submitHashes(List<Row> rows) {
+        for (Row row : rows) {
+            row.salt = PasswordHasher.newSalt();
+            row.hash = PasswordHasher.submit(row.password, row.salt, PasswordHasher.current());
+        }
+    }
+
+    private void insert(List<Row> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        insert(rows, false);
+        insert(rows, true);
+    }
+
+    private void insert(List<Row> rows, boolean caregivers) throws SQLException {
+        String hashParams = PasswordHasher.current().encode();
+        List<StoredAccount> accounts = new ArrayList<>();
+        Map<String, Row> byName = new HashMap<>();
+        for (Row row : rows) {
+            if (row.caregiver == caregivers) {
+                accounts.add(new StoredAccount(row.username, row.salt, PasswordHasher.await(row.hash), hashParams));
+                byName.put(row.username, row);
+            }
+        }
+        if (accounts.isEmpty()) {
+            return;
+        }
+        AccountRepository repository = caregivers ? Repositories.caregivers() : Repositories.patients();
+        List<String> taken = repository.insertAll(accounts);
+        for (String username : taken) {
+            Row row = byName.get(username);
+            reject(row.lineNumber, role(row), username, "username taken");
+        }
+        imported += accounts.size() - taken.size();
+        UsernameFilter filter = caregivers ? UsernameFilter.forCaregivers() : UsernameFilter.forPatients();
+        for (StoredAccount account : accounts) {
+            filter.add(account.getUsername());
+        }
+    }
+
+    private static UsernameFilter filterFor(Row row) throws SQLException {
+        return row.caregiver ? UsernameFilter.forCaregivers() : UsernameFilter.forPatients();
+    }
+
+    private static String role(Row row) {
+        return row.caregiver ? "caregiver" : "patient";
+    }
+
+    private void reject(int lineNumber, String role, String username, String reason) {
+        rejected++;
+        rejects.println(lineNumber + "," + role + "," + username + "," + reason);
+    }
+
+    private static class Row {
+        private final int lineNumber;
+        private final boolean caregiver;
+        private final String username;
+        private final String password;
+        private byte[] salt;
+        private Future<byte[]> hash;
+
+        private Row(int lineNumber, boolean caregiver, String username, String password) {
+            this.lineNumber = lineNumber;
+            this.caregiver = caregiver;
+            this.username = username;
+            this.password = password;
+        }
+
+        // returns null for lines that are not role,username,password
+        private static Row parse(int lineNumber, String line) {
+            // the password is last, so it may contain commas
+            String[] fields = line.split(",", 3);
+            if (fields.length != 3 || fields[1].isBlank() || fields[2].isEmpty()) {
+                return null;
+            }
+            String role = fields[0].trim().toLowerCase();
+            if (!role.equals("patient") && !role.equals("caregiver")) {
+                return null;
+            }
+            return new Row(lineNumber, role.equals("caregiver"), fields[1].trim(), fields[2]);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package scheduler.model;
+
+import scheduler.repository.AccountRepository;
+import scheduler.repository.Repositories;
+import scheduler.util.Util;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The usernames of one account table, held in memory so that signup can turn away a taken name without a
+ * query and without hashing a password first.
+ *
+ * A Bloom filter (about 10 bits and 7 probes per name, under 1% false positives) answers most lookups for
+ * free names on its own. Names it may contain are looked up in a compact sorted set: every name's UTF-8 bytes
+ * back to back in one array plus an array of offsets, searched by bisection, which costs the name itself plus
+ * four bytes. Names added since startup go to a small skip list that is merged into the sorted set once it
+ * grows past an eighth of it; the Bloom filter is rebuilt twice as large whenever it fills up.
+ *
+ * The table stays the arbiter: a name that is not here may still be taken (by another process, or under a
+ * case-insensitive collation), which the insert reports as a duplicate key. Lookups are lock-free; adds are
+ * serialized.
+ */
+public class UsernameFilter {
+
+    private static final int BITS_PER_NAME = 10;
+    private static final int PROBES = 7;
+    private static final int MIN_MERGE = 1024;
+
+    private static UsernameFilter patients = null;
+    private static UsernameFilter caregivers = null;
+
+    private final String table;
+    private volatile Bloom bloom;
+    private volatile SortedNames names;
+    // names added since the last merge, looked up before the sorted set
+    private final ConcurrentSkipListSet<String> recent = new ConcurrentSkipListSet<>();
+
+    public static synchronized UsernameFilter forPatients() throws SQLException {
+        if (patients == null) {
+            patients = load("Patients", Repositories.patients());
+        }
+        return patients;
+    }
+
+    public static synchronized UsernameFilter forCaregivers() throws SQLException {
+        if (caregivers == null) {
+            caregivers = load("Caregivers", Repositories.caregivers());
+        }
+        return caregivers;
+    }
+
+    private UsernameFilter(String table, List<String> usernames) {
+        this.table = table;
+        this.names = SortedNames.of(usernames, SortedNames.EMPTY);
+        this.bloom = Bloom.of(this.names, Util.getIntSetting("UsernameFilterCapacity", 1 << 16));
+    }
+
+    // true if the username is known to be taken; false means it is most likely free
+    public boolean contains(String username) {
+        if (!bloom.mightContain(username)) {
+            return false;
+        }
+        // recent before names: a merge publishes the new names before it empties recent
+        return recent.contains(username) || names.contains(username);
+    }
+
+    // records a username that was just inserted, or that the table reported as taken
+    public synchronized void add(String username) {
+        if (recent.contains(username) || names.contains(username)) {
+            return;
+        }
+        recent.add(username);
+        bloom.put(username);
+        if (recent.size() > Math.max(MIN_MERGE, names.size() / 8)) {
+            merge();
+        }
+    }
+
+    public int size() {
+        return names.size() + recent.size();
+    }
+
+    // the heap used by the filter, not counting the few names waiting in the skip list
+    public long getFootprintBytes() {
+        return bloom.getFootprintBytes() + names.getFootprintBytes();
+    }
+
+    // caller holds the lock
+    private void merge() {
+        List<String> added = new ArrayList<>(recent);
+        SortedNames merged = SortedNames.of(added, names);
+        if (merged.size() > bloom.capacity) {
+            bloom = Bloom.of(merged, bloom.capacity * 2);
+        }
+        names = merged;
+        recent.removeAll(added);
+    }
+
+    private static UsernameFilter load(String table, AccountRepository accounts) throws SQLException {
+        return new UsernameFilter(table, accounts.usernames());
+    }
+
+    @Override
+    public String toString() {
+        return "UsernameFilter{" +
+                "table=" + table +
+                ", usernames=" + size() +
+                ", capacity=" + bloom.capacity +
+                ", footprintBytes=" + getFootprintBytes() +
+                '}';
+    }
+
+    private static class Bloom {
+        private final int capacity;
+        private final long bitCount;
+        private final AtomicLongArray words;
+
+        private Bloom(int capacity) {
+            this.capacity = capacity;
+            this.bitCount = (long) capacity * BITS_PER_NAME;
+            this.words = new AtomicLongArray((int) ((bitCount + 63) / 64));
+        }
+
+        private static Bloom of(SortedNames names, int capacity) {
+            while (capacity < names.size()) {
+                capacity *= 2;
+            }
+            Bloom bloom = new Bloom(Math.max(1, capacity));
+            for (int i = 0; i < names.size(); i++) {
+                bloom.put(names.get(i));
+            }
+            return bloom;
+        }
+
+        private void put(String username) {
+            long hash = hash(username);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < PROBES; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current;
+                do {
+                    current = words.get(word);
+                } while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask));
+            }
+        }
+
+        private boolean mightContain(String username) {
+            long hash = hash(username);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < PROBES; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long getFootprintBytes() {
+            return 16 + words.length() * 8L + 32;
+        }
+
+        // 64-bit FNV-1a over the characters, with a final mix so both halves are usable as hashes
+        private static long hash(String username) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < username.length(); i++) {
+                h ^= username.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    // an immutable sorted set of names, stored as UTF-8 bytes back to back
+    private static class SortedNames {
+        private static final SortedNames EMPTY = new SortedNames(new byte[0], new int[]{0});
+
+        private final byte[] data;
+        // name i is data[offsets[i], offsets[i + 1])
+        private final int[] offsets;
+
+        private SortedNames(byte[] data, int[] offsets) {
+            this.data = data;
+            this.offsets = offsets;
+        }
+
+        private static SortedNames of(List<String> added, SortedNames existing) {
+            byte[][] all = new byte[existing.size() + added.size()][];
+            for (int i = 0; i < existing.size(); i++) {
+                all[i] = Arrays.copyOfRange(existing.data, existing.offsets[i], existing.offsets[i + 1]);
+            }
+            for (int i = 0; i < added.size(); i++) {
+                all[existing.size() + i] = added.get(i).getBytes(StandardCharsets.UTF_8);
+            }
+            Arrays.sort(all, Arrays::compareUnsigned);
+
+            int count = 0;
+            int length = 0;
+            for (int i = 0; i < all.length; i++) {
+                if (i == 0 || !Arrays.equals(all[i], all[i - 1])) {
+                    all[count++] = all[i];
+                    length += all[i].length;
+                }
+            }
+            byte[] data = new byte[length];
+            int[] offsets = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                System.arraycopy(all[i], 0, data, offsets[i], all[i].length);
+                offsets[i + 1] = offsets[i] + all[i].length;
+            }
+            return new SortedNames(data, offsets);
+        }
+
+        private int size() {
+            return offsets.length - 1;
+        }
+
+        private String get(int i) {
+            return new String(data, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+        }
+
+        private boolean contains(String username) {
+            byte[] key = username.getBytes(StandardCharsets.UTF_8);
+            int low = 0;
+            int high = size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = Arrays.compareUnsigned(data, offsets[mid], offsets[mid + 1], key, 0, key.length);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private long getFootprintBytes() {
+            return 16 + data.length + 16 + offsets.length * 4L;
+        }
+    }
+}
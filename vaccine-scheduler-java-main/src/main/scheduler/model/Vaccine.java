@@ -1,10 +1,7 @@
 package scheduler.model;
 
-import scheduler.db.ConnectionManager;
+import scheduler.repository.Repositories;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 public class Vaccine {
@@ -31,19 +28,11 @@ public class Vaccine {
     }
 
     public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addDoses = "INSERT INTO vaccines VALUES (?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addDoses);
-            statement.setString(1, this.vaccineName);
-            statement.setInt(2, this.availableDoses);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
+        Repositories.vaccines().insert(this.vaccineName, this.availableDoses);
+        if (DoseLedger.isEnabled()) {
+            DoseLedger.getInstance().register(this.vaccineName, this.availableDoses);
+        } else {
+            VaccineCatalog.getInstance().put(this.vaccineName, this.availableDoses);
         }
     }
 
@@ -52,44 +41,40 @@ public class Vaccine {
         if (num <= 0) {
             throw new IllegalArgumentException("Argument cannot be negative!");
         }
-        this.availableDoses += num;
-
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String removeAvailability  = "UPDATE vaccines SET Doses = ? WHERE name = ?;";
-        try {
-            PreparedStatement statement = con.prepareStatement(removeAvailability);
-            statement.setInt(1, this.availableDoses);
-            statement.setString(2, this.vaccineName);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
+        if (DoseLedger.isEnabled()) {
+            DoseLedger ledger = DoseLedger.getInstance();
+            ledger.add(this.vaccineName, num);
+            this.availableDoses = ledger.getDoses(this.vaccineName);
+            return;
         }
+
+        // written as a delta so that concurrent sessions don't overwrite each other
+        Repositories.vaccines().addDoses(this.vaccineName, num);
+        int doses = VaccineCatalog.getInstance().apply(this.vaccineName, num);
+        this.availableDoses = doses >= 0 ? doses : this.availableDoses + num;
     }
 
     // Decrement the available doses
     public void decreaseAvailableDoses(int num) throws SQLException {
-        if (this.availableDoses - num < 0) {
-            throw new IllegalArgumentException("Not enough available doses!");
+        if (DoseLedger.isEnabled()) {
+            DoseLedger ledger = DoseLedger.getInstance();
+            if (!ledger.tryTake(this.vaccineName, num)) {
+                throw new IllegalArgumentException("Not enough available doses!");
+            }
+            this.availableDoses = ledger.getDoses(this.vaccineName);
+            return;
         }
-        this.availableDoses -= num;
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String removeAvailability  = "UPDATE vaccines SET Doses = ? WHERE name = ?;";
-        try {
-            PreparedStatement statement = con.prepareStatement(removeAvailability);
-            statement.setInt(1, this.availableDoses);
-            statement.setString(2, this.vaccineName);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
+
+        // conditional, so the stock never goes negative even when other sessions took doses meanwhile
+        boolean taken = Repositories.vaccines().takeDoses(this.vaccineName, num);
+        VaccineCatalog catalog = VaccineCatalog.getInstance();
+        if (!taken) {
+            // the cached doses said otherwise, so they are stale
+            catalog.invalidate(this.vaccineName);
+            throw new IllegalArgumentException("Not enough available doses!");
         }
+        int doses = catalog.apply(this.vaccineName, -num);
+        this.availableDoses = doses >= 0 ? doses : this.availableDoses - num;
     }
 
     @Override
@@ -123,24 +108,14 @@ public class Vaccine {
         }
 
         public Vaccine get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-            String getVaccine = "SELECT Name, Doses FROM Vaccines WHERE Name = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(getVaccine);
-                statement.setString(1, this.vaccineName);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    this.availableDoses = resultSet.getInt("Doses");
-                    return new Vaccine(this);
-                }
-                return null;
-            } catch (SQLException e) {
-                throw new SQLException();
-            } finally {
-                cm.closeConnection();
+            if (DoseLedger.isEnabled()) {
+                // the ledger holds every vaccine and is ahead of the table until its next flush
+                this.availableDoses = DoseLedger.getInstance().getDoses(this.vaccineName);
+                return this.availableDoses < 0 ? null : new Vaccine(this);
             }
+
+            this.availableDoses = VaccineCatalog.getInstance().getDoses(this.vaccineName);
+            return this.availableDoses < 0 ? null : new Vaccine(this);
         }
     }
 }
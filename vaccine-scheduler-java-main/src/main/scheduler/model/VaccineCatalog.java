@@ -0,0 +1,220 @@
+package scheduler.model;
+
+import scheduler.metrics.Metrics;
+import scheduler.repository.Repositories;
+import scheduler.util.Util;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An in-process cache of the vaccine repository, used when the {@link DoseLedger} is off.
+ *
+ * Lookups are read-through: a miss loads the row and keeps it, and the full listing is loaded once and then
+ * served from memory for as long as nothing is evicted. Dose changes are write-through: the caller updates
+ * the table first and then applies the same change here. The cache holds at most {@code VaccineCacheSize}
+ * vaccines and evicts the least recently used one beyond that.
+ *
+ * Every entry carries the version stamp of the write that produced it, and every write to a name is stamped
+ * from the same clock. A load remembers the clock before it queries and only installs its rows if no write
+ * to that name happened meanwhile; otherwise the row it read may already be stale and it is not cached.
+ *
+ * Like the {@link AvailabilityIndex}, the cache only sees the writes made by this process. Its counters are
+ * the MBean {@code scheduler:type=VaccineCatalog} and part of the metrics dump.
+ */
+public class VaccineCatalog implements VaccineCatalogMBean {
+
+    private static VaccineCatalog instance = null;
+
+    private final int capacity;
+    // access ordered, so that the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry> entries;
+    // the stamp of the last write to every name ever written, kept across evictions
+    private final Map<String, Long> writes = new HashMap<>();
+    private long clock = 0;
+    // whether entries holds every row of the table
+    private boolean complete = false;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long staleLoads = 0;
+
+    public static synchronized VaccineCatalog getInstance() {
+        if (instance == null) {
+            instance = new VaccineCatalog(Math.max(1, Util.getIntSetting("VaccineCacheSize", 256)));
+            Metrics.register("VaccineCatalog", instance);
+        }
+        return instance;
+    }
+
+    private VaccineCatalog(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= VaccineCatalog.this.capacity) {
+                    return false;
+                }
+                evictions++;
+                complete = false;
+                return true;
+            }
+        };
+    }
+
+    // returns the current doses of a vaccine, or -1 if there is no such vaccine
+    public int getDoses(String vaccineName) throws SQLException {
+        long stamp;
+        synchronized (this) {
+            Entry entry = entries.get(vaccineName);
+            if (entry != null) {
+                hits++;
+                return entry.doses;
+            }
+            misses++;
+            stamp = clock;
+        }
+
+        int doses = Repositories.vaccines().findDoses(vaccineName);
+        if (doses >= 0) {
+            synchronized (this) {
+                install(vaccineName, doses, stamp);
+            }
+        }
+        return doses;
+    }
+
+    // every vaccine with its doses, ordered by name
+    public Map<String, Integer> getAllDoses() throws SQLException {
+        long stamp;
+        synchronized (this) {
+            if (complete) {
+                hits++;
+                return snapshot();
+            }
+            misses++;
+            stamp = clock;
+        }
+
+        Map<String, Integer> doses = Repositories.vaccines().findAll();
+        synchronized (this) {
+            boolean fresh = true;
+            for (Map.Entry<String, Integer> row : doses.entrySet()) {
+                fresh &= install(row.getKey(), row.getValue(), stamp);
+            }
+            // a vaccine inserted during the load may be missing from the rows, so only a clean load counts
+            complete = fresh && clock == stamp && doses.size() <= capacity;
+            return complete ? snapshot() : doses;
+        }
+    }
+
+    // records a vaccine whose row was just inserted with the given doses
+    public synchronized void put(String vaccineName, int doses) {
+        long version = stamp(vaccineName);
+        entries.put(vaccineName, new Entry(doses, version));
+    }
+
+    /**
+     * Applies a dose change that was just written to the table.
+     *
+     * @return the new doses, or -1 if the vaccine is not cached
+     */
+    public synchronized int apply(String vaccineName, int delta) {
+        long version = stamp(vaccineName);
+        Entry entry = entries.get(vaccineName);
+        if (entry == null) {
+            return -1;
+        }
+        entry = new Entry(entry.doses + delta, version);
+        entries.put(vaccineName, entry);
+        return entry.doses;
+    }
+
+    // drops a vaccine whose cached doses turned out to be wrong, so the next lookup reloads it
+    public synchronized void invalidate(String vaccineName) {
+        stamp(vaccineName);
+        if (entries.remove(vaccineName) != null) {
+            complete = false;
+        }
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    // loads that were not cached because a write overtook them
+    @Override
+    public synchronized long getStaleLoads() {
+        return staleLoads;
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    // caller holds the lock
+    private long stamp(String vaccineName) {
+        long version = ++clock;
+        writes.put(vaccineName, version);
+        return version;
+    }
+
+    // caller holds the lock; returns false if the row was overtaken by a write and was not installed
+    private boolean install(String vaccineName, int doses, long stamp) {
+        if (writes.getOrDefault(vaccineName, 0L) > stamp) {
+            staleLoads++;
+            return false;
+        }
+        Entry entry = entries.get(vaccineName);
+        if (entry == null || entry.version <= stamp) {
+            entries.put(vaccineName, new Entry(doses, stamp));
+        }
+        return true;
+    }
+
+    // caller holds the lock
+    private Map<String, Integer> snapshot() {
+        Map<String, Integer> doses = new TreeMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            doses.put(entry.getKey(), entry.getValue().doses);
+        }
+        return doses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "VaccineCatalog{" +
+                "size=" + entries.size() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", staleLoads=" + staleLoads +
+                '}';
+    }
+
+    private static class Entry {
+        private final int doses;
+        private final long version;
+
+        private Entry(int doses, long version) {
+            this.doses = doses;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package scheduler.model;
+
+/**
+ * The JMX view of the {@link VaccineCatalog}. The counters are totals since startup; hits and misses count
+ * lookups and listings alike.
+ */
+public interface VaccineCatalogMBean {
+
+    int getSize();
+
+    long getHits();
+
+    long getMisses();
+
+    long getEvictions();
+
+    long getStaleLoads();
+}
@@ -0,0 +1,33 @@
+package scheduler.repository;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Stores accounts keyed by username. A taken username is reported as an SQLException that
+ * {@link scheduler.db.ConnectionManager#isDuplicateKey} recognizes, whatever the backend.
+ */
+public interface AccountRepository {
+
+    void insert(StoredAccount account) throws SQLException;
+
+    /**
+     * Inserts many accounts, as one batch where the backend supports it.
+     *
+     * @return the usernames that were taken; every other account was inserted
+     */
+    List<String> insertAll(List<StoredAccount> accounts) throws SQLException;
+
+    // null if there is no such account
+    StoredAccount find(String username) throws SQLException;
+
+    /**
+     * Replaces the salt, hash and parameters of an account, but only if its stored parameters are still
+     * {@code expectedParams} (which may be null), so that a concurrent upgrade is not overwritten.
+     *
+     * @return whether the account was updated
+     */
+    boolean replaceHash(StoredAccount account, String expectedParams) throws SQLException;
+
+    List<String> usernames() throws SQLException;
+}
@@ -0,0 +1,26 @@
+package scheduler.repository;
+
+import scheduler.model.Appointment;
+
+/**
+ * A booking or a cancellation that was already decided elsewhere (by the reservation journal) and only has to
+ * be written, see {@link AppointmentRepository#applyAll}.
+ */
+public class AppointmentChange {
+    private final boolean cancellation;
+    private final Appointment appointment;
+
+    public AppointmentChange(boolean cancellation, Appointment appointment) {
+        this.cancellation = cancellation;
+        this.appointment = appointment;
+    }
+
+    // Getters
+    public boolean isCancellation() {
+        return cancellation;
+    }
+
+    public Appointment getAppointment() {
+        return appointment;
+    }
+}
@@ -0,0 +1,83 @@
+package scheduler.repository;
+
+import scheduler.model.Appointment;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public interface AppointmentRepository {
+
+    String NOT_ENOUGH_DOSES = "Not enough available doses!";
+    String UNKNOWN_VACCINE = "Please enter a valid vaccine name";
+    String NO_CAREGIVER = "No Caregiver is available!";
+
+    /**
+     * Books an appointment as one unit of work: takes a dose (unless takeDose is false because the caller
+     * already took it), claims the first caregiver from the picker whose slot on that day is still free, and
+     * records the appointment in that slot. Nothing is changed if any step fails.
+     *
+     * @throws IllegalArgumentException with {@link #NOT_ENOUGH_DOSES}, {@link #UNKNOWN_VACCINE} or
+     *                                  {@link #NO_CAREGIVER} when the booking cannot be made
+     */
+    Appointment book(int id, LocalDate day, String patient, String vaccine, boolean takeDose, CaregiverPicker picker)
+            throws SQLException;
+
+    /**
+     * Books appointments whose doses and caregivers were already taken in memory, as one unit of work: claims
+     * every appointment's slot, records the appointments whose claim succeeded and takes their doses. Returns
+     * for every appointment whether it was booked; one whose slot was no longer free (claimed by another
+     * process) is not, and changes nothing.
+     *
+     * @throws IllegalArgumentException with {@link #NOT_ENOUGH_DOSES} when a vaccine has fewer doses left than
+     *                                  its appointments need, and then nothing is booked
+     */
+    boolean[] bookAll(List<Appointment> appointments) throws SQLException;
+
+    // null if there is no such appointment
+    Appointment find(int id) throws SQLException;
+
+    /**
+     * Cancels an appointment as one unit of work: deletes it, gives its dose back and frees its caregiver's
+     * slot again. With a patient given, only that patient's appointment is cancelled.
+     *
+     * @return the cancelled appointment, or null if there is no such appointment (of that patient)
+     */
+    Appointment cancel(int id, String patient) throws SQLException;
+
+    /**
+     * Cancels every appointment of a caregiver on a day and deletes the caregiver's availability that day, as
+     * one unit of work: the doses go back, the caregiver is not available any more.
+     */
+    List<Appointment> cancelCaregiverDay(String caregiver, LocalDate day) throws SQLException;
+
+    /**
+     * Cancels every appointment for a vaccine with a date in [from, to] as one unit of work, giving the doses
+     * back and freeing the caregivers' slots.
+     */
+    List<Appointment> cancelVaccine(String vaccine, LocalDate from, LocalDate to) throws SQLException;
+
+    /**
+     * Visits the appointments of a caregiver (or of a patient) with an ID above afterId and a date in
+     * [from, to], in ID order, stopping after limit of them.
+     */
+    void forEachOf(boolean caregiver, String username, int afterId, LocalDate from, LocalDate to, int limit,
+                   Consumer<Appointment> action) throws SQLException;
+
+    /**
+     * Writes bookings and cancellations that were already decided, in order and as one unit of work. A booking
+     * inserts the appointment, claims the caregiver's slot and takes a dose without checking the stock; a
+     * cancellation deletes the appointment and gives both back. A change that is already there (the
+     * appointment exists, or is gone) is skipped, so applying the same changes again does nothing. So is a
+     * booking whose slot is no longer free, which changes nothing and is returned.
+     */
+    List<Appointment> applyAll(List<AppointmentChange> changes) throws SQLException;
+
+    // how many appointments every caregiver with at least one has
+    Map<String, Integer> countByCaregiver() throws SQLException;
+
+    // reserves count fresh IDs and returns the first; they are never handed out again
+    long claimIds(int count) throws SQLException;
+}
@@ -0,0 +1,37 @@
+package scheduler.repository;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.SortedMap;
+
+// Stores the time slots each caregiver is free, one bitmap per caregiver and day (bit i is slot i). A day
+// with no slot left free has no bitmap.
+public interface AvailabilityRepository {
+
+    /**
+     * Adds free slots to a caregiver's day; slots the caregiver already has an appointment in stay taken.
+     *
+     * @return the slots the day has free afterwards
+     */
+    long insert(LocalDate day, String caregiver, long slots) throws SQLException;
+
+    /**
+     * Inserts the days the caregiver does not have yet with the given free slots, in one unit of work; slots
+     * the caregiver already has an appointment in stay taken.
+     *
+     * @return the days that were inserted, with their free slots
+     */
+    SortedMap<LocalDate, Long> insertAll(String caregiver, Collection<LocalDate> days, long slots)
+            throws SQLException;
+
+    // deletes the caregiver's whole day; returns whether it existed
+    boolean delete(LocalDate day, String caregiver) throws SQLException;
+
+    // visits every caregiver-day, ordered by caregiver
+    void forEach(Visitor visitor) throws SQLException;
+
+    interface Visitor {
+        void accept(LocalDate day, String caregiver, long slots);
+    }
+}
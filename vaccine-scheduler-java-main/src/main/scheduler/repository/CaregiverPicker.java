@@ -0,0 +1,14 @@
+package scheduler.repository;
+
+/**
+ * Offers candidate caregivers for a booking, one at a time and each with a time slot, until one of them can be
+ * claimed.
+ */
+public interface CaregiverPicker {
+
+    // the next caregiver to try, or null if there is none left
+    String next();
+
+    // the slot the caregiver last returned by next() is offered in
+    int slot();
+}
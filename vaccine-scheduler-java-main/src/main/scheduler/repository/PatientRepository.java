@@ -0,0 +1,4 @@
+package scheduler.repository;
+
+public interface PatientRepository extends AccountRepository {
+}
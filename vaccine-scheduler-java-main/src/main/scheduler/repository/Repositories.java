@@ -0,0 +1,75 @@
+package scheduler.repository;
+
+import scheduler.db.JdbcAccountRepository;
+import scheduler.db.JdbcAppointmentRepository;
+import scheduler.db.JdbcAvailabilityRepository;
+import scheduler.db.JdbcVaccineRepository;
+import scheduler.memory.MemoryStore;
+import scheduler.util.Util;
+
+/**
+ * The repositories the rest of the scheduler reads and writes through, chosen once by the {@code Storage}
+ * setting: {@code jdbc} (the default) uses the database behind the connection pool, {@code memory} keeps
+ * everything in this process in a {@link MemoryStore}, optionally saved to a snapshot file.
+ */
+public class Repositories {
+
+    private static PatientRepository patients = null;
+    private static CaregiverRepository caregivers = null;
+    private static VaccineRepository vaccines = null;
+    private static AvailabilityRepository availabilities = null;
+    private static AppointmentRepository appointments = null;
+
+    private Repositories() {
+    }
+
+    public static boolean isInMemory() {
+        return Util.getSetting("Storage", "jdbc").equalsIgnoreCase("memory");
+    }
+
+    public static synchronized PatientRepository patients() {
+        init();
+        return patients;
+    }
+
+    public static synchronized CaregiverRepository caregivers() {
+        init();
+        return caregivers;
+    }
+
+    public static synchronized VaccineRepository vaccines() {
+        init();
+        return vaccines;
+    }
+
+    public static synchronized AvailabilityRepository availabilities() {
+        init();
+        return availabilities;
+    }
+
+    public static synchronized AppointmentRepository appointments() {
+        init();
+        return appointments;
+    }
+
+    // caller holds the lock
+    private static void init() {
+        if (patients != null) {
+            return;
+        }
+        if (isInMemory()) {
+            MemoryStore store = MemoryStore.getInstance();
+            caregivers = store.caregivers();
+            vaccines = store.vaccines();
+            availabilities = store.availabilities();
+            appointments = store.appointments();
+            patients = store.patients();
+        } else {
+            caregivers = new JdbcAccountRepository("Caregivers");
+            vaccines = new JdbcVaccineRepository();
+            availabilities = new JdbcAvailabilityRepository();
+            appointments = new JdbcAppointmentRepository();
+            patients = new JdbcAccountRepository("Patients");
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package scheduler.repository;
+
+/**
+ * A patient or caregiver account as it is stored: the username with its salt, its password hash and the
+ * encoded parameters the hash was made with (null for accounts from before they were stored).
+ */
+public class StoredAccount {
+    private final String username;
+    private final byte[] salt;
+    private final byte[] hash;
+    private final String hashParams;
+
+    public StoredAccount(String username, byte[] salt, byte[] hash, String hashParams) {
+        this.username = username;
+        this.salt = salt;
+        this.hash = hash;
+        this.hashParams = hashParams;
+    }
+
+    // Getters
+    public String getUsername() {
+        return username;
+    }
+
+    public byte[] getSalt() {
+        return salt;
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    public String getHashParams() {
+        return hashParams;
+    }
+}
@@ -0,0 +1,28 @@
+package scheduler.repository;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Stores the dose stock of every vaccine. Changes are always relative, so that concurrent writers never
+ * overwrite each other.
+ */
+public interface VaccineRepository {
+
+    // a vaccine that already exists is reported as a duplicate key
+    void insert(String vaccineName, int doses) throws SQLException;
+
+    // the doses left, or -1 if there is no such vaccine
+    int findDoses(String vaccineName) throws SQLException;
+
+    // every vaccine with its doses, ordered by name
+    Map<String, Integer> findAll() throws SQLException;
+
+    void addDoses(String vaccineName, int num) throws SQLException;
+
+    // applies every delta in one unit of work
+    void addDoses(Map<String, Long> deltas) throws SQLException;
+
+    // takes num doses if that many are left; the stock never goes negative
+    boolean takeDoses(String vaccineName, int num) throws SQLException;
+}
@@ -0,0 +1,85 @@
+package scheduler.util;
+
+import java.util.Objects;
+
+/**
+ * The parameters a password hash was computed with. They are stored next to the hash as a short string such
+ * as {@code PBKDF2WithHmacSHA256:10000:128}, so hashes made with older parameters can still be verified and
+ * upgraded later. Rows without stored parameters predate versioning and use {@link #LEGACY}.
+ */
+public class HashParams {
+
+    // the parameters every hash was made with before they were stored
+    public static final HashParams LEGACY = new HashParams("PBKDF2WithHmacSHA1", 10, 16);
+
+    // the Hash columns are BINARY(16)
+    public static final int MAX_KEY_LENGTH = 128;
+
+    private final String algorithm;
+    private final int iterations;
+    private final int keyLength;
+
+    public HashParams(String algorithm, int iterations, int keyLength) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("Iterations must be positive!");
+        }
+        if (keyLength <= 0 || keyLength > MAX_KEY_LENGTH || keyLength % 8 != 0) {
+            throw new IllegalArgumentException("Key length must be a multiple of 8 up to " + MAX_KEY_LENGTH + " bits!");
+        }
+        this.algorithm = algorithm;
+        this.iterations = iterations;
+        this.keyLength = keyLength;
+    }
+
+    // Getters
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    // in bits
+    public int getKeyLength() {
+        return keyLength;
+    }
+
+    public String encode() {
+        return algorithm + ":" + iterations + ":" + keyLength;
+    }
+
+    // null or empty means the row was hashed before parameters were stored
+    public static HashParams decode(String encoded) {
+        if (encoded == null || encoded.isBlank()) {
+            return LEGACY;
+        }
+        String[] parts = encoded.trim().split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Malformed hash parameters: " + encoded);
+        }
+        return new HashParams(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HashParams)) {
+            return false;
+        }
+        HashParams that = (HashParams) o;
+        return iterations == that.iterations && keyLength == that.keyLength && algorithm.equals(that.algorithm);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(algorithm, iterations, keyLength);
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
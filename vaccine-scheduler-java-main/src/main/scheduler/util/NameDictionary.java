@@ -0,0 +1,147 @@
+package scheduler.util;
+
+import java.util.Arrays;
+
+/**
+ * A two-way mapping between names and small non-negative int IDs, for tables and caches that store the IDs
+ * in place of the names.
+ *
+ * The names sit in an array indexed by ID, and the way back is an open-addressing hash table that is just
+ * an int array of ID + 1 (0 marks a free slot), probed linearly and kept at most half full. Against a
+ * HashMap of boxed Integers that saves the entry and the Integer, about 48 bytes a name, and a lookup
+ * touches one array of ints before the one name it compares. IDs are either handed out in order by
+ * {@link #add} or come from elsewhere through {@link #put}, such as an identity column; the arrays grow to the
+ * highest ID, so those should be dense.
+ *
+ * Lookups are lock-free and changes are serialized. A lookup racing a change may miss a name that is being
+ * added, so a miss that matters is asked again under the lock, as {@link #add} does.
+ */
+public class NameDictionary {
+
+    private static final int MIN_SLOTS = 16;
+
+    private volatile Tables tables = new Tables(new String[MIN_SLOTS / 2], new int[MIN_SLOTS]);
+    private int size = 0;
+    private int nextId = 0;
+
+    // the ID of the name, or -1 if it has none
+    public int idOf(String name) {
+        Tables tables = this.tables;
+        int mask = tables.slots.length - 1;
+        for (int i = spread(name.hashCode()) & mask; ; i = (i + 1) & mask) {
+            int slot = tables.slots[i];
+            if (slot == 0) {
+                return -1;
+            }
+            String candidate = slot <= tables.names.length ? tables.names[slot - 1] : null;
+            if (candidate == null) {
+                // written to the slot before the name is visible here; the caller asks again if it has to
+                return -1;
+            }
+            if (candidate.equals(name)) {
+                return slot - 1;
+            }
+        }
+    }
+
+    // the name with the ID, or null if there is none
+    public String nameOf(int id) {
+        String[] names = tables.names;
+        return id >= 0 && id < names.length ? names[id] : null;
+    }
+
+    // the ID of the name, giving it the next unused one on first sight
+    public synchronized int add(String name) {
+        int id = idOf(name);
+        if (id >= 0) {
+            return id;
+        }
+        id = nextId;
+        put(name, id);
+        return id;
+    }
+
+    /**
+     * Records that the name has the ID. A name keeps the first ID it was given; putting it again, with any
+     * ID, changes nothing.
+     */
+    public synchronized void put(String name, int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Negative ID " + id + " for " + name);
+        }
+        if (idOf(name) >= 0) {
+            return;
+        }
+        Tables tables = this.tables;
+        String[] names = tables.names;
+        int[] slots = tables.slots;
+        if (id >= names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, id + 1));
+        }
+        if (names[id] != null) {
+            throw new IllegalArgumentException("ID " + id + " is already taken by " + names[id]);
+        }
+        if ((size + 1) * 2 > slots.length) {
+            slots = rehash(names, slots.length * 2);
+        }
+        names[id] = name;
+        insert(slots, name, id);
+        size++;
+        nextId = Math.max(nextId, id + 1);
+        if (names != tables.names || slots != tables.slots) {
+            this.tables = new Tables(names, slots);
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // a rough estimate of the heap used: the names, one reference per ID and one int per slot
+    public synchronized long getFootprintBytes() {
+        Tables tables = this.tables;
+        long bytes = 16 + tables.names.length * 8L + 16 + tables.slots.length * 4L;
+        for (String name : tables.names) {
+            if (name != null) {
+                // String + byte[]
+                bytes += 24 + 16 + name.length();
+            }
+        }
+        return bytes;
+    }
+
+    private static int[] rehash(String[] names, int capacity) {
+        int[] slots = new int[capacity];
+        for (int id = 0; id < names.length; id++) {
+            if (names[id] != null) {
+                insert(slots, names[id], id);
+            }
+        }
+        return slots;
+    }
+
+    private static void insert(int[] slots, String name, int id) {
+        int mask = slots.length - 1;
+        int i = spread(name.hashCode()) & mask;
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = id + 1;
+    }
+
+    // String hashes of similar names differ mostly in their low bits, which linear probing clusters on
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static class Tables {
+        private final String[] names;
+        private final int[] slots;
+
+        private Tables(String[] names, int[] slots) {
+            this.names = names;
+            this.slots = slots;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package scheduler.util;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Salts, hashes and verifies passwords.
+ *
+ * Hashing is CPU bound, so it runs on a fixed pool with one worker per core ({@code HashThreads}); requests
+ * wait their turn in a FIFO queue, which keeps a storm of logins from starving everything else. Each worker
+ * keeps its own {@link SecretKeyFactory} per algorithm and its own {@link SecureRandom}, so neither is looked
+ * up or seeded again per password.
+ *
+ * New hashes use {@code HashAlgorithm}, {@code HashIterations} and {@code HashKeyLength} (bits, at most 128);
+ * see {@link #current()}.
+ */
+public class PasswordHasher {
+
+    private static final int SALT_LENGTH = 16;
+
+    private static final ThreadLocal<Map<String, SecretKeyFactory>> FACTORIES = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+
+    private static final HashParams CURRENT = new HashParams(
+            Util.getSetting("HashAlgorithm", "PBKDF2WithHmacSHA256"),
+            Util.getIntSetting("HashIterations", 10000),
+            Util.getIntSetting("HashKeyLength", HashParams.MAX_KEY_LENGTH));
+
+    private static final ThreadPoolExecutor WORKERS;
+
+    static {
+        int threads = Util.getIntSetting("HashThreads", Runtime.getRuntime().availableProcessors());
+        AtomicInteger count = new AtomicInteger();
+        WORKERS = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "password-hasher-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    private PasswordHasher() {
+    }
+
+    // the parameters new hashes are made with
+    public static HashParams current() {
+        return CURRENT;
+    }
+
+    public static byte[] newSalt() {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.get().nextBytes(salt);
+        return salt;
+    }
+
+    // queues the hash on the worker pool and waits for it
+    public static byte[] hash(String password, byte[] salt, HashParams params) {
+        return await(submit(password, salt, params));
+    }
+
+    public static Future<byte[]> submit(String password, byte[] salt, HashParams params) {
+        return WORKERS.submit(() -> computeHash(password, salt, params));
+    }
+
+    public static byte[] await(Future<byte[]> hash) {
+        try {
+            return hash.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing a password", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // checks the password against a stored hash made with the given parameters
+    public static boolean verify(String password, byte[] salt, byte[] storedHash, HashParams params) {
+        byte[] calculatedHash = hash(password, salt, params);
+        // the Hash columns are fixed width, so stored hashes come back padded with zeros
+        return MessageDigest.isEqual(Util.trim(storedHash), Util.trim(calculatedHash));
+    }
+
+    // hashes on the calling thread, with that thread's cached factory
+    public static byte[] computeHash(String password, byte[] salt, HashParams params) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, params.getIterations(), params.getKeyLength());
+        try {
+            SecretKeyFactory factory = FACTORIES.get().get(params.getAlgorithm());
+            if (factory == null) {
+                factory = SecretKeyFactory.getInstance(params.getAlgorithm());
+                FACTORIES.get().put(params.getAlgorithm(), factory);
+            }
+            return factory.generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package scheduler;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * What a script reports about the commands in it, including those that fail, throw or are not commands at
+ * all, over the in-memory store. Every test signs up caregivers of its own, as the store lives as long as the
+ * JVM.
+ */
+class ScriptRunnerTest {
+
+    @BeforeAll
+    static void setUp() {
+        System.setProperty("Storage", "memory");
+        System.setProperty("Metrics", "false");
+    }
+
+    @Test
+    void summaryCountsCommandsUpToQuit() throws IOException {
+        StringWriter output = new StringWriter();
+
+        new ScriptRunner(new PrintWriter(output), false).run(script(
+                "create_caregiver text pw",
+                "# comments and blank lines are not commands",
+                "",
+                "frobnicate",
+                "add_doses text 1",
+                "quit",
+                "add_doses text 1"));
+
+        List<String> lines = output.toString().lines().toList();
+        assertTrue(lines.contains("Invalid operation name!"), output::toString);
+        assertEquals(1, lines.stream().filter(line -> line.equals("Doses updated!")).count(), output::toString);
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("Script finished: 4 commands, 0 failed, 1 invalid")),
+                output::toString);
+        assertTrue(lines.stream().anyMatch(line -> line.matches(" +invalid +1 +failed 1")), output::toString);
+        assertFalse(lines.stream().anyMatch(line -> line.matches(" +add_doses +2 .*")), output::toString);
+    }
+
+    @Test
+    void jsonLinesReportEachCommand() throws IOException {
+        StringWriter output = new StringWriter();
+
+        new ScriptRunner(new PrintWriter(output), true).run(script(
+                "create_caregiver json pw",
+                "# not a command",
+                "frobnicate \"x\"",
+                "add_doses json 1"));
+
+        List<String> lines = output.toString().lines().toList();
+        assertEquals(4, lines.size(), output::toString);
+        assertTrue(lines.get(0).startsWith("{\"line\":1,\"command\":\"create_caregiver\",\"ok\":true,"), lines.get(0));
+        assertTrue(lines.get(1).startsWith("{\"line\":3,\"command\":\"frobnicate\",\"ok\":false,"), lines.get(1));
+        assertTrue(lines.get(1).endsWith("\"output\":[\"Invalid operation name!\"]}"), lines.get(1));
+        assertTrue(lines.get(2).startsWith("{\"line\":4,\"command\":\"add_doses\",\"ok\":true,"), lines.get(2));
+        assertTrue(lines.get(3).startsWith("{\"summary\":{\"commands\":3,\"failed\":0,\"invalid\":1,"), lines.get(3));
+        assertTrue(lines.get(3).contains("\"add_doses\":{\"count\":1,\"failed\":0}"), lines.get(3));
+    }
+
+    @Test
+    void commandThatThrowsIsCountedAndTheScriptGoesOn() throws IOException {
+        StringWriter output = new StringWriter();
+        // the first "Doses updated!" blows up, as a bug in the command would
+        PrintWriter out = new PrintWriter(output) {
+            private boolean thrown = false;
+
+            @Override
+            public void println(String line) {
+                if (!thrown && line.equals("Doses updated!")) {
+                    thrown = true;
+                    throw new IllegalStateException("broken");
+                }
+                super.println(line);
+            }
+        };
+
+        new ScriptRunner(out, false).run(script(
+                "create_caregiver thrown pw",
+                "add_doses thrown abc",
+                "# comments and blank lines are not commands",
+                "",
+                "add_doses thrown 5",
+                "frobnicate",
+                "login_patient nobody pw",
+                "add_doses thrown 1"));
+
+        List<String> lines = output.toString().lines().toList();
+        assertTrue(lines.contains("Error occurred when running the command: java.lang.IllegalStateException: broken"),
+                output::toString);
+        assertTrue(lines.contains("Invalid operation name!"), output::toString);
+        // the line after the one that threw still ran
+        assertTrue(lines.contains("Doses updated!"), output::toString);
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("Script finished: 6 commands, 3 failed, 1 invalid")),
+                output::toString);
+        assertTrue(lines.stream().anyMatch(line -> line.matches(" +add_doses +3 +failed 2")), output::toString);
+        assertTrue(lines.stream().anyMatch(line -> line.matches(" +invalid +1 +failed 1")), output::toString);
+    }
+
+    @Test
+    void jsonLinesReportFailedCommands() throws IOException {
+        StringWriter output = new StringWriter();
+
+        new ScriptRunner(new PrintWriter(output), true).run(script(
+                "create_caregiver failed pw",
+                "add_doses failed abc",
+                "frobnicate",
+                "add_doses failed 1"));
+
+        List<String> lines = output.toString().lines().toList();
+        assertEquals(5, lines.size(), output::toString);
+        assertTrue(lines.get(0).startsWith("{\"line\":1,\"command\":\"create_caregiver\",\"ok\":true,"), lines.get(0));
+        assertTrue(lines.get(1).startsWith("{\"line\":2,\"command\":\"add_doses\",\"ok\":false,"), lines.get(1));
+        assertTrue(lines.get(1).endsWith("\"output\":[\"Please enter a whole number of doses!\"]}"), lines.get(1));
+        assertTrue(lines.get(2).startsWith("{\"line\":3,\"command\":\"frobnicate\",\"ok\":false,"), lines.get(2));
+        assertTrue(lines.get(3).startsWith("{\"line\":4,\"command\":\"add_doses\",\"ok\":true,"), lines.get(3));
+        assertTrue(lines.get(4).startsWith("{\"summary\":{\"commands\":4,\"failed\":1,\"invalid\":1,"), lines.get(4));
+        assertTrue(lines.get(4).contains("\"add_doses\":{\"count\":2,\"failed\":1}"), lines.get(4));
+    }
+
+    private static BufferedReader script(String... lines) {
+        return new BufferedReader(new StringReader(String.join("\n", lines)));
+    }
+}
@@ -0,0 +1,154 @@
+package scheduler.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Leasing from and returning to pools of their own over embedded H2 databases, one per test.
+ */
+class ConnectionPoolTest {
+
+    @Test
+    void returnedConnectionIsLeasedAgainWithItsTransactionRolledBack() throws SQLException {
+        ConnectionPool pool = pool("lease", 2, 60_000);
+        try {
+            PooledConnection first = pool.borrow();
+            try (Statement statement = first.getConnection().createStatement()) {
+                statement.execute("CREATE TABLE Leases (ID int)");
+            }
+            first.getConnection().setAutoCommit(false);
+            first.prepareStatement("INSERT INTO Leases VALUES (1)").executeUpdate();
+            assertEquals(1, pool.getStats().getLeased());
+
+            pool.release(first);
+            assertEquals(0, pool.getStats().getLeased());
+            assertEquals(1, pool.getStats().getIdle());
+
+            PooledConnection second = pool.borrow();
+            assertSame(first, second);
+            assertTrue(second.getConnection().getAutoCommit());
+            // the statement cache came along with the connection
+            assertEquals(1, second.getCachedStatementCount());
+            try (Statement statement = second.getConnection().createStatement();
+                 ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM Leases")) {
+                assertTrue(resultSet.next());
+                assertEquals(0, resultSet.getInt(1));
+            }
+            pool.release(second);
+            assertEquals(1, pool.getStats().getCreatedCount());
+            assertEquals(2, pool.getStats().getAcquireCount());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void brokenIdleConnectionIsReplacedOnBorrow() throws SQLException {
+        // every borrow validates
+        ConnectionPool pool = new ConnectionPool(url("validate"), null, null, 2, 0, 1_000, 0, 0, 8);
+        try {
+            PooledConnection first = pool.borrow();
+            pool.release(first);
+            first.getConnection().close();
+
+            PooledConnection second = pool.borrow();
+            assertNotSame(first, second);
+            assertTrue(second.getConnection().isValid(1));
+            pool.release(second);
+            assertEquals(1, pool.getStats().getRetiredCount());
+            assertEquals(2, pool.getStats().getCreatedCount());
+            assertEquals(1, pool.getStats().getTotal());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void connectionIsRetiredOnceItOutlivesMaxLifetime() throws Exception {
+        ConnectionPool pool = new ConnectionPool(url("lifetime"), null, null, 2, 0, 1_000, 100, 60_000, 8);
+        try {
+            PooledConnection first = pool.borrow();
+            TimeUnit.MILLISECONDS.sleep(150);
+            pool.release(first);
+
+            assertEquals(1, pool.getStats().getRetiredCount());
+            assertEquals(0, pool.getStats().getTotal());
+            PooledConnection second = pool.borrow();
+            assertNotSame(first, second);
+            pool.release(second);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void saturatedPoolMakesBorrowersWaitAndCountsIt() throws Exception {
+        ConnectionPool pool = pool("saturated", 1, 5_000);
+        try {
+            PooledConnection first = pool.borrow();
+            CompletableFuture<PooledConnection> waiting = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return pool.borrow();
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            while (pool.getStats().getSaturatedCount() == 0) {
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+            assertFalse(waiting.isDone());
+            TimeUnit.MILLISECONDS.sleep(50);
+            pool.release(first);
+
+            PooledConnection second = waiting.get(5, TimeUnit.SECONDS);
+            assertSame(first, second);
+            PoolStats stats = pool.getStats();
+            assertEquals(2, stats.getAcquireCount());
+            assertEquals(1, stats.getSaturatedCount());
+            assertEquals(0.5, stats.getSaturationRatio());
+            assertEquals(1, stats.getPeakLeased());
+            assertTrue(stats.getMaxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(50), stats.toString());
+            pool.release(second);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void borrowTimesOutWhenNothingIsReturned() throws SQLException {
+        ConnectionPool pool = pool("timeout", 1, 100);
+        try {
+            PooledConnection first = pool.borrow();
+
+            assertThrows(SQLException.class, pool::borrow);
+
+            PoolStats stats = pool.getStats();
+            assertEquals(1, stats.getTimeoutCount());
+            assertEquals(1, stats.getSaturatedCount());
+            assertEquals(1, stats.getLeased());
+            pool.release(first);
+        } finally {
+            pool.close();
+        }
+    }
+
+    private static ConnectionPool pool(String name, int maxSize, long acquireTimeoutMillis) {
+        return new ConnectionPool(url(name), null, null, maxSize, 0, acquireTimeoutMillis, 0, 60_000, 8);
+    }
+
+    private static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+    }
+}
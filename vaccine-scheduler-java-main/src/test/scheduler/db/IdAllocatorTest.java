@@ -0,0 +1,107 @@
+package scheduler.db;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import scheduler.repository.Repositories;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Allocates appointment IDs from this JVM and from a second one at the same time, both against one H2 file
+ * database in auto-server mode, and checks that no ID is handed out twice, nor one already in Appointment.
+ */
+class IdAllocatorTest {
+
+    private static final int BLOCK_SIZE = 7;
+    private static final int PER_ALLOCATOR = 500;
+    private static Path directory;
+    private static String url;
+
+    @BeforeAll
+    static void setUp() throws IOException, SQLException {
+        directory = Files.createTempDirectory("scheduler-ids");
+        url = "jdbc:h2:" + directory.resolve("ids") + ";MODE=MSSQLServer;AUTO_SERVER=TRUE";
+        System.setProperty("JdbcUrl", url);
+        System.setProperty("IdBlockSize", String.valueOf(BLOCK_SIZE));
+        try (Connection con = DriverManager.getConnection(url); Statement statement = con.createStatement()) {
+            statement.execute("CREATE TABLE Sequences (Name varchar(255), NextValue int, PRIMARY KEY (Name))");
+            statement.execute("CREATE TABLE Appointment (ID int)");
+            statement.execute("INSERT INTO Appointment VALUES (41)");
+        }
+    }
+
+    @Test
+    void idsAreUniqueAcrossProcesses() throws Exception {
+        Process other = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), "-DJdbcUrl=" + url, "-DIdBlockSize=" + BLOCK_SIZE,
+                IdAllocatorTest.class.getName(), String.valueOf(PER_ALLOCATOR))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        // two allocators in this process as well, each with blocks of its own
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Future<List<Integer>>> here = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            IdAllocator allocator = new IdAllocator(count -> Repositories.appointments().claimIds(count), BLOCK_SIZE);
+            here.add(executor.submit(() -> allocate(allocator, PER_ALLOCATOR)));
+        }
+        List<Integer> there = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(other.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                there.add(Integer.parseInt(line.trim()));
+            }
+        }
+        assertTrue(other.waitFor(60, TimeUnit.SECONDS));
+        assertEquals(0, other.exitValue());
+        executor.shutdown();
+
+        Set<Integer> ids = new HashSet<>(there);
+        assertEquals(PER_ALLOCATOR, ids.size());
+        for (Future<List<Integer>> future : here) {
+            for (int id : future.get()) {
+                assertTrue(ids.add(id), "ID " + id + " was handed out twice");
+            }
+        }
+        assertEquals(3 * PER_ALLOCATOR, ids.size());
+        // the sequence was seeded past the appointment already there
+        assertTrue(ids.stream().allMatch(id -> id > 41));
+    }
+
+    private static List<Integer> allocate(IdAllocator allocator, int count) throws SQLException {
+        List<Integer> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(allocator.nextId());
+        }
+        return ids;
+    }
+
+    // the other process: prints the IDs it was given, one per line
+    public static void main(String[] args) throws SQLException {
+        for (int id : allocate(IdAllocator.forAppointments(), Integer.parseInt(args[0]))) {
+            System.out.println(id);
+        }
+    }
+}
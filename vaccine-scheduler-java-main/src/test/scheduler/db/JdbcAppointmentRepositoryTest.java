@@ -0,0 +1,182 @@
+package scheduler.db;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import scheduler.model.Appointment;
+import scheduler.model.TimeSlots;
+import scheduler.repository.AppointmentChange;
+import scheduler.repository.AppointmentRepository;
+import scheduler.repository.Repositories;
+import scheduler.repository.StoredAccount;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The slot claims of group commit (bookAll) and journal replay (applyAll) against an H2 database: a slot is
+ * only ever booked once, whichever path gets there first. Every test uses a day and a vaccine of its own.
+ */
+class JdbcAppointmentRepositoryTest {
+
+    private static AppointmentRepository appointments;
+
+    @BeforeAll
+    static void setUp() throws SQLException {
+        System.setProperty("JdbcUrl", "jdbc:h2:mem:booking;MODE=MSSQLServer;DB_CLOSE_DELAY=-1");
+        // 16 slots of an hour from 08:00
+        System.setProperty("SlotMinutes", "60");
+        System.setProperty("SlotDayStart", "08:00");
+        MigrationRunner.migrate();
+        for (String caregiver : new String[]{"c1", "c2"}) {
+            Repositories.caregivers().insert(new StoredAccount(caregiver, new byte[16], new byte[16], null));
+        }
+        Repositories.patients().insert(new StoredAccount("p1", new byte[16], new byte[16], null));
+        appointments = Repositories.appointments();
+    }
+
+    @Test
+    void bookAllBooksEachAvailabilityOnce() throws SQLException {
+        LocalDate day = LocalDate.of(2030, 1, 1);
+        Repositories.availabilities().insert(day, "c1", 1);
+        Repositories.availabilities().insert(day, "c2", 1);
+        Repositories.vaccines().insert("group", 10);
+
+        boolean[] booked = appointments.bookAll(List.of(
+                appointment(1, day, "c1", "group"), appointment(2, day, "c1", "group"),
+                appointment(3, day, "c2", "group")));
+
+        assertArrayEquals(new boolean[]{true, false, true}, booked);
+        assertNotNull(appointments.find(1));
+        assertNull(appointments.find(2));
+        assertNotNull(appointments.find(3));
+        assertEquals(8, Repositories.vaccines().findDoses("group"));
+        assertTrue(available(day).isEmpty());
+        assertArrayEquals(new boolean[]{false}, appointments.bookAll(List.of(appointment(4, day, "c2", "group"))));
+    }
+
+    @Test
+    void bookAllBooksEachSlotOnce() throws SQLException {
+        LocalDate day = LocalDate.of(2030, 1, 2);
+        Repositories.availabilities().insert(day, "c1", TimeSlots.bit(0) | TimeSlots.bit(1));
+        Repositories.vaccines().insert("slots", 10);
+
+        boolean[] booked = appointments.bookAll(List.of(appointment(10, day, 0, "c1", "slots"),
+                appointment(11, day, 0, "c1", "slots"), appointment(12, day, 1, "c1", "slots")));
+
+        assertArrayEquals(new boolean[]{true, false, true}, booked);
+        assertEquals(1, appointments.find(12).getSlot());
+        assertEquals(8, Repositories.vaccines().findDoses("slots"));
+        assertTrue(available(day).isEmpty());
+        assertNotNull(appointments.cancel(12, null));
+        assertEquals(List.of("c1"), available(day));
+    }
+
+    @Test
+    void bookAllNeverTakesMoreDosesThanLeft() throws SQLException {
+        LocalDate day = LocalDate.of(2030, 1, 3);
+        Repositories.availabilities().insert(day, "c1", TimeSlots.bit(0) | TimeSlots.bit(1));
+        Repositories.vaccines().insert("scarce", 1);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> appointments.bookAll(
+                List.of(appointment(20, day, 0, "c1", "scarce"), appointment(21, day, 1, "c1", "scarce"))));
+
+        assertEquals(AppointmentRepository.NOT_ENOUGH_DOSES, e.getMessage());
+        // nothing changed
+        assertNull(appointments.find(20));
+        assertNull(appointments.find(21));
+        assertEquals(1, Repositories.vaccines().findDoses("scarce"));
+        assertEquals(List.of("c1"), available(day));
+    }
+
+    @Test
+    void replaySkipsBookingWhoseSlotWasTaken() throws SQLException {
+        LocalDate day = LocalDate.of(2030, 1, 4);
+        Repositories.availabilities().insert(day, "c1", TimeSlots.bit(0));
+        Repositories.vaccines().insert("replay", 10);
+
+        // another process books the slot before the journal gets to its own booking of it
+        assertArrayEquals(new boolean[]{true}, appointments.bookAll(List.of(appointment(30, day, 0, "c1", "replay"))));
+        List<Appointment> skipped = appointments.applyAll(
+                List.of(new AppointmentChange(false, appointment(31, day, 0, "c1", "replay"))));
+
+        assertEquals(List.of(31), skipped.stream().map(Appointment::getId).toList());
+        assertNull(appointments.find(31));
+        assertEquals(9, Repositories.vaccines().findDoses("replay"));
+    }
+
+    @Test
+    void replayingAppliedChangesDoesNothing() throws SQLException {
+        LocalDate day = LocalDate.of(2030, 1, 5);
+        Repositories.availabilities().insert(day, "c1", TimeSlots.bit(0) | TimeSlots.bit(1));
+        Repositories.vaccines().insert("again", 10);
+        List<AppointmentChange> changes = List.of(new AppointmentChange(false, appointment(40, day, 1, "c1", "again")));
+
+        assertTrue(appointments.applyAll(changes).isEmpty());
+        assertTrue(appointments.applyAll(changes).isEmpty());
+
+        assertNotNull(appointments.find(40));
+        assertEquals(9, Repositories.vaccines().findDoses("again"));
+        assertEquals(List.of("c1"), available(day));
+    }
+
+    @Test
+    void cancellingInAFullDayFreesTheSlotAgain() throws SQLException {
+        LocalDate day = LocalDate.of(2030, 1, 6);
+        Repositories.availabilities().insert(day, "c1", TimeSlots.bit(3));
+        Repositories.vaccines().insert("cancel", 10);
+
+        assertArrayEquals(new boolean[]{true}, appointments.bookAll(List.of(appointment(50, day, 3, "c1", "cancel"))));
+        assertTrue(available(day).isEmpty());
+        assertNotNull(appointments.cancel(50, null));
+
+        assertEquals(List.of("c1"), available(day));
+        assertEquals(TimeSlots.bit(3), Repositories.availabilities().insert(day, "c1", 0));
+        assertEquals(10, Repositories.vaccines().findDoses("cancel"));
+    }
+
+    @Test
+    void listingsCarryTheNames() throws SQLException {
+        LocalDate day = LocalDate.of(2030, 1, 7);
+        Repositories.availabilities().insert(day, "c1", TimeSlots.bit(2) | TimeSlots.bit(5));
+        Repositories.vaccines().insert("listed", 10);
+        appointments.bookAll(List.of(appointment(60, day, 5, "c1", "listed"), appointment(61, day, 2, "c1", "listed")));
+
+        List<String> listed = new ArrayList<>();
+        appointments.forEachOf(true, "c1", 59, day, day, 10, appointment -> listed.add(appointment.getId() + " "
+                + appointment.getSlot() + " " + appointment.getCaregiverName() + " " + appointment.getPatientName()
+                + " " + appointment.getVaccineName()));
+
+        assertEquals(List.of("60 5 c1 p1 listed", "61 2 c1 p1 listed"), listed);
+        assertEquals("listed", appointments.find(61).getVaccineName());
+        assertNull(appointments.find(62));
+    }
+
+    private static Appointment appointment(int id, LocalDate day, String caregiver, String vaccine) {
+        return appointment(id, day, 0, caregiver, vaccine);
+    }
+
+    private static Appointment appointment(int id, LocalDate day, int slot, String caregiver, String vaccine) {
+        return new Appointment(id, Date.valueOf(day), slot, caregiver, "p1", vaccine);
+    }
+
+    // the caregivers with a row on a day, as the table has them; a day with no slot free has none
+    private static List<String> available(LocalDate day) throws SQLException {
+        List<String> caregivers = new ArrayList<>();
+        Repositories.availabilities().forEach((time, caregiver, slots) -> {
+            if (time.equals(day)) {
+                caregivers.add(caregiver);
+            }
+        });
+        return caregivers;
+    }
+}
@@ -0,0 +1,109 @@
+package scheduler.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs the migrations against H2 databases in the states older versions of the scheduler left behind.
+class MigrationRunnerTest {
+
+    @Test
+    void emptyDatabaseGetsEveryVersion() throws SQLException {
+        try (Connection con = open("empty")) {
+            assertEquals(6, new MigrationRunner(con).run());
+            assertEquals(List.of(1, 2, 3, 4, 5, 6), versions(con));
+            assertEquals(0, new MigrationRunner(con).run());
+        }
+    }
+
+    @Test
+    void legacyDatabaseIsBaselinedAndMigrated() throws SQLException, IOException {
+        try (Connection con = open("legacy")) {
+            runScript(con, "create.sql");
+            try (Statement statement = con.createStatement()) {
+                statement.executeUpdate("INSERT INTO Caregivers (Username, Salt, Hash) VALUES ('c1', X'00', X'00')");
+                statement.executeUpdate("INSERT INTO Vaccines (Name, Doses) VALUES ('pfizer', 3)");
+                statement.executeUpdate("INSERT INTO Availabilities (Time, Username) VALUES ('2030-01-05', 'c1')");
+            }
+
+            assertEquals(5, new MigrationRunner(con).run());
+            assertEquals(List.of(1, 2, 3, 4, 5, 6), versions(con));
+            // the old rows made it through, and the columns and tables of the later versions are there
+            assertEquals(1, count(con, "SELECT COUNT(*) FROM Caregivers WHERE Username = 'c1' AND HashParams IS NULL"));
+            assertEquals(1, count(con, "SELECT COUNT(*) FROM Availabilities a JOIN Caregivers c ON c.ID = a.Caregiver_ID"
+                    + " WHERE c.Username = 'c1' AND a.Slots <> 0"));
+            assertEquals(0, count(con, "SELECT COUNT(*) FROM Sequences"));
+            assertEquals(0, new MigrationRunner(con).run());
+        }
+    }
+
+    @Test
+    void scriptChangedAfterItWasAppliedStopsTheRun() throws SQLException {
+        try (Connection con = open("changed")) {
+            new MigrationRunner(con).run();
+            try (Statement statement = con.createStatement()) {
+                statement.executeUpdate("UPDATE SchemaHistory SET Checksum = Checksum + 1 WHERE Version = 2");
+            }
+
+            SQLException e = assertThrows(SQLException.class, () -> new MigrationRunner(con).run());
+            assertTrue(e.getMessage().contains("V2__sequences.sql"), e.getMessage());
+        }
+    }
+
+    private static Connection open(String name) throws SQLException {
+        return DriverManager.getConnection("jdbc:h2:mem:" + name + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1");
+    }
+
+    // runs a script from the classpath the way the original setup instructions did, one statement at a time
+    private static void runScript(Connection con, String resource) throws SQLException, IOException {
+        String script;
+        try (InputStream in = MigrationRunnerTest.class.getClassLoader().getResourceAsStream(resource)) {
+            assertTrue(in != null, resource);
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        StringBuilder sql = new StringBuilder();
+        for (String line : script.split("\n")) {
+            if (!line.trim().startsWith("--")) {
+                sql.append(line).append('\n');
+            }
+        }
+        try (Statement statement = con.createStatement()) {
+            for (String part : sql.toString().split(";")) {
+                if (!part.isBlank()) {
+                    statement.execute(part);
+                }
+            }
+        }
+    }
+
+    private static List<Integer> versions(Connection con) throws SQLException {
+        List<Integer> versions = new ArrayList<>();
+        try (Statement statement = con.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT Version FROM SchemaHistory ORDER BY Version")) {
+            while (resultSet.next()) {
+                versions.add(resultSet.getInt(1));
+            }
+        }
+        return versions;
+    }
+
+    private static long count(Connection con, String query) throws SQLException {
+        try (Statement statement = con.createStatement(); ResultSet resultSet = statement.executeQuery(query)) {
+            assertTrue(resultSet.next(), query);
+            return resultSet.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package scheduler.memory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import scheduler.model.Appointment;
+import scheduler.repository.AppointmentChange;
+import scheduler.repository.AppointmentRepository;
+import scheduler.repository.AvailabilityRepository;
+import scheduler.repository.CaregiverPicker;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Booking against the in-memory tables of a fresh store per test, in slot 0 of every day unless said otherwise.
+class MemoryStoreTest {
+
+    private static final LocalDate DAY = LocalDate.of(2030, 3, 1);
+
+    private MemoryStore store;
+    private AppointmentRepository appointments;
+    private AvailabilityRepository availabilities;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        store = new MemoryStore();
+        appointments = store.appointments();
+        availabilities = store.availabilities();
+        store.vaccines().insert("pfizer", 10);
+    }
+
+    @Test
+    void bookingTakesADoseAndTheCaregiversDay() throws SQLException {
+        availabilities.insert(DAY, "c1", 1);
+        availabilities.insert(DAY, "c2", 1);
+
+        assertNotNull(appointments.book(1, DAY, "p1", "pfizer", true, picker("c1", "c2")));
+        assertEquals("c2", appointments.book(2, DAY, "p1", "pfizer", true, picker("c1", "c2")).getCaregiverName());
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> appointments.book(3, DAY, "p1", "pfizer", true, picker("c1", "c2")));
+
+        assertEquals(AppointmentRepository.NO_CAREGIVER, e.getMessage());
+        assertNull(appointments.find(3));
+        assertEquals(8, store.vaccines().findDoses("pfizer"));
+        assertTrue(days().isEmpty());
+    }
+
+    @Test
+    void failedBookingChangesNothing() throws SQLException {
+        availabilities.insert(DAY, "c1", 1);
+        store.vaccines().insert("scarce", 0);
+
+        assertEquals(AppointmentRepository.NOT_ENOUGH_DOSES, assertThrows(IllegalArgumentException.class,
+                () -> appointments.book(1, DAY, "p1", "scarce", true, picker("c1"))).getMessage());
+        assertEquals(AppointmentRepository.UNKNOWN_VACCINE, assertThrows(IllegalArgumentException.class,
+                () -> appointments.book(2, DAY, "p1", "unknown", true, picker("c1"))).getMessage());
+        // the slot is put back when the appointment cannot be recorded
+        availabilities.insert(DAY.plusDays(1), "c1", 1);
+        appointments.book(3, DAY.plusDays(1), "p1", "pfizer", true, picker("c1"));
+        assertThrows(SQLException.class, () -> appointments.book(3, DAY, "p1", "pfizer", true, picker("c1")));
+
+        assertEquals(List.of(DAY + " c1 1"), days());
+        assertEquals(9, store.vaccines().findDoses("pfizer"));
+    }
+
+    @Test
+    void bookAllBooksEachAvailabilityOnce() throws SQLException {
+        availabilities.insert(DAY, "c1", 1);
+        availabilities.insert(DAY, "c2", 1);
+
+        boolean[] booked = appointments.bookAll(List.of(appointment(1, "c1"), appointment(2, "c1"), appointment(3, "c2")));
+
+        assertArrayEquals(new boolean[]{true, false, true}, booked);
+        assertNull(appointments.find(2));
+        assertEquals(8, store.vaccines().findDoses("pfizer"));
+        assertTrue(days().isEmpty());
+    }
+
+    @Test
+    void bookAllNeverTakesMoreDosesThanLeft() throws SQLException {
+        availabilities.insert(DAY, "c1", 0b1);
+        availabilities.insert(DAY, "c2", 0b1);
+        store.vaccines().addDoses("pfizer", -9);
+
+        assertEquals(AppointmentRepository.NOT_ENOUGH_DOSES, assertThrows(IllegalArgumentException.class,
+                () -> appointments.bookAll(List.of(appointment(1, "c1"), appointment(2, "c2")))).getMessage());
+
+        assertNull(appointments.find(1));
+        assertEquals(1, store.vaccines().findDoses("pfizer"));
+        assertEquals(List.of(DAY + " c1 1", DAY + " c2 1"), days());
+    }
+
+    @Test
+    void replaySkipsBookingWhoseSlotWasTaken() throws SQLException {
+        availabilities.insert(DAY, "c1", 0b1);
+        assertArrayEquals(new boolean[]{true}, appointments.bookAll(List.of(appointment(1, "c1"))));
+
+        List<Appointment> skipped = appointments.applyAll(List.of(new AppointmentChange(false, appointment(2, "c1"))));
+
+        assertEquals(List.of(2), skipped.stream().map(Appointment::getId).toList());
+        assertNull(appointments.find(2));
+        assertEquals(9, store.vaccines().findDoses("pfizer"));
+    }
+
+    @Test
+    void uploadKeepsBookedSlotsTaken() throws SQLException {
+        availabilities.insert(DAY, "c1", 0b1);
+        assertArrayEquals(new boolean[]{true}, appointments.bookAll(List.of(appointment(1, "c1"))));
+
+        assertTrue(availabilities.insertAll("c1", List.of(DAY), 0b1).isEmpty());
+        assertEquals(0b10L, availabilities.insertAll("c1", List.of(DAY), 0b11).get(DAY));
+        assertNotNull(appointments.cancel(1, null));
+
+        assertEquals(List.of(DAY + " c1 3"), days());
+    }
+
+    @Test
+    void concurrentBookingsClaimADayOnce() throws Exception {
+        int threads = 8;
+        for (int round = 0; round < 200; round++) {
+            LocalDate day = DAY.plusDays(round);
+            availabilities.insert(day, "c1", 1);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> booked = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int id = round * threads + i + 1;
+                booked.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        appointments.book(id, day, "p1", "pfizer", false, picker("c1"));
+                        return true;
+                    } catch (IllegalArgumentException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            int count = 0;
+            for (Future<Boolean> future : booked) {
+                count += future.get() ? 1 : 0;
+            }
+            executor.shutdown();
+            assertEquals(1, count, "bookings of " + day);
+        }
+    }
+
+    @Test
+    void concurrentClaimsAndUploadsKeepEverySlotBit() throws Exception {
+        int threads = 8;
+        store.vaccines().insert("bulk", 1_000_000);
+        for (int round = 0; round < 50; round++) {
+            LocalDate day = DAY.plusDays(round);
+            // the low half is free and booked by every thread at once, the high half is uploaded meanwhile
+            availabilities.insert(day, "c1", 0xffffffffL);
+            ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<boolean[]>> booked = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                List<Appointment> all = new ArrayList<>();
+                for (int slot = 0; slot < 32; slot++) {
+                    all.add(new Appointment((round * threads + i) * 32 + slot + 1, Date.valueOf(day), slot, "c1",
+                            "p1", "bulk"));
+                }
+                booked.add(executor.submit(() -> {
+                    start.await();
+                    return appointments.bookAll(all);
+                }));
+            }
+            Future<?> uploads = executor.submit(() -> {
+                start.await();
+                for (int slot = 32; slot < 64; slot++) {
+                    availabilities.insert(day, "c1", 1L << slot);
+                }
+                return null;
+            });
+            start.countDown();
+            int[] claims = new int[32];
+            for (Future<boolean[]> future : booked) {
+                boolean[] slots = future.get();
+                for (int slot = 0; slot < 32; slot++) {
+                    claims[slot] += slots[slot] ? 1 : 0;
+                }
+            }
+            uploads.get();
+            executor.shutdown();
+
+            for (int slot = 0; slot < 32; slot++) {
+                assertEquals(1, claims[slot], "claims of slot " + slot + " on " + day);
+            }
+            assertTrue(days().contains(day + " c1 " + 0xffffffff00000000L), day::toString);
+        }
+        assertEquals(1_000_000 - 50 * 32, store.vaccines().findDoses("bulk"));
+    }
+
+    @Test
+    void concurrentBookAllsNeverTakeMoreDosesThanLeft() throws Exception {
+        int threads = 8;
+        for (int round = 0; round < 200; round++) {
+            String vaccine = "few-" + round;
+            store.vaccines().insert(vaccine, 3);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> booked = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                LocalDate day = DAY.plusDays(round * threads + i);
+                availabilities.insert(day, "c1", 1);
+                Appointment appointment = new Appointment(round * threads + i + 1, Date.valueOf(day), 0, "c1", "p1",
+                        vaccine);
+                booked.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        return appointments.bookAll(List.of(appointment))[0];
+                    } catch (IllegalArgumentException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            int count = 0;
+            for (Future<Boolean> future : booked) {
+                count += future.get() ? 1 : 0;
+            }
+            executor.shutdown();
+            assertEquals(3, count, vaccine);
+            assertEquals(0, store.vaccines().findDoses(vaccine), vaccine);
+        }
+    }
+
+    private static Appointment appointment(int id, String caregiver) {
+        return new Appointment(id, Date.valueOf(DAY), 0, caregiver, "p1", "pfizer");
+    }
+
+    // offers the caregivers in slot 0
+    private static CaregiverPicker picker(String... caregivers) {
+        Iterator<String> it = List.of(caregivers).iterator();
+        return new CaregiverPicker() {
+            @Override
+            public String next() {
+                return it.hasNext() ? it.next() : null;
+            }
+
+            @Override
+            public int slot() {
+                return 0;
+            }
+        };
+    }
+
+    // the caregiver-days with the bitmap of their free slots; a day with none free is not there
+    private List<String> days() throws SQLException {
+        List<String> days = new ArrayList<>();
+        availabilities.forEach((day, caregiver, slots) -> days.add(day + " " + caregiver + " " + slots));
+        return days;
+    }
+}
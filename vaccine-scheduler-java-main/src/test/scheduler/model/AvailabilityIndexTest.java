@@ -0,0 +1,99 @@
+package scheduler.model;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Claiming and freeing slots in the index's per-day bitmaps, over an empty in-memory store. Only the first
+ * two ordinals are dense, so every test past its first caregivers runs on the sparse map as well.
+ */
+class AvailabilityIndexTest {
+
+    private static AvailabilityIndex index;
+
+    @BeforeAll
+    static void setUp() throws SQLException {
+        System.setProperty("Storage", "memory");
+        System.setProperty("SlotMinutes", "60");
+        System.setProperty("SlotDayStart", "08:00");
+        System.setProperty("AvailabilityDenseOrdinals", "2");
+        System.setProperty("AssignmentStrategy", "alphabetical");
+        index = AvailabilityIndex.getInstance();
+    }
+
+    @Test
+    void eachSlotIsTakenOnce() {
+        LocalDate day = LocalDate.of(2030, 2, 1);
+        index.add(day, "a", TimeSlots.bit(0) | TimeSlots.bit(3));
+
+        assertClaim("a", 3, index.take(day, 3));
+        assertNull(index.take(day, 3));
+        assertClaim("a", 0, index.take(day));
+        assertNull(index.take(day));
+        assertFalse(index.contains(day, "a"));
+        assertEquals(0, index.count(day));
+    }
+
+    @Test
+    void freedSlotCanBeTakenAgain() {
+        LocalDate day = LocalDate.of(2030, 2, 2);
+        index.add(day, "a", TimeSlots.bit(5));
+        assertClaim("a", 5, index.take(day, 5));
+
+        index.add(day, "a", TimeSlots.bit(5));
+
+        assertTrue(index.contains(day, "a"));
+        assertEquals(Map.of("a", TimeSlots.bit(5)), index.slots(day));
+        assertClaim("a", 5, index.take(day, 5));
+    }
+
+    @Test
+    void slotGoesToACaregiverThatHasItFree() {
+        LocalDate day = LocalDate.of(2030, 2, 3);
+        // a and b get the dense ordinals, the others sparse ones
+        for (String caregiver : new String[]{"a", "b", "c", "d", "e"}) {
+            index.add(day, caregiver, TimeSlots.bit(caregiver.charAt(0) - 'a'));
+        }
+        assertEquals(5, index.count(day));
+        assertEquals(TimeSlots.bit(4), index.slots(day).get("e"));
+
+        assertClaim("e", 4, index.take(day, 4));
+        assertNull(index.take(day, 4));
+        assertFalse(index.contains(day, "e"));
+        assertClaim("d", 3, index.take(day, 3));
+        assertEquals(3, index.count(day));
+    }
+
+    @Test
+    void removeTakesTheWholeDay() {
+        LocalDate day = LocalDate.of(2030, 2, 4);
+        index.add(day, "a", TimeSlots.bit(1) | TimeSlots.bit(2));
+        index.add(day, "e", TimeSlots.bit(1));
+
+        assertEquals(TimeSlots.bit(1) | TimeSlots.bit(2), index.remove(day, "a"));
+        assertEquals(TimeSlots.bit(1), index.remove(day, "e"));
+
+        assertEquals(0, index.count(day));
+        assertNull(index.take(day));
+        assertNull(index.take(day, 1));
+        assertEquals(0, index.remove(day, "a"));
+
+        // what was removed can be put back, as when cancelling the day fails
+        index.add(day, "a", TimeSlots.bit(1) | TimeSlots.bit(2));
+        assertEquals(Map.of("a", TimeSlots.bit(1) | TimeSlots.bit(2)), index.slots(day));
+    }
+
+    private static void assertClaim(String caregiver, int slot, AvailabilityIndex.Claim claim) {
+        assertEquals(caregiver, claim == null ? null : claim.getCaregiver());
+        assertEquals(slot, claim.getSlot());
+    }
+}
@@ -0,0 +1,120 @@
+package scheduler.model;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The ledger's stock counters and their write-back to an H2 Vaccines table. The background flush is slowed
+ * down to a minute so that every test flushes when it means to. Every test uses a vaccine of its own.
+ */
+class DoseLedgerTest {
+
+    private static final String URL = "jdbc:h2:mem:ledger;MODE=MSSQLServer;DB_CLOSE_DELAY=-1";
+
+    private static DoseLedger ledger;
+
+    @BeforeAll
+    static void setUp() throws SQLException {
+        System.setProperty("JdbcUrl", URL);
+        System.setProperty("DoseLedgerFlushMs", "60000");
+        execute("CREATE TABLE Vaccines (Name varchar(255), Doses int, PRIMARY KEY (Name))");
+        execute("INSERT INTO Vaccines VALUES ('contended', 100)");
+        execute("INSERT INTO Vaccines VALUES ('retried', 10)");
+        ledger = DoseLedger.getInstance();
+    }
+
+    @Test
+    void concurrentTakesNeverDriveTheStockNegative() throws Exception {
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> taken = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            taken.add(executor.submit(() -> {
+                start.await();
+                int count = 0;
+                for (int j = 0; j < 20; j++) {
+                    if (ledger.tryTake("contended", 1)) {
+                        count++;
+                    }
+                }
+                return count;
+            }));
+        }
+        start.countDown();
+        int total = 0;
+        for (Future<Integer> future : taken) {
+            total += future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(100, total);
+        assertEquals(0, ledger.getDoses("contended"));
+        assertFalse(ledger.tryTake("contended", 1));
+        ledger.flush();
+        assertEquals(0, doses("contended"));
+    }
+
+    @Test
+    void takeOfMoreThanIsLeftTakesNothing() {
+        ledger.register("small", 3);
+
+        assertFalse(ledger.tryTake("small", 4));
+        assertTrue(ledger.tryTake("small", 3));
+
+        assertEquals(0, ledger.getDoses("small"));
+        assertFalse(ledger.tryTake("unknown", 1));
+    }
+
+    @Test
+    void failedFlushIsRetriedByTheNextOne() throws SQLException {
+        assertTrue(ledger.tryTake("retried", 4));
+        ledger.add("retried", 1);
+
+        execute("ALTER TABLE Vaccines RENAME TO Vaccines_Away");
+        try {
+            assertThrows(SQLException.class, ledger::flush);
+        } finally {
+            execute("ALTER TABLE Vaccines_Away RENAME TO Vaccines");
+        }
+        assertEquals(7, ledger.getDoses("retried"));
+        assertEquals(10, doses("retried"));
+
+        ledger.flush();
+        assertEquals(7, doses("retried"));
+        // what was written is not written again
+        ledger.flush();
+        assertEquals(7, doses("retried"));
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection con = DriverManager.getConnection(URL); Statement statement = con.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static int doses(String vaccine) throws SQLException {
+        try (Connection con = DriverManager.getConnection(URL); Statement statement = con.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT Doses FROM Vaccines WHERE Name = '" + vaccine + "'")) {
+            assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package scheduler.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import scheduler.repository.Repositories;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Replays journals that other JVMs left behind as a crash would: each step runs in a JVM of its own over the
+ * in-memory store, appending bookings and halting before they are applied, or replaying the journal and
+ * printing which of the appointments made it into the store.
+ */
+class ReservationJournalTest {
+
+    private static final LocalDate DAY = LocalDate.of(2030, 4, 1);
+    // every entry is a booking of c1 for p1 with pfizer in slot 0, and so takes the same number of bytes
+    private static final int ENTRY_BYTES = 16 + 1 + 4 + 8 + 2 + 3 * 2 + "c1".length() + "p1".length()
+            + "pfizer".length();
+    private static final int HEADER_BYTES = 32;
+    private static final int CAPACITY = 1 << 16;
+
+    @Test
+    void journalThatStartedOverReplaysOnlyItsNewEntries(@TempDir Path directory) throws Exception {
+        Path journal = directory.resolve("wrapped.journal");
+        // more than fit, so the journal fills up, is applied and starts over at the beginning, with entries of
+        // the first round behind the new ones
+        int count = (CAPACITY - HEADER_BYTES) / ENTRY_BYTES * 3 / 2;
+        int pending = Integer.parseInt(run(journal, "append", 1, count).get(0));
+        assertTrue(pending > 0 && pending < count / 2 * ENTRY_BYTES, "pending " + pending);
+
+        List<Integer> replayed = ids(run(journal, "replay", 1, count));
+
+        int unapplied = pending / ENTRY_BYTES;
+        assertEquals(IntStream.rangeClosed(count - unapplied + 1, count).boxed().toList(), replayed);
+        // and once it was applied, there is nothing left to replay
+        assertEquals(List.of(), ids(run(journal, "replay", 1, count)));
+    }
+
+    @Test
+    void tornLastEntryIsNotReplayed(@TempDir Path directory) throws Exception {
+        Path journal = directory.resolve("torn.journal");
+        int pending = Integer.parseInt(run(journal, "append", 1, 10).get(0));
+        assertEquals(10 * ENTRY_BYTES, pending);
+
+        // the last byte of the last entry never made it to disk
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xff}), HEADER_BYTES + pending - 1);
+        }
+
+        assertEquals(IntStream.rangeClosed(1, 9).boxed().toList(), ids(run(journal, "replay", 1, 10)));
+    }
+
+    private static List<String> run(Path journal, String mode, int first, int count) throws IOException,
+            InterruptedException {
+        Process process = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                "-DStorage=memory", "-DReservationJournal=true", "-DReservationJournalPath=" + journal,
+                "-DReservationJournalBytes=" + CAPACITY, "-DReservationJournalFlushMs=60000",
+                ReservationJournalTest.class.getName(), mode, String.valueOf(first), String.valueOf(count))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        List<String> lines = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8)
+                .lines().toList();
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+        assertEquals(0, process.exitValue());
+        return lines;
+    }
+
+    private static List<Integer> ids(List<String> lines) {
+        List<Integer> ids = new ArrayList<>();
+        for (String line : lines) {
+            ids.add(Integer.parseInt(line));
+        }
+        return ids;
+    }
+
+    /**
+     * The other JVM. "append first count" journals that many bookings, prints the bytes still pending and
+     * halts without applying them; "replay first count" replays the journal and prints the IDs among them
+     * that are in the store afterwards.
+     */
+    public static void main(String[] args) throws SQLException {
+        int first = Integer.parseInt(args[1]);
+        int count = Integer.parseInt(args[2]);
+        Repositories.vaccines().insert("pfizer", 1_000_000);
+        // every booking is of a day of its own, which replaying it claims
+        for (int id = first; id < first + count; id++) {
+            Repositories.availabilities().insert(DAY.plusDays(id), "c1", 1);
+        }
+        ReservationJournal journal = ReservationJournal.getInstance();
+        if (args[0].equals("append")) {
+            for (int id = first; id < first + count; id++) {
+                journal.booked(new Appointment(id, Date.valueOf(DAY.plusDays(id)), 0, "c1", "p1", "pfizer"));
+            }
+            System.out.println(journal.getPendingBytes());
+            System.out.flush();
+            Runtime.getRuntime().halt(0);
+        }
+        for (int id = first; id < first + count; id++) {
+            if (Repositories.appointments().find(id) != null) {
+                System.out.println(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package scheduler.model;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The filters of two small H2 account tables. The Bloom filter starts out with room for 16 names, so adding a
+ * few thousand makes it grow several times and the skip list merge into the sorted set more than once.
+ */
+class UsernameFilterTest {
+
+    private static final String URL = "jdbc:h2:mem:usernames;MODE=MSSQLServer;DB_CLOSE_DELAY=-1";
+    // bytes above 0x7f sort after ASCII only when compared unsigned
+    private static final List<String> PATIENTS = List.of("alice", "bob", "zoë", "Ærø", "al", "alice2");
+
+    @BeforeAll
+    static void setUp() throws SQLException {
+        System.setProperty("JdbcUrl", URL);
+        System.setProperty("UsernameFilterCapacity", "16");
+        try (Connection con = DriverManager.getConnection(URL); Statement statement = con.createStatement()) {
+            statement.execute("CREATE TABLE Patients (Username varchar(255), PRIMARY KEY (Username))");
+            statement.execute("CREATE TABLE Caregivers (Username varchar(255), PRIMARY KEY (Username))");
+            for (String name : PATIENTS) {
+                statement.execute("INSERT INTO Patients VALUES ('" + name + "')");
+            }
+            statement.execute("INSERT INTO Caregivers VALUES ('c1'), ('c2')");
+        }
+    }
+
+    @Test
+    void loadedNamesAreFoundAndNoOthers() throws SQLException {
+        UsernameFilter filter = UsernameFilter.forPatients();
+
+        assertEquals(PATIENTS.size(), filter.size());
+        for (String name : PATIENTS) {
+            assertTrue(filter.contains(name), name);
+        }
+        // whatever the Bloom filter lets through, the sorted set turns away
+        for (String name : List.of("alic", "alice3", "zoe", "Aero", "", "bobby", "a")) {
+            assertFalse(filter.contains(name), name);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertFalse(filter.contains("free-" + i));
+        }
+    }
+
+    @Test
+    void addedNamesSurviveMergesAndGrowth() throws SQLException {
+        UsernameFilter filter = UsernameFilter.forCaregivers();
+        long footprint = filter.getFootprintBytes();
+
+        for (int i = 0; i < 5000; i++) {
+            filter.add("caregiver-" + i);
+        }
+        // names that are already there, whether merged, recent or loaded, are not added twice
+        filter.add("caregiver-0");
+        filter.add("caregiver-4999");
+        filter.add("c1");
+
+        assertEquals(5002, filter.size());
+        assertTrue(filter.contains("c1"));
+        assertTrue(filter.contains("c2"));
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(filter.contains("caregiver-" + i), "caregiver-" + i);
+            assertFalse(filter.contains("caregiver-x" + i));
+        }
+        assertTrue(filter.getFootprintBytes() > footprint);
+    }
+}
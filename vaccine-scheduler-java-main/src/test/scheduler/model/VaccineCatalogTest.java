@@ -0,0 +1,91 @@
+package scheduler.model;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import scheduler.db.ConnectionManager;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * The catalog over an H2 Vaccines table. The pool has a single connection, so a test that holds it can stop
+ * a load after it read the clock and before it queried, and write in between. Every test uses a vaccine of
+ * its own and only looks at how the counters moved.
+ */
+class VaccineCatalogTest {
+
+    private static final String URL = "jdbc:h2:mem:catalog;MODE=MSSQLServer;DB_CLOSE_DELAY=-1";
+
+    private static VaccineCatalog catalog;
+
+    @BeforeAll
+    static void setUp() throws SQLException {
+        System.setProperty("JdbcUrl", URL);
+        System.setProperty("PoolMaxSize", "1");
+        System.setProperty("PoolMinIdle", "0");
+        try (Connection con = DriverManager.getConnection(URL); Statement statement = con.createStatement()) {
+            statement.execute("CREATE TABLE Vaccines (Name varchar(255), Doses int, PRIMARY KEY (Name))");
+            statement.execute("INSERT INTO Vaccines VALUES ('cached', 5), ('stale', 5)");
+        }
+        catalog = VaccineCatalog.getInstance();
+    }
+
+    @Test
+    void lookupIsLoadedOnceAndThenServedFromMemory() throws SQLException {
+        long hits = catalog.getHits();
+        long misses = catalog.getMisses();
+
+        assertEquals(5, catalog.getDoses("cached"));
+        assertEquals(5, catalog.getDoses("cached"));
+        assertEquals(4, catalog.apply("cached", -1));
+        assertEquals(4, catalog.getDoses("cached"));
+
+        assertEquals(hits + 2, catalog.getHits());
+        assertEquals(misses + 1, catalog.getMisses());
+        assertEquals(-1, catalog.getDoses("unknown"));
+    }
+
+    @Test
+    void loadOvertakenByAWriteIsNotCached() throws Exception {
+        long staleLoads = catalog.getStaleLoads();
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        assertNotNull(con);
+        CompletableFuture<Integer> load;
+        try {
+            long saturated = ConnectionManager.getPoolStats().getSaturatedCount();
+            load = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return catalog.getDoses("stale");
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            // the load has read the clock and waits for the connection
+            while (ConnectionManager.getPoolStats().getSaturatedCount() == saturated) {
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+            try (Statement statement = con.createStatement()) {
+                statement.executeUpdate("UPDATE Vaccines SET Doses = Doses - 1 WHERE Name = 'stale'");
+            }
+            assertEquals(-1, catalog.apply("stale", -1));
+        } finally {
+            cm.closeConnection();
+        }
+
+        assertEquals(4, load.get(5, TimeUnit.SECONDS));
+        assertEquals(staleLoads + 1, catalog.getStaleLoads());
+        // so the next lookup goes to the table again, and the one after that is served from memory
+        long misses = catalog.getMisses();
+        assertEquals(4, catalog.getDoses("stale"));
+        assertEquals(4, catalog.getDoses("stale"));
+        assertEquals(misses + 1, catalog.getMisses());
+    }
+}